@@ -0,0 +1,114 @@
+package com.codexteam.codexlib;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Descodificació d'una resposta de /books a objectes {@link Llibre}.
+ *
+ * <ul>
+ *   <li>{@code fluxPerLots}: com ho fa el client ({@link DescodificadorLlibres}, lots de
+ *       {@link DescodificadorLlibres#MIDA_LOT} directament del flux).</li>
+ *   <li>{@code llistaJackson}: tota la llista de cop amb {@link CodecJson#LECTOR_LLISTA_LLIBRES}.</li>
+ *   <li>{@code orgJson}: text sencer a {@link JSONArray} i còpia manual a {@link Llibre}
+ *       (com es feia abans de fer servir Jackson).</li>
+ * </ul>
+ *
+ * <p>Les dues variants de Jackson passen pel {@link RegistreEntitats}, que comparteix autors i gèneres
+ * entre execucions igual que entre sincronitzacions de l'aplicació.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DescodificacioLlibresBenchmark {
+
+    @Param({"1000", "10000", "50000", "200000"})
+    public int llibres;
+
+    private byte[] resposta;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        resposta = GeneradorCataleg.respostaLlibres(llibres, GeneradorCataleg.LLAVOR);
+    }
+
+    @Benchmark
+    public void fluxPerLots(Blackhole forat) throws IOException {
+        List<Llibre> llegits = new ArrayList<>(llibres);
+        DescodificadorLlibres.Resultat resultat = DescodificadorLlibres.llegir(new ByteArrayInputStream(resposta),
+                DescodificadorLlibres.MIDA_LOT, llegits::addAll);
+        forat.consume(resultat);
+        forat.consume(llegits);
+    }
+
+    @Benchmark
+    public List<Llibre> llistaJackson() throws IOException {
+        return CodecJson.LECTOR_LLISTA_LLIBRES.readValue(resposta);
+    }
+
+    @Benchmark
+    public List<Llibre> orgJson() {
+        JSONArray llista = new JSONArray(new String(resposta, StandardCharsets.UTF_8));
+        List<Llibre> llegits = new ArrayList<>(llista.length());
+        for (int i = 0; i < llista.length(); i++) {
+            llegits.add(llibre(llista.getJSONObject(i)));
+        }
+        return llegits;
+    }
+
+    private static Llibre llibre(JSONObject json) {
+        Llibre llibre = new Llibre();
+        llibre.setId(json.getInt("id"));
+        llibre.setTitle(json.optString("title", null));
+        llibre.setIsbn(json.optString("isbn", null));
+        llibre.setPublished_date(json.optString("published_date", null));
+        llibre.setAvailable(json.optBoolean("available"));
+        llibre.setCreated_at(json.optString("created_at", null));
+        llibre.setUpdated_at(json.optString("updated_at", null));
+        JSONObject autorJson = json.optJSONObject("author");
+        if (autorJson != null) {
+            Autor autor = new Autor();
+            autor.setId(autorJson.getInt("id"));
+            autor.setName(autorJson.optString("name", null));
+            autor.setBirth_date(autorJson.optString("birth_date", null));
+            autor.setNationality(autorJson.optString("nationality", null));
+            autor.setCreated_at(autorJson.optString("created_at", null));
+            autor.setUpdated_at(autorJson.optString("updated_at", null));
+            llibre.setAuthor(autor);
+        }
+        JSONObject genereJson = json.optJSONObject("genre");
+        if (genereJson != null) {
+            Genere genere = new Genere();
+            genere.setId(genereJson.getInt("id"));
+            genere.setName(genereJson.optString("name", null));
+            genere.setDescription(genereJson.optString("description", null));
+            genere.setCreated_at(genereJson.optString("created_at", null));
+            genere.setUpdated_at(genereJson.optString("updated_at", null));
+            llibre.setGenre(genere);
+        }
+        return llibre;
+    }
+}
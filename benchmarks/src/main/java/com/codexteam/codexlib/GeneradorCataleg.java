@@ -0,0 +1,269 @@
+package com.codexteam.codexlib;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Genera catàlegs i respostes d'Open Library semblants als reals per als benchmarks.
+ *
+ * <p>Tot surt d'un {@link Random} amb llavor fixa: amb els mateixos paràmetres, el resultat és
+ * sempre el mateix byte a byte, i per tant les mesures de commits diferents són comparables.</p>
+ *
+ * <p>Com al catàleg real, hi ha molts menys autors i gèneres que llibres (cada resposta de /books
+ * els repeteix sencers a cada llibre), i els títols porten accents i majúscules barrejades.</p>
+ */
+public class GeneradorCataleg {
+
+    /** Llavor per defecte de totes les dades generades. */
+    public static final long LLAVOR = 20240417L;
+
+    private static final String[] PARAULES = {
+            "el", "la", "dels", "jardí", "ombra", "mar", "nit", "àvia", "camí", "castell", "llibre",
+            "Barcelona", "estiu", "hivern", "memòria", "silenci", "ciutat", "llum", "foc", "aigua",
+            "història", "secret", "muntanya", "Mediterrània", "cançó", "rellotge", "carrer", "finestra",
+            "Èpica", "últim", "senyora", "pedra", "vent", "pluja", "poeta", "orgull", "fàbrica", "riu",
+            "bosc", "somni", "cor", "illa", "ràdio", "tren", "viatge", "món", "temps", "guerra", "pau",
+            "cámara", "Ñandú", "Zoë", "Ångström", "façana", "col·lecció", "paral·lel", "Lleida", "Vic"};
+
+    private static final String[] NOMS = {
+            "Mercè", "Joan", "Núria", "Jordi", "Montserrat", "Pere", "Àngels", "Ramon", "Carme", "Salvador",
+            "Maria", "Josep", "Víctor", "Isabel", "Quim", "Llúcia", "Èric", "Aina", "Ona", "Martí"};
+
+    private static final String[] COGNOMS = {
+            "Rodoreda", "Pla", "Català", "Espriu", "Oller", "Sales", "Riba", "Roig", "Monzó", "Cabré",
+            "Sánchez", "Piñol", "Ferrater", "Martorell", "Llull", "Verdaguer", "Àlvarez", "Òdena", "Ubach", "Puig"};
+
+    private static final String[] NACIONALITATS = {"Catalana", "Valenciana", "Balear", "Andorrana", "Espanyola", "Francesa"};
+
+    private static final String[] GENERES = {
+            "Novel·la", "Poesia", "Teatre", "Assaig", "Ciència-ficció", "Fantasia", "Misteri", "Història",
+            "Biografia", "Infantil", "Juvenil", "Còmic", "Viatges", "Cuina", "Ciència", "Filosofia",
+            "Art", "Música", "Esports", "Natura", "Autoajuda", "Romàntica", "Terror", "Humor",
+            "Policíaca", "Clàssics", "Divulgació", "Dret", "Economia", "Educació"};
+
+    private static final LocalDate PRIMERA_PUBLICACIO = LocalDate.of(1850, 1, 1);
+    private static final int DIES_PUBLICACIO = 175 * 365;
+
+    /**
+     * Genera el cos d'una resposta de /books (una llista JSON) amb {@code llibres} llibres.
+     *
+     * @param llibres Nombre de llibres.
+     * @param llavor  Llavor de les dades.
+     * @return El JSON en UTF-8.
+     */
+    public static byte[] respostaLlibres(int llibres, long llavor) {
+        Random aleatori = new Random(llavor);
+        int autors = Math.max(1, llibres / 20);
+        StringBuilder json = new StringBuilder(llibres * 420);
+        json.append('[');
+        for (int i = 0; i < llibres; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            int autor = aleatori.nextInt(autors);
+            int genere = aleatori.nextInt(GENERES.length);
+            json.append("{\"id\":").append(i + 1)
+                    .append(",\"title\":\"").append(titol(aleatori)).append('"')
+                    .append(",\"author\":");
+            autorJson(json, autor);
+            json.append(",\"isbn\":\"").append(isbn(aleatori)).append('"')
+                    .append(",\"published_date\":\"").append(publicacio(aleatori)).append('"')
+                    .append(",\"genre\":");
+            genereJson(json, genere);
+            json.append(",\"available\":").append(aleatori.nextInt(10) < 7)
+                    .append(",\"created_at\":\"2024-01-15T10:00:00\"")
+                    .append(",\"updated_at\":\"2024-0").append(1 + aleatori.nextInt(9))
+                    .append('-').append(10 + aleatori.nextInt(18)).append("T12:30:00\"}");
+        }
+        json.append(']');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Genera els mateixos llibres que {@link #respostaLlibres(int, long)} directament com a objectes,
+     * amb un sol objecte per autor i per gènere (com els deixa {@link RegistreEntitats}).
+     *
+     * @param llibres Nombre de llibres.
+     * @param llavor  Llavor de les dades.
+     * @return Llista de llibres.
+     */
+    public static List<Llibre> llibres(int llibres, long llavor) {
+        Random aleatori = new Random(llavor);
+        int nombreAutors = Math.max(1, llibres / 20);
+        Autor[] autors = new Autor[nombreAutors];
+        Genere[] generes = new Genere[GENERES.length];
+        List<Llibre> resultat = new ArrayList<>(llibres);
+        for (int i = 0; i < llibres; i++) {
+            int autor = aleatori.nextInt(nombreAutors);
+            int genere = aleatori.nextInt(GENERES.length);
+            Llibre llibre = new Llibre();
+            llibre.setId(i + 1);
+            llibre.setTitle(titol(aleatori));
+            if (autors[autor] == null) {
+                autors[autor] = autor(autor);
+            }
+            llibre.setAuthor(autors[autor]);
+            llibre.setIsbn(isbn(aleatori));
+            llibre.setPublished_date(publicacio(aleatori));
+            if (generes[genere] == null) {
+                generes[genere] = genere(genere);
+            }
+            llibre.setGenre(generes[genere]);
+            llibre.setAvailable(aleatori.nextInt(10) < 7);
+            llibre.setCreated_at("2024-01-15T10:00:00");
+            llibre.setUpdated_at("2024-0" + (1 + aleatori.nextInt(9)) + "-" + (10 + aleatori.nextInt(18)) + "T12:30:00");
+            resultat.add(llibre);
+        }
+        return resultat;
+    }
+
+    /**
+     * Genera respostes de {@code /api/books?bibkeys=ISBN:...&jscmd=data&format=json} d'Open Library.
+     *
+     * @param respostes        Nombre de respostes.
+     * @param isbnsPerResposta ISBN consultats a cada resposta (1 per a una cerca, més per a una importació).
+     * @param llavor           Llavor de les dades.
+     * @return Les respostes, amb els ISBN consultats a cadascuna.
+     */
+    public static List<RespostaOpenLibrary> respostesOpenLibrary(int respostes, int isbnsPerResposta, long llavor) {
+        Random aleatori = new Random(llavor);
+        List<RespostaOpenLibrary> resultat = new ArrayList<>(respostes);
+        for (int r = 0; r < respostes; r++) {
+            List<String> isbns = new ArrayList<>(isbnsPerResposta);
+            StringBuilder json = new StringBuilder(isbnsPerResposta * 1500);
+            json.append('{');
+            boolean primer = true;
+            for (int i = 0; i < isbnsPerResposta; i++) {
+                String isbn = isbn(aleatori);
+                isbns.add(isbn);
+                // Un de cada deu ISBN no és a Open Library i no apareix a la resposta
+                if (aleatori.nextInt(10) == 0) {
+                    continue;
+                }
+                if (!primer) {
+                    json.append(',');
+                }
+                primer = false;
+                json.append("\"ISBN:").append(isbn).append("\":");
+                llibreOpenLibrary(json, isbn, aleatori);
+            }
+            json.append('}');
+            resultat.add(new RespostaOpenLibrary(json.toString(), isbns));
+        }
+        return resultat;
+    }
+
+    /**
+     * Resposta d'Open Library generada.
+     *
+     * @param cos   Text JSON de la resposta.
+     * @param isbns ISBN consultats (els que no hi són es tracten com a no trobats).
+     */
+    public record RespostaOpenLibrary(String cos, List<String> isbns) {
+    }
+
+    //=====================================================
+    //                  PARTS DE LES DADES
+    //=====================================================
+    private static String titol(Random aleatori) {
+        int paraules = 1 + aleatori.nextInt(5);
+        StringBuilder titol = new StringBuilder();
+        for (int i = 0; i < paraules; i++) {
+            if (i > 0) {
+                titol.append(' ');
+            }
+            String paraula = PARAULES[aleatori.nextInt(PARAULES.length)];
+            titol.append(i == 0 ? Character.toUpperCase(paraula.charAt(0)) + paraula.substring(1) : paraula);
+        }
+        return titol.toString();
+    }
+
+    private static String nomAutor(int autor) {
+        return NOMS[autor % NOMS.length] + " " + COGNOMS[(autor / NOMS.length) % COGNOMS.length]
+                + (autor >= NOMS.length * COGNOMS.length ? " " + (autor / (NOMS.length * COGNOMS.length)) : "");
+    }
+
+    private static String isbn(Random aleatori) {
+        return String.format("978%010d", Math.floorMod(aleatori.nextLong(), 10_000_000_000L));
+    }
+
+    private static String publicacio(Random aleatori) {
+        return PRIMERA_PUBLICACIO.plusDays(aleatori.nextInt(DIES_PUBLICACIO)).toString();
+    }
+
+    private static void autorJson(StringBuilder json, int autor) {
+        json.append("{\"id\":").append(autor + 1)
+                .append(",\"name\":\"").append(nomAutor(autor)).append('"')
+                .append(",\"birth_date\":\"19").append(10 + autor % 80).append("-0").append(1 + autor % 9).append("-15\"")
+                .append(",\"nationality\":\"").append(NACIONALITATS[autor % NACIONALITATS.length]).append('"')
+                .append(",\"created_at\":\"2024-01-10T09:00:00\",\"updated_at\":\"2024-01-10T09:00:00\"}");
+    }
+
+    private static Autor autor(int autor) {
+        Autor resultat = new Autor();
+        resultat.setId(autor + 1);
+        resultat.setName(nomAutor(autor));
+        resultat.setBirth_date("19" + (10 + autor % 80) + "-0" + (1 + autor % 9) + "-15");
+        resultat.setNationality(NACIONALITATS[autor % NACIONALITATS.length]);
+        resultat.setCreated_at("2024-01-10T09:00:00");
+        resultat.setUpdated_at("2024-01-10T09:00:00");
+        return resultat;
+    }
+
+    private static void genereJson(StringBuilder json, int genere) {
+        json.append("{\"id\":").append(genere + 1)
+                .append(",\"name\":\"").append(GENERES[genere]).append('"')
+                .append(",\"description\":\"Llibres de ").append(GENERES[genere].toLowerCase()).append('"')
+                .append(",\"created_at\":\"2024-01-10T09:00:00\",\"updated_at\":\"2024-01-10T09:00:00\"}");
+    }
+
+    private static Genere genere(int genere) {
+        Genere resultat = new Genere();
+        resultat.setId(genere + 1);
+        resultat.setName(GENERES[genere]);
+        resultat.setDescription("Llibres de " + GENERES[genere].toLowerCase());
+        resultat.setCreated_at("2024-01-10T09:00:00");
+        resultat.setUpdated_at("2024-01-10T09:00:00");
+        return resultat;
+    }
+
+    // Un llibre amb els camps que retorna jscmd=data, incloent-hi els que el client no fa servir
+    private static void llibreOpenLibrary(StringBuilder json, String isbn, Random aleatori) {
+        String clau = "OL" + (1_000_000 + aleatori.nextInt(9_000_000)) + "M";
+        json.append("{\"url\":\"https://openlibrary.org/books/").append(clau).append("\"")
+                .append(",\"key\":\"/books/").append(clau).append('"')
+                .append(",\"title\":\"").append(titol(aleatori)).append('"');
+        if (aleatori.nextInt(10) > 0) {
+            json.append(",\"authors\":[");
+            int autors = 1 + aleatori.nextInt(3);
+            for (int a = 0; a < autors; a++) {
+                int autor = aleatori.nextInt(2000);
+                json.append(a > 0 ? "," : "")
+                        .append("{\"url\":\"https://openlibrary.org/authors/OL").append(autor).append("A\",\"name\":\"")
+                        .append(nomAutor(autor)).append("\"}");
+            }
+            json.append(']');
+        }
+        json.append(",\"number_of_pages\":").append(80 + aleatori.nextInt(900))
+                .append(",\"identifiers\":{\"isbn_13\":[\"").append(isbn).append("\"],\"openlibrary\":[\"").append(clau).append("\"]}")
+                .append(",\"publishers\":[{\"name\":\"Edicions ").append(COGNOMS[aleatori.nextInt(COGNOMS.length)]).append("\"}]")
+                .append(",\"publish_date\":\"").append(1900 + aleatori.nextInt(125)).append('"')
+                .append(",\"subjects\":[");
+        int temes = aleatori.nextInt(8);
+        for (int t = 0; t < temes; t++) {
+            String tema = GENERES[aleatori.nextInt(GENERES.length)];
+            json.append(t > 0 ? "," : "").append("{\"name\":\"").append(tema)
+                    .append("\",\"url\":\"https://openlibrary.org/subjects/").append(t).append("\"}");
+        }
+        json.append(']');
+        if (aleatori.nextInt(4) > 0) {
+            String portada = "https://covers.openlibrary.org/b/id/" + (100_000 + aleatori.nextInt(900_000));
+            json.append(",\"cover\":{\"small\":\"").append(portada).append("-S.jpg\",\"medium\":\"")
+                    .append(portada).append("-M.jpg\",\"large\":\"").append(portada).append("-L.jpg\"}");
+        }
+        json.append('}');
+    }
+}
@@ -0,0 +1,120 @@
+package com.codexteam.codexlib;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cost de passar els llibres al fil de la interfície en lots de mides diferents.
+ *
+ * <p>Sense pantalla no es pot arrencar el toolkit de JavaFX, de manera que el fil de JavaFX se simula amb
+ * un executor d'un sol fil: cada {@code Platform.runLater} és una tasca a la seva cua. A cada tasca
+ * s'afegeix el lot a una llista amb els mateixos oients que la taula de llibres
+ * ({@link IndexCercaLlibres} i una {@link FilteredList}), que és on hi ha el cost de cada {@code addAll}.
+ * El que no es mesura és el despertar del fil real de JavaFX ni el pols de pintat.</p>
+ *
+ * <ul>
+ *   <li>{@code tascaPerLot}: una tasca per lot, com fa {@link CarregadorLlibres} amb els lots de
+ *       {@link DescodificadorLlibres}.</li>
+ *   <li>{@code tasquesAgrupades}: els lots s'acumulen en una cua i només hi ha una tasca pendent alhora,
+ *       que ho afegeix tot (com {@link SubscripcioCanvis} amb els canvis en viu).</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LotsInterficieBenchmark {
+
+    @Param({"1000", "10000", "50000", "200000"})
+    public int llibres;
+
+    @Param({"1", "10", "100", "1000"})
+    public int midaLot;
+
+    private List<List<Llibre>> lots;
+    private ExecutorService filInterficie;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        List<Llibre> cataleg = GeneradorCataleg.llibres(llibres, GeneradorCataleg.LLAVOR);
+        lots = new ArrayList<>();
+        for (int inici = 0; inici < cataleg.size(); inici += midaLot) {
+            lots.add(List.copyOf(cataleg.subList(inici, Math.min(inici + midaLot, cataleg.size()))));
+        }
+        filInterficie = ClientApi.crearExecutor(1, "fil-interficie-simulat-");
+    }
+
+    @TearDown(Level.Trial)
+    public void acabar() {
+        filInterficie.shutdownNow();
+    }
+
+    @Benchmark
+    public int tascaPerLot() throws InterruptedException, ExecutionException {
+        Taula taula = new Taula();
+        for (List<Llibre> lot : lots) {
+            filInterficie.execute(() -> taula.llibres.addAll(lot));
+        }
+        // Les tasques s'executen en ordre: quan s'executa aquesta, ja s'han afegit tots els lots
+        return filInterficie.submit(taula.llibres::size).get();
+    }
+
+    @Benchmark
+    public int tasquesAgrupades() throws InterruptedException, ExecutionException {
+        Taula taula = new Taula();
+        ConcurrentLinkedQueue<List<Llibre>> pendents = new ConcurrentLinkedQueue<>();
+        AtomicBoolean programat = new AtomicBoolean();
+        Runnable buidar = () -> {
+            programat.set(false);
+            List<Llibre> junts = new ArrayList<>();
+            List<Llibre> lot;
+            while ((lot = pendents.poll()) != null) {
+                junts.addAll(lot);
+            }
+            if (!junts.isEmpty()) {
+                taula.llibres.addAll(junts);
+            }
+        };
+        for (List<Llibre> lot : lots) {
+            pendents.add(lot);
+            if (programat.compareAndSet(false, true)) {
+                filInterficie.execute(buidar);
+            }
+        }
+        return filInterficie.submit(() -> {
+            buidar.run();
+            return taula.llibres.size();
+        }).get();
+    }
+
+    // La llista de llibres amb els oients que té a PanellLlibresController
+    private static final class Taula {
+        final ObservableList<Llibre> llibres = FXCollections.observableArrayList();
+        final IndexCercaLlibres index = new IndexCercaLlibres(llibres);
+        final FilteredList<Llibre> filtrats = new FilteredList<>(llibres);
+    }
+}
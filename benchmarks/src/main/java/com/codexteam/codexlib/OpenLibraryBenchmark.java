@@ -0,0 +1,135 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpretació de les respostes d'Open Library (cerca per ISBN i importació per lots).
+ *
+ * <ul>
+ *   <li>{@code codecTipat}: com ho fa {@link ServeiIsbn}: els bytes de la resposta directament als records
+ *       de {@link CodecJson}, {@link ServeiIsbn#interpretar} per a cada ISBN i el JSON que es desa al disc.</li>
+ *   <li>{@code arbreJackson}: el mateix amb l'arbre de Jackson.</li>
+ *   <li>{@code orgJson}: com es feia abans, amb {@link JSONObject} a partir del text de la resposta.</li>
+ * </ul>
+ *
+ * <p>El temps és per resposta ({@value #RESPOSTES} respostes diferents per invocació).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OpenLibraryBenchmark {
+
+    static final int RESPOSTES = 256;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** 1 per a una cerca des d'IsbnController, 50 per a un lot de la importació. */
+    @Param({"1", "50"})
+    public int isbns;
+
+    // Les respostes arriben com a bytes, com les llegeix el client HTTP
+    private final Map<byte[], List<String>> isbnsPerResposta = new IdentityHashMap<>();
+    private List<byte[]> bytes;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        bytes = new ArrayList<>(RESPOSTES);
+        for (GeneradorCataleg.RespostaOpenLibrary resposta
+                : GeneradorCataleg.respostesOpenLibrary(RESPOSTES, isbns, GeneradorCataleg.LLAVOR)) {
+            byte[] cos = resposta.cos().getBytes(StandardCharsets.UTF_8);
+            bytes.add(cos);
+            isbnsPerResposta.put(cos, resposta.isbns());
+        }
+    }
+
+    private List<String> isbns(byte[] resposta) {
+        return isbnsPerResposta.get(resposta);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESPOSTES)
+    public void codecTipat(Blackhole forat) {
+        for (byte[] resposta : bytes) {
+            Map<String, CodecJson.LlibreOpenLibrary> json = CodecJson.llegir(CodecJson.LECTOR_OPEN_LIBRARY, resposta, "openlibrary");
+            for (String isbn : isbns(resposta)) {
+                CodecJson.LlibreOpenLibrary llibre = json.get("ISBN:" + isbn);
+                if (llibre != null) {
+                    forat.consume(ServeiIsbn.interpretar(isbn, llibre));
+                    forat.consume(CodecJson.bytes(llibre));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESPOSTES)
+    public void orgJson(Blackhole forat) {
+        for (byte[] resposta : bytes) {
+            JSONObject json = new JSONObject(new String(resposta, StandardCharsets.UTF_8));
+            for (String isbn : isbns(resposta)) {
+                JSONObject bookInfo = json.optJSONObject("ISBN:" + isbn);
+                if (bookInfo != null) {
+                    String autor = bookInfo.has("authors")
+                            ? bookInfo.getJSONArray("authors").getJSONObject(0).getString("name") : "Autor desconegut";
+                    String portada = bookInfo.has("cover")
+                            ? bookInfo.getJSONObject("cover").optString("medium", "Sense portada") : "Sense portada";
+                    forat.consume(new FitxaIsbn(isbn, bookInfo.optString("title", "Títol desconegut"), autor,
+                            bookInfo.optString("publish_date", "Data no disponible"), portada));
+                    forat.consume(bookInfo.toString());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESPOSTES)
+    public void arbreJackson(Blackhole forat) throws IOException {
+        for (byte[] resposta : bytes) {
+            JsonNode json = MAPPER.readTree(resposta);
+            for (String isbn : isbns(resposta)) {
+                JsonNode bookInfo = json.get("ISBN:" + isbn);
+                if (bookInfo != null && bookInfo.isObject()) {
+                    forat.consume(interpretar(isbn, bookInfo));
+                    forat.consume(bookInfo.toString());
+                }
+            }
+        }
+    }
+
+    // Els mateixos valors per defecte que ServeiIsbn.interpretar
+    private static FitxaIsbn interpretar(String isbn, JsonNode bookInfo) {
+        String titol = bookInfo.path("title").asText("Títol desconegut");
+        JsonNode autors = bookInfo.path("authors");
+        String autor = autors.size() > 0 ? autors.get(0).path("name").asText() : "Autor desconegut";
+        String publicacio = bookInfo.path("publish_date").asText("Data no disponible");
+        String portada = bookInfo.path("cover").path("medium").asText("Sense portada");
+        return new FitxaIsbn(isbn, titol, autor, publicacio, portada);
+    }
+}
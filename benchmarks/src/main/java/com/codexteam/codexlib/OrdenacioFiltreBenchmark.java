@@ -0,0 +1,184 @@
+package com.codexteam.codexlib;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Ordenació i filtre de la llista de llibres.
+ *
+ * <p>Ordenació per autor i títol, amb l'ordre alfabètic català:</p>
+ * <ul>
+ *   <li>{@code ordenarAmbClaus}: com {@link OrdenacioLlibres}: una {@link CollationKey} per títol i una per
+ *       autor compartit, i comparació de claus.</li>
+ *   <li>{@code reordenarAmbClaus}: el mateix amb les claus ja calculades (un canvi de columna o de sentit).</li>
+ *   <li>{@code ordenarAmbCollator}: {@link Collator#compare} a cada comparació, com faria un comparador de columna.</li>
+ * </ul>
+ *
+ * <p>Filtre amb les consultes de {@link #CONSULTES} sobre tota la llista, com fa la {@code FilteredList}:</p>
+ * <ul>
+ *   <li>{@code filtrarAmbIndex}: predicats d'{@link IndexCercaLlibres}.</li>
+ *   <li>{@code filtrarRecorrent}: normalitzar cada llibre i buscar-hi el text.</li>
+ *   <li>{@code construirIndex}: el cost de crear l'índex per a tot el catàleg.</li>
+ * </ul>
+ *
+ * <p>L'OrdenacioLlibres real no es pot crear sense el toolkit de JavaFX (fa servir una
+ * {@code PauseTransition}), per això aquí se'n reprodueix el càlcul de claus.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class OrdenacioFiltreBenchmark {
+
+    /** Consultes típiques mentre s'escriu al cercador: prefixos curts, paraules amb accents i ISBN. */
+    static final List<String> CONSULTES = List.of("m", "mem", "memoria", "rodoreda", "jardi nit", "col·lecció", "978123");
+
+    @Param({"1000", "10000", "50000", "200000"})
+    public int llibres;
+
+    private List<Llibre> cataleg;
+    private ObservableList<Llibre> llistaObservable;
+    private IndexCercaLlibres index;
+    private Claus[] clausCalculades;
+
+    private record Claus(Llibre llibre, CollationKey autor, CollationKey titol) {
+    }
+
+    private static final Comparator<Claus> PER_AUTOR_I_TITOL =
+            Comparator.comparing(Claus::autor).thenComparing(Claus::titol);
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        cataleg = GeneradorCataleg.llibres(llibres, GeneradorCataleg.LLAVOR);
+        llistaObservable = FXCollections.observableArrayList(cataleg);
+        index = new IndexCercaLlibres(llistaObservable);
+        clausCalculades = claus(cataleg, collator());
+    }
+
+    //=====================================================
+    //                      ORDENACIÓ
+    //=====================================================
+    @Benchmark
+    public List<Llibre> ordenarAmbClaus() {
+        Claus[] claus = claus(cataleg, collator());
+        Arrays.sort(claus, PER_AUTOR_I_TITOL);
+        return ordenats(claus);
+    }
+
+    @Benchmark
+    public List<Llibre> reordenarAmbClaus() {
+        Claus[] claus = clausCalculades.clone();
+        Arrays.sort(claus, PER_AUTOR_I_TITOL.reversed());
+        return ordenats(claus);
+    }
+
+    @Benchmark
+    public List<Llibre> ordenarAmbCollator() {
+        Collator collator = collator();
+        List<Llibre> ordenats = new ArrayList<>(cataleg);
+        ordenats.sort(Comparator.comparing(Llibre::getAuthorName, collator)
+                .thenComparing(llibre -> llibre.getTitle() != null ? llibre.getTitle() : "", collator));
+        return ordenats;
+    }
+
+    // Claus de cada llibre; la de l'autor es calcula una vegada per instància compartida
+    private static Claus[] claus(List<Llibre> llibres, Collator collator) {
+        Map<Autor, CollationKey> clausAutors = new IdentityHashMap<>();
+        Claus[] claus = new Claus[llibres.size()];
+        for (int i = 0; i < claus.length; i++) {
+            Llibre llibre = llibres.get(i);
+            CollationKey autor = clausAutors.computeIfAbsent(llibre.getAuthor(),
+                    a -> collator.getCollationKey(llibre.getAuthorName()));
+            claus[i] = new Claus(llibre, autor, collator.getCollationKey(llibre.getTitle() != null ? llibre.getTitle() : ""));
+        }
+        return claus;
+    }
+
+    private static List<Llibre> ordenats(Claus[] claus) {
+        List<Llibre> ordenats = new ArrayList<>(claus.length);
+        for (Claus clau : claus) {
+            ordenats.add(clau.llibre());
+        }
+        return ordenats;
+    }
+
+    // El mateix criteri que OrdenacioLlibres: sense distingir majúscules, però sí accents
+    private static Collator collator() {
+        Collator collator = Collator.getInstance(Locale.forLanguageTag("ca-ES"));
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+
+    //=====================================================
+    //                       FILTRE
+    //=====================================================
+    @Benchmark
+    public void filtrarAmbIndex(Blackhole forat) {
+        for (String consulta : CONSULTES) {
+            Predicate<Llibre> filtre = index.filtre(consulta);
+            int coincidencies = 0;
+            for (Llibre llibre : llistaObservable) {
+                if (filtre.test(llibre)) {
+                    coincidencies++;
+                }
+            }
+            forat.consume(coincidencies);
+        }
+    }
+
+    @Benchmark
+    public void filtrarRecorrent(Blackhole forat) {
+        for (String consulta : CONSULTES) {
+            String[] termes = IndexCercaLlibres.normalitzar(consulta).split("\\s+");
+            int coincidencies = 0;
+            for (Llibre llibre : cataleg) {
+                String text = IndexCercaLlibres.normalitzar(llibre.getTitle() + " " + llibre.getAuthorName()
+                        + " " + llibre.getGenreName() + " " + llibre.getIsbn());
+                boolean coincideix = true;
+                for (String terme : termes) {
+                    if (!text.contains(terme)) {
+                        coincideix = false;
+                        break;
+                    }
+                }
+                if (coincideix) {
+                    coincidencies++;
+                }
+            }
+            forat.consume(coincidencies);
+        }
+    }
+
+    @Benchmark
+    public IndexCercaLlibres construirIndex() {
+        // Una llista nova a cada vegada: l'índex s'hi registra com a oient i no s'alliberaria
+        return new IndexCercaLlibres(FXCollections.observableArrayList(cataleg));
+    }
+}
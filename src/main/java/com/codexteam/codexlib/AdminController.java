@@ -1,27 +1,18 @@
 package com.codexteam.codexlib;
 
 import javafx.application.Platform;
-import javafx.beans.property.SimpleStringProperty;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.List;
 import java.util.Optional;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import static com.codexteam.codexlib.ConnexioServidor.getNomUsuariActual;
 
@@ -50,17 +41,25 @@ public class AdminController {
     @FXML private ImageView configButton;
     @FXML private ImageView bellButton;
 
-    // COLUMNES DE LA TAULA DE LLIBRES
-    @FXML private TableView<Llibre> taulaLlibres;
-    @FXML private TableColumn<Llibre, String> colTitol;
-    @FXML private TableColumn<Llibre, String> colAutor;
-    @FXML private TableColumn<Llibre, String> colIsbn;
-    @FXML private TableColumn<Llibre, String> colDisponibilitat;
+    // BOTONS DE NAVEGACIÓ
+    @FXML private Button usuarisButton;
+    @FXML private Button llibresButton;
+    @FXML private Button reservesButton;
 
     // BOTONS
-    @FXML private Button inserirNouLlibreButton; // Cercar llibre per ISBN
     @FXML private Button logoutButton; // Logout
 
+    /** Indica si s'ha de preparar un panell quan el punter passa pel seu botó (-Dcodexlib.precarrega=false per desactivar-ho). */
+    private static final boolean PRECARREGA = !"false".equals(System.getProperty("codexlib.precarrega"));
+
+    // Avís de fi de sessió (arriba des d'un fil de fons)
+    private final Runnable oientFiSessio = () -> Platform.runLater(this::sessioAcabada);
+
+    // PANELLS CARREGATS SOTA DEMANDA
+    private PanellLlibresController panellLlibres;
+    private PanellReservesController panellReserves;
+    private PanellUsuarisController panellUsuaris;
+
     //=====================================================
     //                VISIBILITAT PANELLS
     //=====================================================
@@ -87,6 +86,7 @@ public class AdminController {
     @FXML
     private void showLlibres() {
         hideAllPanes();
+        carregarPanellLlibres();
         paneLlibres.setVisible(true);
     }
 
@@ -96,6 +96,7 @@ public class AdminController {
     @FXML
     private void showUsuaris() {
         hideAllPanes();
+        carregarPanellUsuaris();
         paneUsuaris.setVisible(true);
     }
 
@@ -105,6 +106,7 @@ public class AdminController {
     @FXML
     private void showReserves() {
         hideAllPanes();
+        carregarPanellReserves();
         paneReserves.setVisible(true);
     }
 
@@ -122,11 +124,23 @@ public class AdminController {
     //=====================================================
     /**
      * Inicialitza el controlador després de carregar l'FXML.
-     * Configura el comportament dels botons i carrega la llista de llibres.
+     * Configura el comportament dels botons. Els panells (i les seves dades) es carreguen quan es mostren.
      */
     @FXML
     public void initialize() {
 
+        // Només mentre la finestra és oberta (la precàrrega també crea aquest controlador, i el descarta)
+        logoutButton.sceneProperty().addListener((obs, anterior, escena) -> {
+            if (escena != null) {
+                escena.windowProperty().addListener((o, a, finestra) -> {
+                    if (finestra != null) {
+                        finestra.addEventHandler(WindowEvent.WINDOW_SHOWN, e -> ConnexioServidor.escoltarFiSessio(oientFiSessio));
+                        finestra.addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> ConnexioServidor.deixarDEscoltarFiSessio(oientFiSessio));
+                    }
+                });
+            }
+        });
+
         // Mostrar el nom de l'usuari que inicia sessió
         textBenvinguda.setText("Benvingut" + formatNomUsuari(getNomUsuariActual()));
 
@@ -134,27 +148,23 @@ public class AdminController {
         bellButton.setOnMouseClicked(event -> mostrarMissatge("Alerta", "Ep! Sóc una notificació!"));
         bellButton.setCursor(javafx.scene.Cursor.HAND);
 
-        // Mostrar finestra per a cercar llibre per ISBN
-        inserirNouLlibreButton.setOnAction(event ->
-                obrirNovaFinestra("/com/codexteam/codexlib/fxml/isbnView.fxml", "Cercar llibre per ISBN", "/com/codexteam/codexlib/images/isbn.png")
-        );
-
         // Mostrar finestra de configuració
-        configButton.setOnMouseClicked(event ->
-                obrirNovaFinestra("/com/codexteam/codexlib/fxml/configView.fxml", "Configuració", "/com/codexteam/codexlib/images/config_.png")
-        );
-        configButton.setCursor(javafx.scene.Cursor.HAND);
-
-        // CARREGAR LLISTAT DE LLIBRES
-        colTitol.setCellValueFactory(new PropertyValueFactory<>("title"));
-        colAutor.setCellValueFactory(new PropertyValueFactory<>("authorName"));
-        colIsbn.setCellValueFactory(new PropertyValueFactory<>("isbn"));
-        colDisponibilitat.setCellValueFactory(cellData -> {
-            boolean disponible = cellData.getValue().isAvailable();
-            return new SimpleStringProperty(disponible ? "Sí" : "No");
+        configButton.setOnMouseClicked(event -> {
+            try {
+                CacheVistes.mostrarFinestra("/com/codexteam/codexlib/fxml/configView.fxml", "Configuració",
+                        "/com/codexteam/codexlib/images/config_.png");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         });
+        configButton.setCursor(javafx.scene.Cursor.HAND);
 
-        carregarLlibres();
+        // Els panells es construeixen quan es mostren per primer cop; passar-hi per sobre ja els prepara
+        if (PRECARREGA) {
+            usuarisButton.setOnMouseEntered(event -> carregarPanellUsuaris());
+            llibresButton.setOnMouseEntered(event -> carregarPanellLlibres());
+            reservesButton.setOnMouseEntered(event -> carregarPanellReserves());
+        }
 
     }
 
@@ -163,6 +173,60 @@ public class AdminController {
         return (nomUsuari != null && !nomUsuari.trim().isEmpty()) ? ", " + nomUsuari : ".";
     }
 
+    //=====================================================
+    //            PANELLS CARREGATS SOTA DEMANDA
+    //=====================================================
+    /**
+     * Carrega el panell de llibres (i el catàleg) si encara no s'ha carregat.
+     */
+    private void carregarPanellLlibres() {
+        if (panellLlibres != null) {
+            return;
+        }
+        try {
+            CacheVistes.Vista vista = CacheVistes.carregar("/com/codexteam/codexlib/fxml/panellLlibresView.fxml");
+            paneLlibres.getChildren().add(vista.arrel());
+            panellLlibres = (PanellLlibresController) vista.controlador();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mostrarMissatge("Error", "No s'ha pogut carregar el panell de llibres.");
+        }
+    }
+
+    /**
+     * Carrega el panell d'usuaris (i la primera pàgina d'usuaris) si encara no s'ha carregat.
+     */
+    private void carregarPanellUsuaris() {
+        if (panellUsuaris != null) {
+            return;
+        }
+        try {
+            CacheVistes.Vista vista = CacheVistes.carregar("/com/codexteam/codexlib/fxml/panellUsuarisView.fxml");
+            paneUsuaris.getChildren().add(vista.arrel());
+            panellUsuaris = (PanellUsuarisController) vista.controlador();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mostrarMissatge("Error", "No s'ha pogut carregar el panell d'usuaris.");
+        }
+    }
+
+    /**
+     * Carrega el panell de reserves (i la setmana actual) si encara no s'ha carregat.
+     */
+    private void carregarPanellReserves() {
+        if (panellReserves != null) {
+            return;
+        }
+        try {
+            CacheVistes.Vista vista = CacheVistes.carregar("/com/codexteam/codexlib/fxml/panellReservesView.fxml");
+            paneReserves.getChildren().add(vista.arrel());
+            panellReserves = (PanellReservesController) vista.controlador();
+        } catch (IOException e) {
+            e.printStackTrace();
+            mostrarMissatge("Error", "No s'ha pogut carregar el panell de reserves.");
+        }
+    }
+
     //=====================================================
     //              OBRIR UNA NOVA FINESTRA
     //=====================================================
@@ -183,7 +247,7 @@ public class AdminController {
             stage.setScene(new Scene(root));
 
             // Icona de la finestra
-            stage.getIcons().add(new Image(getClass().getResourceAsStream(icona)));
+            stage.getIcons().add(CacheVistes.icona(icona));
 
             // BloqueJa la finestra principal fins a tancar aquesta
             stage.initModality(Modality.APPLICATION_MODAL);
@@ -205,7 +269,32 @@ public class AdminController {
         if (!confirmarTancarSessio()) {
             return;
         }
-        // Esborrar el token de sessió
+        sortir();
+    }
+
+    // El servidor ja no refresca el token: s'avisa i es torna al login (la sessió ja està tancada)
+    private void sessioAcabada() {
+        if (logoutButton.getScene() == null || logoutButton.getScene().getWindow() == null
+                || !logoutButton.getScene().getWindow().isShowing()) {
+            return; // Ja s'ha tancat
+        }
+        mostrarMissatge("Sessió caducada", "La sessió ha caducat. Torna a iniciar sessió.");
+        sortir();
+    }
+
+    private void sortir() {
+        ConnexioServidor.deixarDEscoltarFiSessio(oientFiSessio);
+        // Aturar els refrescos del catàleg i esborrar el token de sessió
+        if (panellLlibres != null) {
+            panellLlibres.aturar();
+        }
+        if (panellReserves != null) {
+            panellReserves.aturar();
+        }
+        if (panellUsuaris != null) {
+            panellUsuaris.aturar();
+        }
+        CacheVistes.buidarFinestres();
         ConnexioServidor.logout();
         // Mostrar un missatge de confirmació (crec que fa més nosa que servei)
         // mostrarMissatge("Sessió tancada", "La sessió s'ha tancat correctament.");
@@ -240,43 +329,6 @@ public class AdminController {
         return result.isPresent() && result.get() == ButtonType.OK;
     }
 
-    //=====================================================
-    //            OBTENIR LLISTAT DE LLIBRES
-    //=====================================================
-    /**
-     * Obté el llistat de llibres del servidor mitjançant una petició HTTP
-     * i els mostra a la taula de llibres.
-     */
-    private void carregarLlibres() {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/books"))
-                .header("Authorization", "Bearer " + ConnexioServidor.getTokenSessio())
-                .header("Content-Type", "application/json")
-                .build();
-
-        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(HttpResponse::body)
-                .thenAccept(response -> {
-                    try {
-                        ObjectMapper mapper = new ObjectMapper();
-                        List<Llibre> llibres = mapper.readValue(
-                                response,
-                                new TypeReference<List<Llibre>>() {}
-                        );
-                        Platform.runLater(() -> {
-                            taulaLlibres.getItems().setAll(llibres);
-                        });
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                })
-                .exceptionally(e -> {
-                    e.printStackTrace();
-                    return null;
-                });
-    }
-
     //=====================================================
     //            MOSTRAR MISSATGES INFORMATIUS
     //=====================================================
@@ -0,0 +1,202 @@
+package com.codexteam.codexlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Capa de peticions GET al servidor de CodexLibris que evita repetir les que són iguals.
+ *
+ * <p>Si es demana una ruta que ja és en camí, s'espera la mateixa resposta en lloc d'enviar-ne una
+ * altra. Les respostes 200 es guarden durant un temps curt, diferent per a cada ruta (la regla amb el
+ * prefix més llarg); es pot canviar amb -Dcodexlib.cache.ttl, per exemple
+ * {@code "/books=10,/books/changes=0"} (segons; 0 vol dir que només s'ajunten les peticions simultànies).</p>
+ *
+ * <p>Les respostes es llegeixen senceres a memòria; per això les pàgines del catàleg no hi passen, sinó
+ * que {@link CarregadorLlibres} les llegeix en flux.</p>
+ *
+ * <p>Les escriptures han de cridar {@link #invalidar(String)} amb el prefix de les rutes afectades.
+ * Els comptadors d'encerts i d'errades es poden consultar amb {@link #resum()}.</p>
+ */
+public class CachePeticions {
+
+    // Declarat abans de TTL_NANOS, que ja el pot fer servir en llegir les regles
+    private static final System.Logger REGISTRE = System.getLogger(CachePeticions.class.getName());
+
+    /** Temps de vida per defecte de cada prefix, en segons. */
+    private static final String TTL_PER_DEFECTE = "/books=10,/books/changes=0";
+
+    /** Nombre màxim de respostes guardades. */
+    private static final int MAX_ENTRADES = 256;
+
+    private static final Map<String, Long> TTL_NANOS = llegirTtl(System.getProperty("codexlib.cache.ttl", TTL_PER_DEFECTE));
+
+    private static final Map<String, Entrada> CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, CompletableFuture<Resposta>> EN_CURS = new ConcurrentHashMap<>();
+
+    // Canvia a cada invalidació: una resposta demanada abans d'una escriptura no es guarda
+    private static final AtomicLong generacio = new AtomicLong();
+
+    private static final LongAdder encerts = new LongAdder();
+    private static final LongAdder fusionades = new LongAdder();
+    private static final LongAdder errades = new LongAdder();
+
+    /**
+     * Resposta d'un GET, amb el cos sencer en memòria perquè la puguin llegir diversos consumidors.
+     *
+     * @param codi       Codi d'estat HTTP.
+     * @param capcaleres Capçaleres de la resposta.
+     * @param cos        Cos de la resposta.
+     */
+    public record Resposta(int codi, HttpHeaders capcaleres, byte[] cos) {
+
+        /** @return Un flux nou sobre el cos (cada consumidor n'ha de demanar un). */
+        public InputStream cosEnFlux() {
+            return new ByteArrayInputStream(cos);
+        }
+    }
+
+    private record Entrada(Resposta resposta, long caduca) {
+    }
+
+    /**
+     * Fa un GET a la ruta, o aprofita la resposta guardada o la petició en curs.
+     *
+     * @param ruta Ruta de l'endpoint, amb els paràmetres (per exemple "/books?page=0&size=500").
+     * @return Futur amb la resposta; cancel·lar-lo no afecta els altres que l'esperen.
+     */
+    public static CompletableFuture<Resposta> obtenir(String ruta) {
+        Entrada entrada = CACHE.get(ruta);
+        if (entrada != null && entrada.caduca() - System.nanoTime() > 0) {
+            encerts.increment();
+            return CompletableFuture.completedFuture(entrada.resposta());
+        }
+
+        CompletableFuture<Resposta> nova = new CompletableFuture<>();
+        CompletableFuture<Resposta> existent = EN_CURS.putIfAbsent(ruta, nova);
+        if (existent != null) {
+            fusionades.increment();
+            return existent.copy();
+        }
+        errades.increment();
+
+        long generacioPeticio = generacio.get();
+        ClientApi.enviar(ClientApi.peticio(ruta).GET(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    EN_CURS.remove(ruta, nova);
+                    if (error != null) {
+                        nova.completeExceptionally(error);
+                        return;
+                    }
+                    Resposta resposta = new Resposta(response.statusCode(), response.headers(), response.body());
+                    long ttl = ttl(ruta);
+                    if (resposta.codi() == 200 && ttl > 0 && generacioPeticio == generacio.get()) {
+                        guardar(ruta, new Entrada(resposta, System.nanoTime() + ttl));
+                    }
+                    nova.complete(resposta);
+                });
+        return nova.copy();
+    }
+
+    private static void guardar(String ruta, Entrada entrada) {
+        if (CACHE.size() >= MAX_ENTRADES) {
+            long ara = System.nanoTime();
+            CACHE.values().removeIf(existent -> existent.caduca() - ara <= 0);
+            if (CACHE.size() >= MAX_ENTRADES) {
+                CACHE.clear();
+            }
+        }
+        CACHE.put(ruta, entrada);
+    }
+
+    /**
+     * Descarta les respostes guardades de les rutes que comencen pel prefix. Les peticions en curs
+     * d'aquestes rutes ja no es comparteixen amb les que es facin a partir d'ara.
+     *
+     * @param prefix Prefix de les rutes afectades per una escriptura (per exemple "/books").
+     */
+    public static void invalidar(String prefix) {
+        generacio.incrementAndGet();
+        CACHE.keySet().removeIf(ruta -> ruta.startsWith(prefix));
+        EN_CURS.keySet().removeIf(ruta -> ruta.startsWith(prefix));
+    }
+
+    /**
+     * Descarta totes les respostes guardades (per exemple, en tancar la sessió).
+     */
+    public static void buidar() {
+        invalidar("");
+    }
+
+    // Temps de vida de la regla amb el prefix més llarg que coincideix
+    private static long ttl(String ruta) {
+        long ttl = 0;
+        int longitud = -1;
+        for (Map.Entry<String, Long> regla : TTL_NANOS.entrySet()) {
+            if (ruta.startsWith(regla.getKey()) && regla.getKey().length() > longitud) {
+                ttl = regla.getValue();
+                longitud = regla.getKey().length();
+            }
+        }
+        return ttl;
+    }
+
+    private static Map<String, Long> llegirTtl(String configuracio) {
+        Map<String, Long> regles = new TreeMap<>();
+        for (String regla : configuracio.split(",")) {
+            int igual = regla.indexOf('=');
+            if (igual <= 0) {
+                continue;
+            }
+            try {
+                long segons = Long.parseLong(regla.substring(igual + 1).trim());
+                regles.put(regla.substring(0, igual).trim(), segons * 1_000_000_000L);
+            } catch (NumberFormatException e) {
+                REGISTRE.log(System.Logger.Level.WARNING, "Regla de cache no vàlida: " + regla);
+            }
+        }
+        return regles;
+    }
+
+    //=====================================================
+    //                    COMPTADORS
+    //=====================================================
+    /** @return Respostes servides des de la cache. */
+    public static long getEncerts() {
+        return encerts.sum();
+    }
+
+    /** @return Peticions que s'han ajuntat a una d'igual que ja era en camí. */
+    public static long getFusionades() {
+        return fusionades.sum();
+    }
+
+    /** @return Peticions que han arribat al servidor. */
+    public static long getErrades() {
+        return errades.sum();
+    }
+
+    /** Posa els comptadors a zero (vegeu {@link Telemetria#restablir()}). */
+    static void restablirComptadors() {
+        encerts.reset();
+        fusionades.reset();
+        errades.reset();
+    }
+
+    /**
+     * @return Resum dels comptadors, amb la proporció de peticions estalviades al servidor.
+     */
+    public static String resum() {
+        long estalviades = getEncerts() + getFusionades();
+        long total = estalviades + getErrades();
+        return String.format("%d GET: %d de la cache, %d ajuntades, %d al servidor (%.0f%% estalviat)",
+                total, getEncerts(), getFusionades(), getErrades(), total == 0 ? 0.0 : 100.0 * estalviades / total);
+    }
+}
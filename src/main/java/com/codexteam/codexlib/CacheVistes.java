@@ -0,0 +1,96 @@
+package com.codexteam.codexlib;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.image.Image;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memòria cau de les finestres i icones de la interfície.
+ *
+ * <p>Les finestres que s'obren sovint (cerca per ISBN, configuració) es construeixen una sola vegada:
+ * en tancar-les només s'amaguen, i la propera vegada es tornen a mostrar sense llegir l'FXML de nou.
+ * Les icones es descodifiquen una sola vegada i es comparteixen entre finestres.</p>
+ *
+ * <p>Els mètodes s'han de cridar des del fil de JavaFX, excepte {@link #icona(String)}.</p>
+ */
+public class CacheVistes {
+
+    // Les icones també es poden precarregar des d'un fil de fons (vegeu ArrencadaRapida)
+    private static final Map<String, Image> ICONES = new ConcurrentHashMap<>();
+    private static final Map<String, Stage> FINESTRES = new HashMap<>();
+
+    /**
+     * Vista carregada d'un FXML.
+     *
+     * @param arrel       Node arrel.
+     * @param controlador Controlador de la vista (pot ser null).
+     */
+    public record Vista(Parent arrel, Object controlador) {
+    }
+
+    /**
+     * Retorna la icona de la ruta, descodificant-la només la primera vegada.
+     *
+     * @param ruta Ruta del recurs (per exemple "/com/codexteam/codexlib/images/isbn.png").
+     * @return La imatge compartida.
+     */
+    public static Image icona(String ruta) {
+        return ICONES.computeIfAbsent(ruta, r -> new Image(CacheVistes.class.getResourceAsStream(r)));
+    }
+
+    /**
+     * Carrega un FXML.
+     *
+     * @param fxml Ruta del fitxer FXML.
+     * @return El node arrel i el controlador.
+     * @throws IOException Si l'FXML no es pot carregar.
+     */
+    public static Vista carregar(String fxml) throws IOException {
+        FXMLLoader loader = new FXMLLoader(CacheVistes.class.getResource(fxml));
+        Parent arrel = loader.load();
+        return new Vista(arrel, loader.getController());
+    }
+
+    /**
+     * Mostra una finestra modal que es reutilitza entre obertures. Si ja és oberta, la porta al davant.
+     *
+     * @param fxml   Ruta del fitxer FXML.
+     * @param titol  Títol de la finestra.
+     * @param icona  Ruta de la icona.
+     * @throws IOException Si l'FXML no es pot carregar (la primera vegada).
+     */
+    public static void mostrarFinestra(String fxml, String titol, String icona) throws IOException {
+        Stage stage = FINESTRES.get(fxml);
+        if (stage == null) {
+            stage = new Stage();
+            stage.setScene(new Scene(carregar(fxml).arrel()));
+            stage.getIcons().add(icona(icona));
+            // Bloqueja la finestra principal fins a tancar aquesta
+            stage.initModality(Modality.APPLICATION_MODAL);
+            FINESTRES.put(fxml, stage);
+        }
+        stage.setTitle(titol);
+        if (stage.isShowing()) {
+            stage.toFront();
+        } else {
+            stage.show();
+        }
+    }
+
+    /**
+     * Tanca i oblida les finestres reutilitzades (per exemple, en tancar la sessió, perquè el proper
+     * usuari no en vegi l'estat).
+     */
+    public static void buidarFinestres() {
+        FINESTRES.values().forEach(Stage::close);
+        FINESTRES.clear();
+    }
+}
@@ -0,0 +1,530 @@
+package com.codexteam.codexlib;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carrega el catàleg de llibres del servidor per pàgines.
+ * La primera pàgina es mostra de seguida, unes quantes més s'afegeixen en segon pla
+ * i la resta es demanen a mesura que l'usuari s'apropa al final de la taula.
+ * Cada pàgina es descodifica en flux amb {@link DescodificadorLlibres}, i les files
+ * apareixen a la taula abans que la pàgina s'hagi acabat de descarregar.
+ *
+ * <p>Si hi ha una {@link InstantaniaCataleg} al disc, es mostra immediatament i es revalida
+ * en segon pla. Si el servidor no admet la sincronització incremental, es fa una petició condicional de la
+ * primera pàgina amb els validadors (ETag i Last-Modified) que es van rebre amb ella; si el catàleg no ha
+ * canviat, el servidor respon 304, i si no, es torna a carregar per pàgines.</p>
+ *
+ * <p>Un cop es té el catàleg sencer, els refrescos són incrementals ({@link SincronitzacioCataleg}):
+ * només es demanen els llibres canviats des del {@code updated_at} més recent i es fusionen a la llista.</p>
+ *
+ * <p>Els llibres editats o esborrats que el servidor encara no ha confirmat ({@link CuaEscriptures}) es mostren
+ * amb els canvis per sobre del que arriba de la instantània o del servidor, també a cada pàgina a mesura que
+ * arriba: un llibre amb un esborrat pendent no hi torna a aparèixer. La instantània, en canvi, només desa el
+ * que ha enviat el servidor: dels llibres amb canvis locals (pendents a la cua o encara a {@link ConjuntCanvis})
+ * se'n guarda la versió del servidor.</p>
+ */
+public class CarregadorLlibres {
+
+    /** Nombre de llibres per pàgina (es pot canviar amb -Dcodexlib.llibres.pagina). */
+    public static final int MIDA_PAGINA = Integer.getInteger("codexlib.llibres.pagina", 500);
+
+    /** Pàgines que es carreguen en segon pla després de la primera, sense esperar el desplaçament. */
+    private static final int PAGINES_EN_SEGON_PLA = 4;
+
+    /** Proporció del desplaçament a partir de la qual es demana la pàgina següent. */
+    private static final double LLINDAR_DESPLACAMENT = 0.9;
+
+    /** Segons entre sincronitzacions incrementals (es pot canviar amb -Dcodexlib.llibres.sincronitzacio). */
+    private static final int SEGONS_SINCRONITZACIO = Integer.getInteger("codexlib.llibres.sincronitzacio", 120);
+
+    private static final System.Logger REGISTRE = System.getLogger(CarregadorLlibres.class.getName());
+
+    /**
+     * Pàgina llegida.
+     *
+     * @param llibres    Llibres, si no s'han anat afegint a la llista mentre es llegien.
+     * @param darrera    Cert si és la darrera pàgina.
+     * @param capcaleres Capçaleres de la resposta.
+     */
+    private record PaginaRebuda(List<Llibre> llibres, boolean darrera, HttpHeaders capcaleres) {
+    }
+
+    private final ObservableList<Llibre> llibres;
+    private final SimpleBooleanProperty carregant = new SimpleBooleanProperty(false);
+
+    private int seguentPagina;
+    private int paginesAvancades;
+    private boolean esgotat;
+    private int generacio;
+    private String marca;
+    // Validadors de la primera pàgina, que es desen amb cada instantània
+    private String etag;
+    private String lastModified;
+    private Timeline sincronitzacioPeriodica;
+    // Versió del servidor dels llibres que es mostren amb un canvi local o que un esborrat local ha tret de la llista
+    private final Map<Integer, Llibre> versionsServidor = new HashMap<>();
+
+    /**
+     * @param llibres Llista on s'afegiran els llibres a mesura que arribin.
+     */
+    public CarregadorLlibres(ObservableList<Llibre> llibres) {
+        this.llibres = llibres;
+    }
+
+    /**
+     * Buida la llista i torna a carregar el catàleg: primer des de la instantània local, si n'hi ha,
+     * i si no, des de la primera pàgina del servidor.
+     * S'ha de cridar des del fil de JavaFX.
+     */
+    public void iniciar() {
+        generacio++;
+        int generacioPeticio = generacio;
+        llibres.clear();
+        versionsServidor.clear();
+        RegistreEntitats.reiniciarComptadors();
+        seguentPagina = 0;
+        esgotat = false;
+        marca = null;
+        etag = null;
+        lastModified = null;
+        paginesAvancades = PAGINES_EN_SEGON_PLA;
+        carregant.set(true);
+
+        CompletableFuture.supplyAsync(InstantaniaCataleg::carregar, ClientApi.EXECUTOR_LECTURA)
+                .thenAccept(instantania -> Platform.runLater(() -> {
+                    if (generacioPeticio != generacio) {
+                        return;
+                    }
+                    carregant.set(false);
+                    if (instantania == null) {
+                        carregarSeguent();
+                        return;
+                    }
+                    llibres.setAll(instantania.getLlibres());
+                    aplicarPendents();
+                    esgotat = true;
+                    marca = instantania.getMarcaSincronitzacio();
+                    etag = instantania.getEtag();
+                    lastModified = instantania.getLastModified();
+                    if (marca != null) {
+                        sincronitzar(instantania);
+                    } else {
+                        revalidar(instantania);
+                    }
+                }));
+    }
+
+    /**
+     * Demana al servidor els llibres canviats des de la darrera sincronització i els fusiona
+     * a la llista. Només té efecte quan ja es té el catàleg sencer i no hi ha cap càrrega en curs.
+     * S'ha de cridar des del fil de JavaFX.
+     */
+    public void sincronitzar() {
+        if (!esgotat || marca == null || carregant.get()) {
+            return;
+        }
+        sincronitzar(null);
+    }
+
+    /**
+     * Sincronització incremental. Si el servidor no l'admet i hi ha una instantània, es revalida sencera.
+     */
+    private void sincronitzar(InstantaniaCataleg instantania) {
+        int generacioPeticio = generacio;
+        carregant.set(true);
+
+        SincronitzacioCataleg.demanarCanvis(marca)
+                .thenAccept(canvis -> Platform.runLater(() -> {
+                    if (generacioPeticio != generacio) {
+                        return;
+                    }
+                    carregant.set(false);
+                    if (canvis == null) {
+                        if (instantania != null) {
+                            revalidar(instantania);
+                        }
+                        return;
+                    }
+                    if (!canvis.esBuit()) {
+                        versionsDelServidor(canvis);
+                        SincronitzacioCataleg.aplicar(llibres, canvis);
+                        aplicarPendents();
+                        marca = SincronitzacioCataleg.marcaMaxima(marca, canvis.actualitzats());
+                        InstantaniaCataleg nova = instantania();
+                        ClientApi.EXECUTOR_LECTURA.execute(() -> desar(nova));
+                    }
+                }))
+                .exceptionally(e -> finalitzarAmbError(e, generacioPeticio));
+    }
+
+    /**
+     * Aplica els canvis rebuts en viu ({@link SubscripcioCanvis}). Mentre el catàleg encara s'està
+     * carregant per pàgines, els llibres nous s'ignoren perquè ja arribaran amb la seva pàgina.
+     * S'ha de cridar des del fil de JavaFX.
+     *
+     * @param canvis Canvis acumulats des del darrer fotograma.
+     */
+    public void aplicarCanvisEnViu(SincronitzacioCataleg.Canvis canvis) {
+        versionsDelServidor(canvis);
+        SincronitzacioCataleg.aplicar(llibres, canvis, esgotat);
+        if (esgotat && marca != null) {
+            marca = SincronitzacioCataleg.marcaMaxima(marca, canvis.actualitzats());
+        }
+    }
+
+    /**
+     * Aplica la versió d'un llibre que el servidor ha retornat en resposta a una escriptura d'aquest client.
+     * A diferència de {@link #aplicarCanvisEnViu}, no avança la marca de sincronització: el seu
+     * {@code updated_at} no diu res dels canvis d'altres clients, i si hi hagués algun canvi amb una marca
+     * anterior que encara no s'ha rebut, la sincronització incremental se'l saltaria.
+     * S'ha de cridar des del fil de JavaFX.
+     *
+     * @param canvis Llibres retornats pel servidor.
+     */
+    public void aplicarResultatPropi(SincronitzacioCataleg.Canvis canvis) {
+        versionsDelServidor(canvis);
+        SincronitzacioCataleg.aplicar(llibres, canvis, esgotat);
+    }
+
+    /**
+     * Recorda la versió del servidor d'una fila abans que un canvi local la substitueixi o la tregui de la llista,
+     * perquè la instantània no desi canvis que el servidor encara no ha confirmat.
+     * S'ha de cridar des del fil de JavaFX.
+     *
+     * @param fila Fila de la llista abans del canvi.
+     */
+    public void recordarVersioServidor(Llibre fila) {
+        // Si ja n'hi ha una, la fila ja tenia un canvi local
+        versionsServidor.computeIfAbsent(fila.getId(), id -> fila.copia());
+    }
+
+    /**
+     * Llança una sincronització incremental periòdica mentre el panell està obert.
+     */
+    public void iniciarSincronitzacioPeriodica() {
+        aturar();
+        sincronitzacioPeriodica = new Timeline(new KeyFrame(Duration.seconds(SEGONS_SINCRONITZACIO), e -> sincronitzar()));
+        sincronitzacioPeriodica.setCycleCount(Timeline.INDEFINITE);
+        sincronitzacioPeriodica.play();
+    }
+
+    /**
+     * Atura la sincronització periòdica (per exemple, en tancar la finestra).
+     */
+    public void aturar() {
+        if (sincronitzacioPeriodica != null) {
+            sincronitzacioPeriodica.stop();
+            sincronitzacioPeriodica = null;
+        }
+    }
+
+    /**
+     * Comprova amb el servidor si el catàleg ha canviat des de la instantània, demanant la primera pàgina
+     * amb les capçaleres If-None-Match i If-Modified-Since. Si ha canviat, la pàgina rebuda substitueix la
+     * llista i la resta es torna a carregar per pàgines (mai es demana el catàleg sencer d'un cop).
+     */
+    private void revalidar(InstantaniaCataleg instantania) {
+        int generacioPeticio = generacio;
+        carregant.set(true);
+
+        HttpRequest.Builder builder = ClientApi.peticio(rutaPagina(0)).GET();
+        if (instantania.getEtag() != null) {
+            builder.header("If-None-Match", instantania.getEtag());
+        }
+        if (instantania.getLastModified() != null) {
+            builder.header("If-Modified-Since", instantania.getLastModified());
+        }
+
+        ClientApi.enviar(builder, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    if (response.statusCode() == 304) {
+                        tancar(response.body());
+                        return null; // El catàleg local continua vigent
+                    }
+                    if (response.statusCode() != 200) {
+                        tancar(response.body());
+                        throw new IllegalStateException("Resposta inesperada del servidor: " + response.statusCode());
+                    }
+                    RegistreEntitats.reiniciarComptadors(); // L'informe serà del catàleg nou
+                    try {
+                        List<Llibre> nous = new ArrayList<>();
+                        DescodificadorLlibres.Resultat resultat =
+                                DescodificadorLlibres.llegir(response.body(), DescodificadorLlibres.MIDA_LOT, nous::addAll);
+                        return new PaginaRebuda(nous, darrera(resultat), response.headers());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("No s'ha pogut llegir el catàleg.", e);
+                    }
+                }, ClientApi.EXECUTOR_LECTURA)
+                .thenAccept(pagina -> Platform.runLater(() -> {
+                    if (generacioPeticio != generacio) {
+                        return;
+                    }
+                    carregant.set(false);
+                    if (pagina == null) {
+                        return;
+                    }
+                    // El catàleg ha canviat: es torna a començar a partir de la primera pàgina
+                    versionsServidor.clear();
+                    llibres.setAll(pagina.llibres());
+                    aplicarPendents();
+                    validadors(pagina.capcaleres());
+                    seguentPagina = 1;
+                    esgotat = false;
+                    paginesAvancades = PAGINES_EN_SEGON_PLA;
+                    paginaRebuda(pagina.darrera());
+                }))
+                .exceptionally(e -> finalitzarAmbError(e, generacioPeticio));
+    }
+
+    /**
+     * Demana la pàgina següent si no n'hi ha cap en curs i encara en queden.
+     * S'ha de cridar des del fil de JavaFX.
+     */
+    public void carregarSeguent() {
+        if (carregant.get() || esgotat) {
+            return;
+        }
+        carregant.set(true);
+
+        int pagina = seguentPagina;
+        int generacioPeticio = generacio;
+
+        // En flux i sense passar per CachePeticions, que llegiria la pàgina sencera a memòria abans de lliurar-la
+        ClientApi.enviar(ClientApi.peticio(rutaPagina(pagina)).GET(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    if (response.statusCode() != 200) {
+                        tancar(response.body());
+                        throw new IllegalStateException("Resposta inesperada del servidor: " + response.statusCode());
+                    }
+                    return new PaginaRebuda(null, llegirPagina(response.body(), generacioPeticio), response.headers());
+                }, ClientApi.EXECUTOR_LECTURA)
+                .thenAccept(rebuda -> Platform.runLater(() -> {
+                    if (generacioPeticio != generacio) {
+                        return; // S'ha reiniciat la càrrega mentre arribava la pàgina
+                    }
+                    if (pagina == 0) {
+                        validadors(rebuda.capcaleres());
+                    }
+                    seguentPagina = pagina + 1;
+                    paginaRebuda(rebuda.darrera());
+                }))
+                .exceptionally(e -> finalitzarAmbError(e, generacioPeticio));
+    }
+
+    // Després de cada pàgina: desar el catàleg si ja és sencer, o demanar-ne més en segon pla
+    private void paginaRebuda(boolean darrera) {
+        esgotat = darrera;
+        carregant.set(false);
+        if (esgotat) {
+            // Ja tenim el catàleg sencer: el desem per a la propera obertura
+            InstantaniaCataleg instantania = instantania();
+            marca = instantania.getMarcaSincronitzacio();
+            ClientApi.EXECUTOR_LECTURA.execute(() -> desar(instantania));
+        } else if (paginesAvancades > 0) {
+            paginesAvancades--;
+            carregarSeguent();
+        }
+    }
+
+    private static String rutaPagina(int pagina) {
+        return "/books?page=" + pagina + "&size=" + MIDA_PAGINA;
+    }
+
+    private void validadors(HttpHeaders capcaleres) {
+        etag = capcaleres.firstValue("ETag").orElse(null);
+        lastModified = capcaleres.firstValue("Last-Modified").orElse(null);
+    }
+
+    // Les edicions i els esborrats pendents d'enviar passen per davant de la versió del servidor
+    private void aplicarPendents() {
+        SincronitzacioCataleg.Canvis pendents = CuaEscriptures.canvisPendents();
+        if (pendents.esBuit()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>(pendents.esborrats());
+        pendents.actualitzats().forEach(llibre -> ids.add(llibre.getId()));
+        for (Llibre fila : llibres) {
+            if (ids.contains(fila.getId())) {
+                recordarVersioServidor(fila);
+            }
+        }
+        SincronitzacioCataleg.aplicar(llibres, pendents, false);
+    }
+
+    // Els llibres que arriben del servidor en passen a ser la versió. Un canvi de disponibilitat en viu es
+    // construeix a partir de la fila de la llista (vegeu SubscripcioCanvis): si té el mateix updated_at que
+    // la versió guardada, d'aquesta només canvia la disponibilitat
+    private void versionsDelServidor(SincronitzacioCataleg.Canvis canvis) {
+        if (versionsServidor.isEmpty()) {
+            return;
+        }
+        for (Llibre llibre : canvis.actualitzats()) {
+            Llibre anterior = versionsServidor.get(llibre.getId());
+            if (anterior == null) {
+                continue;
+            }
+            if (Objects.equals(anterior.getUpdated_at(), llibre.getUpdated_at())) {
+                Llibre copia = anterior.copia();
+                copia.setAvailable(llibre.isAvailable());
+                versionsServidor.put(llibre.getId(), copia);
+            } else {
+                versionsServidor.remove(llibre.getId());
+            }
+        }
+        canvis.esborrats().forEach(versionsServidor::remove);
+    }
+
+    // Catàleg tal com el té el servidor: les files amb un canvi local hi van amb la versió del servidor, i els
+    // llibres amb un esborrat que encara no s'ha confirmat hi continuen
+    private InstantaniaCataleg instantania() {
+        List<Llibre> files = new ArrayList<>(llibres.size() + versionsServidor.size());
+        Set<Integer> presents = new HashSet<>();
+        for (Llibre fila : llibres) {
+            Llibre servidor = versionsServidor.get(fila.getId());
+            if (servidor != null) {
+                presents.add(fila.getId());
+                files.add(servidor);
+            } else {
+                files.add(fila);
+            }
+        }
+        versionsServidor.forEach((id, servidor) -> {
+            if (!presents.contains(id)) {
+                files.add(servidor);
+            }
+        });
+        return new InstantaniaCataleg(files, etag, lastModified);
+    }
+
+    private Void finalitzarAmbError(Throwable e, int generacioPeticio) {
+        e.printStackTrace();
+        Platform.runLater(() -> {
+            if (generacioPeticio == generacio) {
+                carregant.set(false);
+            }
+        });
+        return null;
+    }
+
+    // Es crida amb el catàleg sencer, i per això també s'hi informa de la memòria que ocupa
+    private static void desar(InstantaniaCataleg instantania) {
+        try {
+            instantania.desar();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        REGISTRE.log(System.Logger.Level.INFO, () -> "Catàleg en memòria: " + RegistreEntitats.informeMemoria(instantania.getLlibres()));
+        REGISTRE.log(System.Logger.Level.INFO, () -> "Peticions: " + CachePeticions.resum());
+    }
+
+    /**
+     * Llegeix una pàgina en flux i n'afegeix els llibres a la llista per lots.
+     * Si el servidor ignora la paginació i retorna més llibres dels demanats,
+     * es considera que ja ho ha enviat tot.
+     *
+     * @return true si és la darrera pàgina.
+     */
+    private boolean llegirPagina(InputStream cos, int generacioPeticio) {
+        SincronitzacioCataleg.Canvis pendents = CuaEscriptures.canvisPendents();
+        Map<Integer, Llibre> editats = new HashMap<>();
+        pendents.actualitzats().forEach(llibre -> editats.put(llibre.getId(), llibre));
+        Set<Integer> esborrats = new HashSet<>(pendents.esborrats());
+        try {
+            DescodificadorLlibres.Resultat resultat = DescodificadorLlibres.llegir(cos, DescodificadorLlibres.MIDA_LOT,
+                    lot -> Platform.runLater(() -> {
+                        if (generacioPeticio == generacio) {
+                            llibres.addAll(ambPendents(lot, editats, esborrats));
+                        }
+                    }));
+            return darrera(resultat);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No s'ha pogut llegir la pàgina de llibres.", e);
+        }
+    }
+
+    // Cada lot entra a la llista amb les edicions pendents, i sense els llibres amb un esborrat pendent
+    // (dels uns i dels altres es recorda la versió del servidor per a la instantània)
+    private List<Llibre> ambPendents(List<Llibre> lot, Map<Integer, Llibre> editats, Set<Integer> esborrats) {
+        if (editats.isEmpty() && esborrats.isEmpty()) {
+            return lot;
+        }
+        List<Llibre> files = new ArrayList<>(lot.size());
+        for (Llibre llibre : lot) {
+            Llibre editat = editats.get(llibre.getId());
+            if (esborrats.contains(llibre.getId())) {
+                versionsServidor.putIfAbsent(llibre.getId(), llibre);
+            } else if (editat != null) {
+                versionsServidor.putIfAbsent(llibre.getId(), llibre);
+                files.add(editat);
+            } else {
+                files.add(llibre);
+            }
+        }
+        return files;
+    }
+
+    private static boolean darrera(DescodificadorLlibres.Resultat resultat) {
+        return resultat.darrera() != null ? resultat.darrera() : resultat.total() != MIDA_PAGINA;
+    }
+
+    private static void tancar(InputStream cos) {
+        try {
+            cos.close();
+        } catch (IOException ignored) {
+            // La resposta ja no interessa
+        }
+    }
+
+    /**
+     * Demana més llibres quan la barra de desplaçament vertical de la taula s'apropa al final.
+     *
+     * @param taula Taula on es mostren els llibres.
+     */
+    public void vincularDesplacament(TableView<?> taula) {
+        taula.skinProperty().addListener((obs, anterior, skin) -> {
+            for (Node node : taula.lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar barra && barra.getOrientation() == Orientation.VERTICAL) {
+                    barra.valueProperty().addListener((o, vell, valor) -> {
+                        if (valor.doubleValue() >= barra.getMax() * LLINDAR_DESPLACAMENT) {
+                            carregarSeguent();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Indica si hi ha una pàgina en camí.
+     *
+     * @return Propietat de només lectura per lligar-la a un indicador de progrés.
+     */
+    public ReadOnlyBooleanProperty carregantProperty() {
+        return carregant;
+    }
+}
@@ -0,0 +1,225 @@
+package com.codexteam.codexlib;
+
+import java.net.http.HttpResponse;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carrega les reserves per finestres de dates (un dia, una setmana o un mes), sense demanar mai
+ * tot l'historial.
+ *
+ * <p>De cada finestra es demana el resum per dia, {@code GET /reservations/summary?from=...&to=...}, i,
+ * si és un dia o una setmana, també les reserves, {@code GET /reservations?from=...&to=...} ({@code to}
+ * no s'inclou). D'un mes només se'n demana el resum. Si el servidor no té el resum (404), es compten
+ * les reserves de la finestra, també les d'un mes.</p>
+ *
+ * <p>Les finestres vistes fa poc es guarden (com a molt {@link #MAX_FINESTRES}, es pot canviar amb
+ * -Dcodexlib.reserves.finestres). Quan se'n mostra una, l'anterior i la següent es demanen en segon pla
+ * amb {@link #precarregar(Finestra)}, perquè avançar o retrocedir sigui immediat.</p>
+ */
+public class CarregadorReserves {
+
+    /** Nombre màxim de finestres guardades (es pot canviar amb -Dcodexlib.reserves.finestres). */
+    public static final int MAX_FINESTRES = Integer.getInteger("codexlib.reserves.finestres", 24);
+
+    /** Mida d'una finestra. */
+    public enum Escala {
+        DIA, SETMANA, MES;
+
+        /** @return Primer dia de la finestra d'aquesta escala que conté el dia. */
+        LocalDate inici(LocalDate dia) {
+            return switch (this) {
+                case DIA -> dia;
+                case SETMANA -> dia.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MES -> dia.withDayOfMonth(1);
+            };
+        }
+
+        LocalDate avancar(LocalDate inici, int finestres) {
+            return switch (this) {
+                case DIA -> inici.plusDays(finestres);
+                case SETMANA -> inici.plusWeeks(finestres);
+                case MES -> inici.plusMonths(finestres);
+            };
+        }
+    }
+
+    /**
+     * Interval de dies que es mostra.
+     *
+     * @param escala Mida de la finestra.
+     * @param inici  Primer dia (dilluns per a les setmanes i dia 1 per als mesos).
+     */
+    public record Finestra(Escala escala, LocalDate inici) {
+
+        /**
+         * @return La finestra de l'escala que conté el dia.
+         */
+        public static Finestra de(Escala escala, LocalDate dia) {
+            return new Finestra(escala, escala.inici(dia));
+        }
+
+        /** @return El dia següent a l'últim de la finestra. */
+        public LocalDate fi() {
+            return escala.avancar(inici, 1);
+        }
+
+        public Finestra anterior() {
+            return new Finestra(escala, escala.avancar(inici, -1));
+        }
+
+        public Finestra seguent() {
+            return new Finestra(escala, escala.avancar(inici, 1));
+        }
+
+        public boolean conte(LocalDate dia) {
+            return !dia.isBefore(inici) && dia.isBefore(fi());
+        }
+
+        /** @return Cert si de la finestra es demanen les reserves d'una en una (no per als mesos). */
+        public boolean ambReserves() {
+            return escala != Escala.MES;
+        }
+    }
+
+    /**
+     * Dades d'una finestra.
+     *
+     * @param finestra Finestra.
+     * @param reserves Reserves, buida per als mesos.
+     * @param resum    Reserves de cada dia de la finestra (també dels que no en tenen).
+     */
+    public record Contingut(Finestra finestra, List<Reserva> reserves, List<CodecJson.ResumDiaReserves> resum) {
+
+        public int total() {
+            int total = 0;
+            for (CodecJson.ResumDiaReserves dia : resum) {
+                total += dia.count();
+            }
+            return total;
+        }
+    }
+
+    // Finestres en ordre d'ús: la menys recent és la primera que es descarta
+    private final Map<Finestra, CompletableFuture<Contingut>> finestres = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Finestra, CompletableFuture<Contingut>> eldest) {
+            return size() > MAX_FINESTRES;
+        }
+    };
+
+    /**
+     * Retorna el contingut d'una finestra: el guardat, si n'hi ha (o la petició en curs), o el demana.
+     *
+     * @param finestra Finestra.
+     * @return Futur amb el contingut.
+     */
+    public synchronized CompletableFuture<Contingut> obtenir(Finestra finestra) {
+        CompletableFuture<Contingut> contingut = finestres.get(finestra);
+        if (contingut == null) {
+            CompletableFuture<Contingut> demanat = demanar(finestra);
+            finestres.put(finestra, demanat);
+            // Una finestra que ha fallat es tornarà a demanar
+            demanat.whenComplete((resultat, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        finestres.remove(finestra, demanat);
+                    }
+                }
+            });
+            contingut = demanat;
+        }
+        return contingut;
+    }
+
+    /**
+     * Demana en segon pla la finestra anterior i la següent, si no es tenen.
+     *
+     * @param finestra Finestra que es mostra.
+     */
+    public void precarregar(Finestra finestra) {
+        obtenir(finestra.seguent());
+        obtenir(finestra.anterior());
+    }
+
+    /**
+     * Descarta les finestres que contenen un dia (per exemple, després de fer-hi una reserva).
+     *
+     * @param dia Dia que ha canviat.
+     */
+    public synchronized void invalidar(LocalDate dia) {
+        finestres.keySet().removeIf(finestra -> finestra.conte(dia));
+    }
+
+    /**
+     * Descarta totes les finestres.
+     */
+    public synchronized void buidar() {
+        finestres.clear();
+    }
+
+    //=====================================================
+    //                    PETICIONS
+    //=====================================================
+    private static CompletableFuture<Contingut> demanar(Finestra finestra) {
+        String interval = "?from=" + finestra.inici() + "&to=" + finestra.fi();
+        CompletableFuture<List<Reserva>> reserves = finestra.ambReserves()
+                ? llistar(interval) : CompletableFuture.completedFuture(List.of());
+        CompletableFuture<List<CodecJson.ResumDiaReserves>> resum = ClientApi.enviar(
+                        ClientApi.peticio("/reservations/summary" + interval).GET(),
+                        CodecJson.<List<CodecJson.ResumDiaReserves>>cos(CodecJson.LECTOR_RESUM_RESERVES, "resum-reserves"))
+                .thenCompose(response -> {
+                    if (response.statusCode() != 404) {
+                        return CompletableFuture.completedFuture(omplir(finestra, cos(response)));
+                    }
+                    // Servidor sense resum: es compten les reserves de la finestra (les d'un mes no es mostren)
+                    return (finestra.ambReserves() ? reserves : llistar(interval))
+                            .thenApply(llista -> resumir(finestra, llista));
+                });
+        return resum.thenCombine(reserves, (perDia, llista) -> new Contingut(finestra, llista, perDia));
+    }
+
+    private static CompletableFuture<List<Reserva>> llistar(String interval) {
+        return ClientApi.enviar(ClientApi.peticio("/reservations" + interval).GET(),
+                        CodecJson.<List<Reserva>>cos(CodecJson.LECTOR_LLISTA_RESERVES, "reserves"))
+                .thenApply(CarregadorReserves::cos);
+    }
+
+    private static <T> T cos(HttpResponse<T> response) {
+        if (response.statusCode() != 200 || response.body() == null) {
+            throw new IllegalStateException("Resposta inesperada del servidor: " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    // Un element per dia de la finestra, amb 0 per als dies que el servidor no ha enviat
+    private static List<CodecJson.ResumDiaReserves> omplir(Finestra finestra, List<CodecJson.ResumDiaReserves> perDia) {
+        Map<String, Integer> comptes = new HashMap<>();
+        for (CodecJson.ResumDiaReserves dia : perDia) {
+            comptes.merge(dia.date(), dia.count(), Integer::sum);
+        }
+        List<CodecJson.ResumDiaReserves> resum = new ArrayList<>();
+        for (LocalDate dia = finestra.inici(); dia.isBefore(finestra.fi()); dia = dia.plusDays(1)) {
+            resum.add(new CodecJson.ResumDiaReserves(dia.toString(), comptes.getOrDefault(dia.toString(), 0)));
+        }
+        return resum;
+    }
+
+    // Si el servidor no té el resum, es compta a partir de les reserves
+    private static List<CodecJson.ResumDiaReserves> resumir(Finestra finestra, List<Reserva> reserves) {
+        List<CodecJson.ResumDiaReserves> perDia = new ArrayList<>();
+        for (Reserva reserva : reserves) {
+            if (reserva.getDate() != null && reserva.getDate().length() >= 10) {
+                perDia.add(new CodecJson.ResumDiaReserves(reserva.getDate().substring(0, 10), 1));
+            }
+        }
+        return omplir(finestra, perDia);
+    }
+}
@@ -0,0 +1,515 @@
+package com.codexteam.codexlib;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Emmagatzematge compacte del catàleg per columnes, pensat per a biblioteques molt grans.
+ *
+ * <p>Cada llibre ocupa una casella ("slot") de diverses taules de tipus primitius: els ids en un {@code int[]},
+ * la disponibilitat en un {@link BitSet}, l'autor i el gènere com a índexs a unes taules compartides,
+ * les dates ja convertides a valors d'època i els ISBN numèrics com a {@code long}. Els títols es
+ * guarden en UTF-8 dins d'un únic {@code byte[]}. Les dates que no tenen un format ISO reconegut es
+ * guarden com a text, de manera que en llegir-les es recupera sempre exactament el text original.</p>
+ *
+ * <p>Els llibres es llegeixen amb vistes lleugeres ({@link FilaCompacta}), que són {@link Llibre} i
+ * llegeixen les dades de la casella en cada crida. Una vista és vàlida mentre la seva casella no
+ * s'allibera. No és segur per a fils: s'ha de fer servir des del fil de JavaFX.</p>
+ */
+public class CatalegCompacte {
+
+    // Format de cada data guardada
+    private static final byte SENSE_DATA = 0;
+    private static final byte DATA = 1;        // yyyy-MM-dd -> dies des de l'època
+    private static final byte DATA_HORA = 2;   // yyyy-MM-ddTHH:mm:ss[.fff] -> microsegons des de l'època
+    private static final byte INSTANT = 3;     // yyyy-MM-ddTHH:mm:ss[.fff]Z -> microsegons des de l'època
+    private static final byte TEXT = 4;        // Qualsevol altre format -> posició al magatzem de text
+
+    // Columnes de data
+    private static final int PUBLICACIO = 0;
+    private static final int CREACIO = 1;
+    private static final int MODIFICACIO = 2;
+
+    // Tipus d'ISBN (els dos bits baixos del valor guardat)
+    private static final int ISBN_TEXT = 0;    // Format no numèric -> posició al magatzem de text
+    private static final int ISBN_13 = 1;      // 13 xifres
+    private static final int ISBN_10 = 2;      // 10 xifres
+    private static final int ISBN_10_X = 3;    // 9 xifres i una X final
+    private static final long SENSE_ISBN = -1;
+
+    private static final int SENSE_TEXT = -1;
+    private static final int SENSE_REFERENCIA = -1;
+
+    private int capacitat = 16;
+    private int caselles;
+    private int[] ids = new int[capacitat];
+    private int[] titols = new int[capacitat];
+    private long[] isbns = new long[capacitat];
+    private int[] autors = new int[capacitat];
+    private int[] generes = new int[capacitat];
+    private final long[][] dates = {new long[capacitat], new long[capacitat], new long[capacitat]};
+    private final byte[][] formats = {new byte[capacitat], new byte[capacitat], new byte[capacitat]};
+    private final BitSet disponibles = new BitSet();
+    private final BitSet ocupades = new BitSet();
+    private int[] lliures = new int[16];
+    private int totalLliures;
+
+    // Magatzem de text: cada entrada és la longitud (variable) seguida dels bytes UTF-8
+    private byte[] text = new byte[4096];
+    private int midaText;
+    private int bytesMorts;
+
+    // Taules d'autors i gèneres (les instàncies ja són compartides per RegistreEntitats)
+    private final List<Autor> taulaAutors = new ArrayList<>();
+    private final Map<Autor, Integer> indexAutors = new IdentityHashMap<>();
+    private final List<Genere> taulaGeneres = new ArrayList<>();
+    private final Map<Genere, Integer> indexGeneres = new IdentityHashMap<>();
+
+    //=====================================================
+    //                 ALTES I BAIXES
+    //=====================================================
+    /**
+     * Guarda un llibre en una casella lliure.
+     *
+     * @param llibre Llibre a guardar (pot ser una vista d'aquest mateix catàleg).
+     * @return Casella on s'ha guardat.
+     */
+    public int afegir(Llibre llibre) {
+        if (llibre instanceof FilaCompacta fila && fila.cataleg == this) {
+            llibre = copia(fila.casella); // Es llegeix tot abans d'escriure, per si la casella es reutilitza
+        }
+        int casella = totalLliures > 0 ? lliures[--totalLliures] : novaCasella();
+        ids[casella] = llibre.getId();
+        titols[casella] = guardarText(llibre.getTitle());
+        isbns[casella] = guardarIsbn(llibre.getIsbn());
+        autors[casella] = referencia(llibre.getAuthor(), taulaAutors, indexAutors);
+        generes[casella] = referencia(llibre.getGenre(), taulaGeneres, indexGeneres);
+        guardarData(PUBLICACIO, casella, llibre.getPublished_date());
+        guardarData(CREACIO, casella, llibre.getCreated_at());
+        guardarData(MODIFICACIO, casella, llibre.getUpdated_at());
+        disponibles.set(casella, llibre.isAvailable());
+        ocupades.set(casella);
+        return casella;
+    }
+
+    /**
+     * Allibera una casella perquè la pugui fer servir un altre llibre.
+     *
+     * @param casella Casella ocupada.
+     */
+    public void alliberar(int casella) {
+        alliberarText(titols[casella]);
+        if (isbns[casella] >= 0 && (isbns[casella] & 3) == ISBN_TEXT) {
+            alliberarText((int) (isbns[casella] >> 2));
+        }
+        for (int columna = 0; columna < dates.length; columna++) {
+            if (formats[columna][casella] == TEXT) {
+                alliberarText((int) dates[columna][casella]);
+            }
+        }
+        disponibles.clear(casella);
+        ocupades.clear(casella);
+        if (totalLliures == lliures.length) {
+            lliures = Arrays.copyOf(lliures, lliures.length * 2);
+        }
+        lliures[totalLliures++] = casella;
+        if (bytesMorts > 64 * 1024 && bytesMorts > midaText / 2) {
+            compactarText();
+        }
+    }
+
+    /**
+     * Retorna una vista de la casella, que llegeix les dades del catàleg a cada crida.
+     */
+    public FilaCompacta vista(int casella) {
+        return new FilaCompacta(this, casella);
+    }
+
+    /**
+     * @return Casella del llibre si és una vista d'aquest catàleg, o -1 si no ho és.
+     */
+    public int casellaDe(Llibre llibre) {
+        return llibre instanceof FilaCompacta fila && fila.cataleg == this ? fila.casella : -1;
+    }
+
+    /**
+     * Retorna una còpia independent del llibre de la casella, que es pot fer servir des d'altres fils
+     * i no canvia si la casella es reutilitza.
+     */
+    public Llibre copia(int casella) {
+        Llibre llibre = new Llibre();
+        llibre.setId(ids[casella]);
+        llibre.setTitle(llegirText(titols[casella]));
+        llibre.setIsbn(llegirIsbn(casella));
+        llibre.setAuthor(autor(casella));
+        llibre.setGenre(genere(casella));
+        llibre.setPublished_date(llegirData(PUBLICACIO, casella));
+        llibre.setCreated_at(llegirData(CREACIO, casella));
+        llibre.setUpdated_at(llegirData(MODIFICACIO, casella));
+        llibre.setAvailable(disponibles.get(casella));
+        return llibre;
+    }
+
+    private int novaCasella() {
+        if (caselles == capacitat) {
+            capacitat = capacitat + (capacitat >> 1);
+            ids = Arrays.copyOf(ids, capacitat);
+            titols = Arrays.copyOf(titols, capacitat);
+            isbns = Arrays.copyOf(isbns, capacitat);
+            autors = Arrays.copyOf(autors, capacitat);
+            generes = Arrays.copyOf(generes, capacitat);
+            for (int columna = 0; columna < dates.length; columna++) {
+                dates[columna] = Arrays.copyOf(dates[columna], capacitat);
+                formats[columna] = Arrays.copyOf(formats[columna], capacitat);
+            }
+        }
+        return caselles++;
+    }
+
+    private static <T> int referencia(T valor, List<T> taula, Map<T, Integer> index) {
+        if (valor == null) {
+            return SENSE_REFERENCIA;
+        }
+        Integer posicio = index.get(valor);
+        if (posicio == null) {
+            posicio = taula.size();
+            taula.add(valor);
+            index.put(valor, posicio);
+        }
+        return posicio;
+    }
+
+    //=====================================================
+    //            LECTURA PER COLUMNES (RECORREGUTS)
+    //=====================================================
+    public int id(int casella) { return ids[casella]; }
+
+    public boolean disponible(int casella) { return disponibles.get(casella); }
+
+    public Autor autor(int casella) {
+        return autors[casella] == SENSE_REFERENCIA ? null : taulaAutors.get(autors[casella]);
+    }
+
+    public Genere genere(int casella) {
+        return generes[casella] == SENSE_REFERENCIA ? null : taulaGeneres.get(generes[casella]);
+    }
+
+    /**
+     * @return Dia de publicació (dies des de l'1/1/1970), o {@link Long#MIN_VALUE} si no és una data ISO.
+     */
+    public long diaPublicacio(int casella) {
+        return formats[PUBLICACIO][casella] == DATA ? dates[PUBLICACIO][casella] : Long.MIN_VALUE;
+    }
+
+    /** @return Nombre de llibres disponibles, sense recórrer cap objecte. */
+    public int comptarDisponibles() {
+        return disponibles.cardinality();
+    }
+
+    /** @return Nombre de llibres guardats. */
+    public int mida() {
+        return ocupades.cardinality();
+    }
+
+    /**
+     * Compta els llibres de cada gènere amb un sol recorregut de la columna de referències.
+     *
+     * @return Gènere -> nombre de llibres (els llibres sense gènere no hi compten).
+     */
+    public Map<Genere, Integer> comptarPerGenere() {
+        int[] comptadors = new int[taulaGeneres.size()];
+        for (int casella = ocupades.nextSetBit(0); casella >= 0; casella = ocupades.nextSetBit(casella + 1)) {
+            if (generes[casella] != SENSE_REFERENCIA) {
+                comptadors[generes[casella]]++;
+            }
+        }
+        Map<Genere, Integer> resultat = new HashMap<>();
+        for (int i = 0; i < comptadors.length; i++) {
+            if (comptadors[i] > 0) {
+                resultat.put(taulaGeneres.get(i), comptadors[i]);
+            }
+        }
+        return resultat;
+    }
+
+    /**
+     * @return Bytes aproximats que ocupen les taules del catàleg (sense comptar autors i gèneres).
+     */
+    public long bytesAproximats() {
+        long perCasella = 4L * 4 + 8L + 8L * dates.length + dates.length;
+        return capacitat * perCasella + text.length + (disponibles.size() + ocupades.size()) / 8 + 4L * lliures.length;
+    }
+
+    //=====================================================
+    //                       TEXT
+    //=====================================================
+    private int guardarText(String valor) {
+        if (valor == null) {
+            return SENSE_TEXT;
+        }
+        byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+        int necessari = midaText + 5 + bytes.length;
+        if (necessari > text.length) {
+            text = Arrays.copyOf(text, Math.max(necessari, text.length + (text.length >> 1)));
+        }
+        int posicio = midaText;
+        int longitud = bytes.length;
+        while (longitud >= 0x80) {
+            text[midaText++] = (byte) (longitud | 0x80);
+            longitud >>>= 7;
+        }
+        text[midaText++] = (byte) longitud;
+        System.arraycopy(bytes, 0, text, midaText, bytes.length);
+        midaText += bytes.length;
+        return posicio;
+    }
+
+    private String llegirText(int posicio) {
+        if (posicio == SENSE_TEXT) {
+            return null;
+        }
+        int longitud = 0;
+        int desplacament = 0;
+        byte b;
+        do {
+            b = text[posicio++];
+            longitud |= (b & 0x7F) << desplacament;
+            desplacament += 7;
+        } while ((b & 0x80) != 0);
+        return new String(text, posicio, longitud, StandardCharsets.UTF_8);
+    }
+
+    private int midaEntrada(int posicio) {
+        int inici = posicio;
+        int longitud = 0;
+        int desplacament = 0;
+        byte b;
+        do {
+            b = text[posicio++];
+            longitud |= (b & 0x7F) << desplacament;
+            desplacament += 7;
+        } while ((b & 0x80) != 0);
+        return posicio - inici + longitud;
+    }
+
+    private void alliberarText(int posicio) {
+        if (posicio != SENSE_TEXT) {
+            bytesMorts += midaEntrada(posicio);
+        }
+    }
+
+    // Reescriu el magatzem només amb els textos de les caselles ocupades
+    private void compactarText() {
+        List<String> textos = new ArrayList<>();
+        for (int casella = ocupades.nextSetBit(0); casella >= 0; casella = ocupades.nextSetBit(casella + 1)) {
+            textos.add(llegirText(titols[casella]));
+            textos.add(llegirIsbn(casella));
+            for (int columna = 0; columna < dates.length; columna++) {
+                textos.add(formats[columna][casella] == TEXT ? llegirText((int) dates[columna][casella]) : null);
+            }
+        }
+
+        text = new byte[Math.max(4096, midaText - bytesMorts + 1024)];
+        midaText = 0;
+        bytesMorts = 0;
+        int i = 0;
+        for (int casella = ocupades.nextSetBit(0); casella >= 0; casella = ocupades.nextSetBit(casella + 1)) {
+            titols[casella] = guardarText(textos.get(i++));
+            isbns[casella] = guardarIsbn(textos.get(i++));
+            for (int columna = 0; columna < dates.length; columna++) {
+                String valor = textos.get(i++);
+                if (formats[columna][casella] == TEXT) {
+                    dates[columna][casella] = guardarText(valor);
+                }
+            }
+        }
+    }
+
+    //=====================================================
+    //                       ISBN
+    //=====================================================
+    // Els ISBN numèrics (gairebé tots) es guarden com a nombre; els altres, com a text
+    private long guardarIsbn(String isbn) {
+        if (isbn == null) {
+            return SENSE_ISBN;
+        }
+        int tipus = ISBN_TEXT;
+        if (isbn.length() == 13 && nomesXifres(isbn, 13)) {
+            tipus = ISBN_13;
+        } else if (isbn.length() == 10 && nomesXifres(isbn, 10)) {
+            tipus = ISBN_10;
+        } else if (isbn.length() == 10 && nomesXifres(isbn, 9) && isbn.charAt(9) == 'X') {
+            tipus = ISBN_10_X;
+        }
+        long valor = switch (tipus) {
+            case ISBN_13, ISBN_10 -> Long.parseLong(isbn);
+            case ISBN_10_X -> Long.parseLong(isbn.substring(0, 9));
+            default -> guardarText(isbn);
+        };
+        return valor << 2 | tipus;
+    }
+
+    private String llegirIsbn(int casella) {
+        long guardat = isbns[casella];
+        if (guardat == SENSE_ISBN) {
+            return null;
+        }
+        long valor = guardat >> 2;
+        return switch ((int) (guardat & 3)) {
+            case ISBN_13 -> ambZeros(valor, 13);
+            case ISBN_10 -> ambZeros(valor, 10);
+            case ISBN_10_X -> ambZeros(valor, 9) + "X";
+            default -> llegirText((int) valor);
+        };
+    }
+
+    private static boolean nomesXifres(String text, int fins) {
+        for (int i = 0; i < fins; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String ambZeros(long valor, int xifres) {
+        String text = Long.toString(valor);
+        return text.length() >= xifres ? text : "0".repeat(xifres - text.length()) + text;
+    }
+
+    //=====================================================
+    //                       DATES
+    //=====================================================
+    // Només es converteix si en tornar a formatar la data surt exactament el mateix text
+    private void guardarData(int columna, int casella, String valor) {
+        byte format = SENSE_DATA;
+        long numero = 0;
+        if (valor != null) {
+            format = TEXT;
+            try {
+                if (valor.length() == 10) {
+                    long dia = LocalDate.parse(valor).toEpochDay();
+                    if (formatarData(DATA, dia).equals(valor)) {
+                        format = DATA;
+                        numero = dia;
+                    }
+                } else if (valor.length() >= 19 && valor.charAt(10) == 'T') {
+                    byte candidat = valor.endsWith("Z") ? INSTANT : DATA_HORA;
+                    Instant instant = candidat == INSTANT ? Instant.parse(valor)
+                            : LocalDateTime.parse(valor).toInstant(ZoneOffset.UTC);
+                    if (instant.getNano() % 1000 == 0) {
+                        long micros = Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1000);
+                        if (formatarData(candidat, micros).equals(valor)) {
+                            format = candidat;
+                            numero = micros;
+                        }
+                    }
+                }
+            } catch (DateTimeParseException | ArithmeticException e) {
+                // Es queda com a text
+            }
+            if (format == TEXT) {
+                numero = guardarText(valor);
+            }
+        }
+        formats[columna][casella] = format;
+        dates[columna][casella] = numero;
+    }
+
+    private String llegirData(int columna, int casella) {
+        byte format = formats[columna][casella];
+        long numero = dates[columna][casella];
+        return switch (format) {
+            case SENSE_DATA -> null;
+            case TEXT -> llegirText((int) numero);
+            default -> formatarData(format, numero);
+        };
+    }
+
+    private static String formatarData(byte format, long numero) {
+        if (format == DATA) {
+            return LocalDate.ofEpochDay(numero).toString();
+        }
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(numero, 1_000_000L), Math.floorMod(numero, 1_000_000L) * 1000);
+        return format == INSTANT ? DateTimeFormatter.ISO_INSTANT.format(instant)
+                : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(LocalDateTime.ofInstant(instant, ZoneOffset.UTC));
+    }
+
+    //=====================================================
+    //                       VISTES
+    //=====================================================
+    /**
+     * Vista d'un llibre del catàleg compacte. Els getters llegeixen les columnes del catàleg, de manera
+     * que la vista ocupa molt poc i la poden fer servir les cel·les de la taula com qualsevol {@link Llibre}.
+     * No es pot modificar: els canvis s'han de fer substituint el llibre a la llista.
+     */
+    public static final class FilaCompacta extends Llibre {
+
+        private final CatalegCompacte cataleg;
+        private final int casella;
+
+        private FilaCompacta(CatalegCompacte cataleg, int casella) {
+            this.cataleg = cataleg;
+            this.casella = casella;
+        }
+
+        public int getCasella() { return casella; }
+
+        @Override public int getId() { return cataleg.ids[casella]; }
+        @Override public String getTitle() { return cataleg.llegirText(cataleg.titols[casella]); }
+        @Override public Autor getAuthor() { return cataleg.autor(casella); }
+        @Override public String getIsbn() { return cataleg.llegirIsbn(casella); }
+        @Override public String getPublished_date() { return cataleg.llegirData(PUBLICACIO, casella); }
+        @Override public Genere getGenre() { return cataleg.genere(casella); }
+        @Override public boolean isAvailable() { return cataleg.disponibles.get(casella); }
+        @Override public String getCreated_at() { return cataleg.llegirData(CREACIO, casella); }
+        @Override public String getUpdated_at() { return cataleg.llegirData(MODIFICACIO, casella); }
+
+        @Override
+        public String getAuthorName() {
+            Autor autor = getAuthor();
+            return autor != null ? autor.getName() : "Desconegut";
+        }
+
+        @Override
+        public String getGenreName() {
+            Genere genere = getGenre();
+            return genere != null ? genere.getName() : "Sense gènere";
+        }
+
+        @Override public void setId(int id) { throw new UnsupportedOperationException(); }
+        @Override public void setTitle(String title) { throw new UnsupportedOperationException(); }
+        @Override public void setAuthor(Autor author) { throw new UnsupportedOperationException(); }
+        @Override public void setIsbn(String isbn) { throw new UnsupportedOperationException(); }
+        @Override public void setPublished_date(String published_date) { throw new UnsupportedOperationException(); }
+        @Override public void setGenre(Genere genre) { throw new UnsupportedOperationException(); }
+        @Override public void setAvailable(boolean available) { throw new UnsupportedOperationException(); }
+        @Override public void setCreated_at(String created_at) { throw new UnsupportedOperationException(); }
+        @Override public void setUpdated_at(String updated_at) { throw new UnsupportedOperationException(); }
+
+        // Dues vistes de la mateixa casella representen el mateix llibre (per a la selecció de la taula)
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FilaCompacta altra && altra.cataleg == cataleg && altra.casella == casella;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(cataleg), casella);
+        }
+    }
+}
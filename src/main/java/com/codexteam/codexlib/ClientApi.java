@@ -0,0 +1,207 @@
+package com.codexteam.codexlib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Client HTTP compartit per tota l'aplicació.
+ * Manté un únic {@link HttpClient} (HTTP/2, amb reutilització de connexions). Els lectors i
+ * l'escriptor de JSON són a {@link CodecJson}.
+ */
+public class ClientApi {
+
+    /** URL base del servidor de CodexLibris (es pot canviar amb -Dcodexlib.servidor). */
+    public static final String URL_SERVIDOR = System.getProperty("codexlib.servidor", "http://localhost:8080");
+
+    /** Temps màxim per establir una connexió nova. */
+    private static final Duration TEMPS_CONNEXIO = Duration.ofSeconds(10);
+
+    /** Temps màxim d'espera d'una resposta. */
+    public static final Duration TEMPS_PETICIO = Duration.ofSeconds(30);
+
+    /** Nombre de fils de l'executor per defecte (es pot canviar amb -Dcodexlib.http.fils). */
+    private static final int FILS_PER_DEFECTE = Integer.getInteger("codexlib.http.fils", 4);
+
+    /** Segons que una connexió inactiva es manté oberta per reutilitzar-la. */
+    private static final String KEEP_ALIVE_SEGONS = "300";
+
+    // Marca d'una resposta cancel·lada abans d'enviar la petició
+    private static final CompletableFuture<?> CANCELLADA = new CompletableFuture<>();
+
+    /**
+     * Executor per llegir cossos de resposta en flux. La lectura bloqueja, i fer-la als fils
+     * del client HTTP podria deixar-lo sense fils per rebre les dades que s'esperen.
+     */
+    public static final ExecutorService EXECUTOR_LECTURA = crearExecutor(2, "codexlib-lectura-");
+
+    private static Executor executor;
+    private static volatile HttpClient client;
+
+    /**
+     * Defineix l'executor que farà servir el client HTTP. S'ha de cridar abans del primer ús del client.
+     *
+     * @param executorPersonalitzat Executor per a les tasques asíncrones del client.
+     * @throws IllegalStateException Si el client ja s'ha creat.
+     */
+    public static synchronized void configurarExecutor(Executor executorPersonalitzat) {
+        if (client != null) {
+            throw new IllegalStateException("El client HTTP ja s'ha creat; l'executor s'ha de configurar abans del primer ús.");
+        }
+        executor = executorPersonalitzat;
+    }
+
+    /**
+     * Retorna el client HTTP compartit, creant-lo el primer cop que es demana.
+     *
+     * @return Client HTTP de l'aplicació.
+     */
+    public static HttpClient getClient() {
+        HttpClient actual = client;
+        if (actual == null) {
+            synchronized (ClientApi.class) {
+                if (client == null) {
+                    client = crearClient();
+                }
+                actual = client;
+            }
+        }
+        return actual;
+    }
+
+    private static HttpClient crearClient() {
+        // Mantenir les connexions vives entre refrescos del catàleg (s'ha de fixar abans de crear el client)
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", KEEP_ALIVE_SEGONS);
+        }
+        Executor exec = executor != null ? executor : crearExecutor(FILS_PER_DEFECTE, "codexlib-http-");
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(TEMPS_CONNEXIO)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(exec)
+                .build();
+    }
+
+    // Fils dimoni perquè no impedeixin tancar l'aplicació
+    static ExecutorService crearExecutor(int fils, String prefix) {
+        AtomicInteger comptador = new AtomicInteger();
+        return Executors.newFixedThreadPool(fils, r -> {
+            Thread fil = new Thread(r, prefix + comptador.incrementAndGet());
+            fil.setDaemon(true);
+            return fil;
+        });
+    }
+
+    /**
+     * Crea una petició cap al servidor de CodexLibris amb el token de sessió, si n'hi ha.
+     *
+     * @param ruta Ruta de l'endpoint (per exemple "/books").
+     * @return Constructor de la petició, llest per afegir-hi el mètode i el cos.
+     */
+    public static HttpRequest.Builder peticio(String ruta) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(URL_SERVIDOR + ruta))
+                .timeout(TEMPS_PETICIO)
+                .header("Content-Type", "application/json");
+        String token = ConnexioServidor.getTokenSessio();
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+
+    /**
+     * Envia una petició al servidor de CodexLibris amb un token vigent. Si el token està a punt de caducar,
+     * s'espera el refresc (un de sol per a totes les peticions); si el servidor respon 401, es refresca el
+     * token i es torna a enviar una vegada.
+     *
+     * @param builder Petició creada amb {@link #peticio(String)}.
+     * @param cos     Gestor del cos de la resposta.
+     * @return Futur amb la resposta (cancel·lar-lo cancel·la la petició que s'estigui enviant).
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> enviar(HttpRequest.Builder builder, HttpResponse.BodyHandler<T> cos) {
+        AtomicReference<CompletableFuture<?>> enCurs = new AtomicReference<>();
+        CompletableFuture<HttpResponse<T>> resposta = ConnexioServidor.tokenVigent()
+                .thenCompose(token -> enviarAmbToken(builder, cos, token, enCurs))
+                .thenCompose(response -> {
+                    String tokenUsat = response.request().headers().firstValue("Authorization")
+                            .map(valor -> valor.substring("Bearer ".length())).orElse(null);
+                    if (response.statusCode() != 401 || tokenUsat == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    return ConnexioServidor.refrescar(tokenUsat).thenCompose(token -> {
+                        // Sense token nou (refresc fallat, en espera o sessió acabada) es torna el 401
+                        if (token == null || token.equals(tokenUsat)) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+                        tancarCos(response.body());
+                        return enviarAmbToken(builder, cos, token, enCurs);
+                    });
+                });
+        resposta.whenComplete((response, error) -> {
+            if (resposta.isCancelled()) {
+                CompletableFuture<?> peticio = enCurs.getAndSet(CANCELLADA);
+                if (peticio != null) {
+                    peticio.cancel(true);
+                }
+            }
+        });
+        return resposta;
+    }
+
+    private static <T> CompletableFuture<HttpResponse<T>> enviarAmbToken(HttpRequest.Builder builder,
+                                                                         HttpResponse.BodyHandler<T> cos, String token,
+                                                                         AtomicReference<CompletableFuture<?>> enCurs) {
+        HttpRequest.Builder copia = builder.copy();
+        if (token != null) {
+            copia.setHeader("Authorization", "Bearer " + token);
+        }
+        CompletableFuture<?> anterior = enCurs.get();
+        if (anterior == CANCELLADA) {
+            return CompletableFuture.failedFuture(new CancellationException());
+        }
+        CompletableFuture<HttpResponse<T>> peticio = enviarMesurant(copia.build(), cos);
+        // Si s'ha cancel·lat mentre s'enviava, ja no la vol ningú
+        if (!enCurs.compareAndSet(anterior, peticio)) {
+            peticio.cancel(true);
+        }
+        return peticio;
+    }
+
+    /**
+     * Envia una petició amb el client compartit i en registra la latència i la mida a {@link Telemetria}.
+     *
+     * @param request Petició.
+     * @param cos     Gestor del cos de la resposta.
+     * @return Futur de la mateixa petició (cancel·lar-lo la cancel·la).
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> enviarMesurant(HttpRequest request, HttpResponse.BodyHandler<T> cos) {
+        long inici = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> resposta = getClient().sendAsync(request, cos);
+        resposta.whenComplete((response, error) -> Telemetria.peticio(request, response, error, inici));
+        return resposta;
+    }
+
+    // Els cossos en flux s'han de tancar perquè es pugui reutilitzar la connexió
+    private static void tancarCos(Object cos) {
+        if (cos instanceof InputStream entrada) {
+            try {
+                entrada.close();
+            } catch (IOException ignored) {
+                // La resposta ja no interessa
+            }
+        }
+    }
+}
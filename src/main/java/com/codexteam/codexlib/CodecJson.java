@@ -0,0 +1,198 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversió entre JSON i objectes de tota l'aplicació, amb Jackson.
+ *
+ * <p>Els lectors i l'escriptor es construeixen una sola vegada. Els missatges de l'API (login, refresc)
+ * i d'Open Library tenen el seu record; en aquests s'ignoren els camps que el client no fa servir.
+ * Les respostes es descodifiquen directament dels bytes rebuts amb {@link #cos(ObjectReader, String)},
+ * sense passar per un {@code String}.</p>
+ */
+public class CodecJson {
+
+    // Els autors i gèneres descodificats es comparteixen entre llibres (vegeu RegistreEntitats)
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(RegistreEntitats.modul());
+
+    // ENTITATS DEL CATÀLEG
+    public static final ObjectReader LECTOR_LLIBRE = MAPPER.readerFor(Llibre.class);
+    public static final ObjectReader LECTOR_LLISTA_LLIBRES = MAPPER.readerFor(new TypeReference<List<Llibre>>() {});
+    public static final ObjectReader LECTOR_AUTOR = MAPPER.readerFor(Autor.class);
+    public static final ObjectReader LECTOR_GENERE = MAPPER.readerFor(Genere.class);
+    public static final ObjectWriter ESCRIPTOR = MAPPER.writer();
+    public static final ObjectReader LECTOR_ARBRE = MAPPER.readerFor(JsonNode.class);
+
+    // MISSATGES
+    public static final ObjectReader LECTOR_RESPOSTA_LOGIN = lectorTolerant(RespostaLogin.class);
+    public static final ObjectReader LECTOR_RESPOSTA_TOKEN = lectorTolerant(RespostaToken.class);
+    public static final ObjectReader LECTOR_CONTINGUT_JWT = lectorTolerant(ContingutJwt.class);
+    /** Resposta de {@code /api/books?jscmd=data}: un objecte per a cada "ISBN:..." trobat. */
+    public static final ObjectReader LECTOR_OPEN_LIBRARY = MAPPER.readerFor(new TypeReference<Map<String, LlibreOpenLibrary>>() {})
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    public static final ObjectReader LECTOR_LLIBRE_OPEN_LIBRARY = lectorTolerant(LlibreOpenLibrary.class);
+    public static final ObjectReader LECTOR_OPERACIO = lectorTolerant(Operacio.class);
+    public static final ObjectReader LECTOR_RESPOSTA_LOT = lectorTolerant(RespostaLot.class);
+    public static final ObjectReader LECTOR_LLISTA_RESERVES = MAPPER.readerFor(new TypeReference<List<Reserva>>() {})
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    public static final ObjectReader LECTOR_RESUM_RESERVES = MAPPER.readerFor(new TypeReference<List<ResumDiaReserves>>() {})
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    public static final ObjectReader LECTOR_PAGINA_USUARIS = lectorTolerant(PaginaUsuaris.class);
+
+    /** Cos de {@code POST /auth/login}. */
+    public record PeticioLogin(String username, String password) {
+    }
+
+    /** Resposta de {@code POST /auth/login}. */
+    public record RespostaLogin(String token, String username, int roleId) {
+    }
+
+    /** Resposta de {@code POST /auth/refresh}. */
+    public record RespostaToken(String token) {
+    }
+
+    /** Part central d'un JWT; només interessa la caducitat (segons des de 1970). */
+    public record ContingutJwt(Long exp) {
+    }
+
+    /** Llibre d'Open Library, amb els camps que es fan servir per omplir una {@link FitxaIsbn}. */
+    public record LlibreOpenLibrary(String title, List<AutorOpenLibrary> authors, String publish_date, PortadaOpenLibrary cover) {
+    }
+
+    /** Autor d'un llibre d'Open Library. */
+    public record AutorOpenLibrary(String name) {
+    }
+
+    /** URL de la portada d'un llibre d'Open Library en cada mida. */
+    public record PortadaOpenLibrary(String small, String medium, String large) {
+    }
+
+    /**
+     * Escriptura pendent d'enviar al servidor, tal com es desa al diari ({@link DiariEscriptures}) i
+     * s'envia a {@code POST /batch}.
+     *
+     * @param id      Identificador únic de l'operació (el servidor el retorna amb el resultat).
+     * @param user    Usuari que l'ha feta.
+     * @param method  Mètode HTTP ("PUT", "POST"...).
+     * @param path    Ruta de l'endpoint (per exemple "/books/12").
+     * @param body    Cos de la petició, o null.
+     * @param base    {@code updated_at} de la versió que s'ha modificat, o null si és un element nou.
+     *                Si al servidor ja no és el vigent, l'operació és un conflicte (409).
+     * @param created Moment en què es va fer (mil·lisegons des de 1970).
+     */
+    public record Operacio(String id, String user, String method, String path, JsonNode body, String base, long created) {
+    }
+
+    /** Cos de {@code POST /batch}. */
+    public record PeticioLot(List<Operacio> operations) {
+    }
+
+    /** Resposta de {@code POST /batch}: un resultat per operació. */
+    public record RespostaLot(List<ResultatOperacio> results) {
+    }
+
+    /** Resultat d'una operació del lot: el codi HTTP que hauria tingut sola i el cos de la resposta. */
+    public record ResultatOperacio(String id, int status, JsonNode body) {
+    }
+
+    /** Cos de {@code POST /reservations}. */
+    public record PeticioReserva(int book_id, String username, String date) {
+    }
+
+    /** Element de {@code GET /reservations/summary}: reserves d'un dia. */
+    public record ResumDiaReserves(String date, int count) {
+    }
+
+    /**
+     * Resposta de {@code GET /users}: una pàgina d'usuaris i els cursors per demanar la del davant i
+     * la del darrere (null si no n'hi ha).
+     */
+    public record PaginaUsuaris(List<Usuari> data, String prev_cursor, String next_cursor) {
+    }
+
+    private static ObjectReader lectorTolerant(Class<?> tipus) {
+        return MAPPER.readerFor(tipus).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Gestor de resposta que descodifica el cos amb el lector quan el codi és 2xx. Amb qualsevol altre
+     * codi el cos es descarta i {@code response.body()} és null. El temps de descodificació queda
+     * registrat a {@link Telemetria}.
+     *
+     * @param lector Lector del tipus de la resposta.
+     * @param nom    Nom de la descodificació per a la telemetria ("login", "openlibrary"...).
+     * @return El gestor per a {@code send}/{@code sendAsync}.
+     */
+    public static <T> HttpResponse.BodyHandler<T> cos(ObjectReader lector, String nom) {
+        return info -> info.statusCode() / 100 == 2
+                ? HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> llegir(lector, bytes, nom))
+                : HttpResponse.BodySubscribers.replacing(null);
+    }
+
+    /**
+     * Descodifica un JSON ja rebut.
+     *
+     * @param lector Lector del tipus.
+     * @param bytes  JSON en UTF-8.
+     * @param nom    Nom de la descodificació per a la telemetria.
+     * @return L'objecte descodificat.
+     * @throws UncheckedIOException Si el JSON no és vàlid o no té el format esperat.
+     */
+    public static <T> T llegir(ObjectReader lector, byte[] bytes, String nom) {
+        long inici = System.nanoTime();
+        try {
+            T valor = lector.readValue(bytes);
+            Telemetria.descodificacio(nom, inici, 1);
+            return valor;
+        } catch (IOException e) {
+            throw new UncheckedIOException("JSON no vàlid (" + nom + ")", e);
+        }
+    }
+
+    /**
+     * Cos d'una petició amb l'objecte en JSON.
+     *
+     * @param valor Objecte que s'ha d'enviar.
+     * @return El cos per a {@link HttpRequest.Builder#POST}.
+     */
+    public static HttpRequest.BodyPublisher cosPeticio(Object valor) {
+        return HttpRequest.BodyPublishers.ofByteArray(bytes(valor));
+    }
+
+    /**
+     * Converteix un objecte a un arbre JSON (per desar-lo dins d'un altre missatge).
+     *
+     * @param valor Objecte, o null.
+     * @return L'arbre, o null si el valor és null.
+     */
+    public static JsonNode arbre(Object valor) {
+        return valor != null ? MAPPER.valueToTree(valor) : null;
+    }
+
+    /**
+     * Converteix un objecte a JSON.
+     *
+     * @param valor Objecte.
+     * @return El JSON en UTF-8.
+     */
+    public static byte[] bytes(Object valor) {
+        try {
+            return ESCRIPTOR.writeValueAsBytes(valor);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
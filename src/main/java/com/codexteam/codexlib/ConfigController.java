@@ -0,0 +1,24 @@
+package com.codexteam.codexlib;
+
+import javafx.fxml.FXML;
+
+import java.io.IOException;
+
+/**
+ * Controlador de la finestra de configuració.
+ */
+public class ConfigController {
+
+    /**
+     * Obre la finestra de diagnòstic amb les mesures del client ({@link Telemetria}).
+     */
+    @FXML
+    private void obrirDiagnostic() {
+        try {
+            CacheVistes.mostrarFinestra("/com/codexteam/codexlib/fxml/diagnosticView.fxml", "Diagnòstic del client",
+                    "/com/codexteam/codexlib/images/config_.png");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Canvis de la taula de llibres (edicions i esborrats) que s'envien junts.
+ *
+ * <p>Cada canvi s'aplica de seguida a la llista, sense esperar el servidor, i es guarda la versió
+ * d'abans. {@link #enviar()} registra tots els canvis acumulats a {@link CuaEscriptures} d'un sol cop,
+ * de manera que surten en el mateix lot: canviar la disponibilitat o el gènere de centenars de llibres
+ * és una sola petició. Quan arriba el resultat de cada canvi:</p>
+ * <ul>
+ *     <li>Confirmat: la fila passa a ser la versió que retorna el servidor (ho fa el panell, vegeu
+ *         {@link CuaEscriptures#escoltar}).</li>
+ *     <li>Rebutjat o en conflicte: la fila torna a la versió d'abans, al mateix lloc, i un llibre esborrat
+ *         torna a la posició que tenia. En un conflicte, després hi arriba la versió vigent del servidor.</li>
+ * </ul>
+ *
+ * <p>La versió d'abans és la primera que no té cap canvi per confirmar: si es torna a editar un llibre
+ * mentre la primera edició encara és al servidor, un rebuig de la segona no deixa a la taula la primera
+ * sense confirmar. Quan una edició es confirma, la versió del servidor passa a ser la d'abans de les
+ * següents.</p>
+ *
+ * <p>S'ha de fer servir des del fil de JavaFX.</p>
+ */
+public class ConjuntCanvis {
+
+    /**
+     * Canvi d'un llibre. Les files es guarden com a còpies: en una llista compacta, la fila que es treu o
+     * se substitueix és una vista d'una casella que queda lliure.
+     *
+     * @param original Fila abans del primer canvi sense confirmar.
+     * @param posicio  Posició de la fila quan es va fer el canvi.
+     * @param nou      Fila nova, o null si s'ha esborrat.
+     */
+    private record Canvi(Llibre original, int posicio, Llibre nou) {
+    }
+
+    /**
+     * Resultat d'un canvi enviat, pendent d'aplicar al fil de JavaFX.
+     *
+     * @param canvi     Canvi enviat.
+     * @param confirmat Cert si el servidor l'ha acceptat.
+     * @param servidor  Versió desada pel servidor, o null.
+     */
+    private record Resolt(Canvi canvi, boolean confirmat, Llibre servidor) {
+    }
+
+    private final ObservableList<Llibre> llibres;
+    private final Consumer<Llibre> abansDeCanviar;
+    private final Map<Integer, Canvi> canvis = new LinkedHashMap<>();
+    // Últim canvi enviat de cada llibre que encara no té resultat
+    private final Map<Integer, Canvi> enviats = new HashMap<>();
+    private final List<Resolt> resolts = new ArrayList<>();
+
+    /**
+     * @param llibres        Llista de llibres que mostra la taula.
+     * @param abansDeCanviar Rep cada fila just abans que un canvi la substitueixi o la tregui de la llista
+     *                       (vegeu {@link CarregadorLlibres#recordarVersioServidor(Llibre)}).
+     */
+    public ConjuntCanvis(ObservableList<Llibre> llibres, Consumer<Llibre> abansDeCanviar) {
+        this.llibres = llibres;
+        this.abansDeCanviar = abansDeCanviar;
+    }
+
+    /**
+     * Substitueix files per les versions editades.
+     *
+     * @param editats Còpies editades dels llibres (vegeu {@link Llibre#copia()}).
+     */
+    public void editar(Collection<Llibre> editats) {
+        Map<Integer, Integer> posicions = posicions();
+        for (Llibre nou : editats) {
+            Integer posicio = posicions.get(nou.getId());
+            if (posicio == null) {
+                continue; // Ja no és a la llista
+            }
+            Llibre fila = llibres.get(posicio);
+            canvis.put(nou.getId(), new Canvi(original(fila), posicio, nou));
+            abansDeCanviar.accept(fila);
+            llibres.set(posicio, nou);
+        }
+    }
+
+    /**
+     * Treu llibres de la llista.
+     *
+     * @param esborrats Llibres que s'esborren.
+     */
+    public void esborrar(Collection<Llibre> esborrats) {
+        Map<Integer, Integer> posicions = posicions();
+        Set<Integer> ids = new HashSet<>();
+        for (Llibre llibre : esborrats) {
+            Integer posicio = posicions.get(llibre.getId());
+            if (posicio == null) {
+                continue;
+            }
+            Llibre fila = llibres.get(posicio);
+            canvis.put(llibre.getId(), new Canvi(original(fila), posicio, null));
+            abansDeCanviar.accept(fila);
+            ids.add(llibre.getId());
+        }
+        // Un sol canvi a la llista per a tots els esborrats
+        llibres.removeIf(llibre -> ids.contains(llibre.getId()));
+    }
+
+    /** @return Nombre de llibres amb canvis per enviar. */
+    public int mida() {
+        return canvis.size();
+    }
+
+    /**
+     * Envia els canvis acumulats en un sol lot i buida el conjunt.
+     *
+     * @return Futur que s'acaba quan tots els canvis tenen resultat. Falla si no s'han pogut desar al diari
+     *         (els canvis ja s'han desfet).
+     */
+    public CompletableFuture<Void> enviar() {
+        if (canvis.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Canvi> enviats = new ArrayList<>(canvis.values());
+        canvis.clear();
+
+        List<CuaEscriptures.Escriptura> escriptures = new ArrayList<>(enviats.size());
+        for (Canvi canvi : enviats) {
+            String ruta = "/books/" + canvi.original().getId();
+            String base = canvi.original().getUpdated_at();
+            escriptures.add(canvi.nou() != null
+                    ? new CuaEscriptures.Escriptura("PUT", ruta, canvi.nou(), base)
+                    : new CuaEscriptures.Escriptura("DELETE", ruta, null, base));
+        }
+
+        List<CompletableFuture<CuaEscriptures.Resultat>> resultats = CuaEscriptures.registrar(escriptures);
+        for (int i = 0; i < enviats.size(); i++) {
+            Canvi canvi = enviats.get(i);
+            this.enviats.put(canvi.original().getId(), canvi);
+            resultats.get(i).whenComplete((resultat, error) -> {
+                boolean confirmat = error == null && resultat.estat() == CuaEscriptures.Estat.CONFIRMADA;
+                resoldre(new Resolt(canvi, confirmat, confirmat ? resultat.llibre() : null));
+            });
+        }
+        return CompletableFuture.allOf(resultats.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Desfà els canvis que encara no s'han enviat.
+     */
+    public void descartar() {
+        List<Canvi> pendents = new ArrayList<>(canvis.values());
+        canvis.clear();
+        desfer(pendents);
+    }
+
+    // Versió d'abans per a un canvi nou: la del canvi pendent o enviat del mateix llibre, si n'hi ha
+    private Llibre original(Llibre fila) {
+        Canvi anterior = canvis.get(fila.getId());
+        if (anterior == null) {
+            anterior = enviats.get(fila.getId());
+        }
+        return anterior != null ? anterior.original() : fila.copia();
+    }
+
+    // Els resultats arriben d'un en un des d'un altre fil: s'apliquen junts en una sola tasca de JavaFX
+    private void resoldre(Resolt resolt) {
+        synchronized (resolts) {
+            if (resolts.isEmpty()) {
+                Platform.runLater(this::aplicarResolts);
+            }
+            resolts.add(resolt);
+        }
+    }
+
+    private void aplicarResolts() {
+        List<Resolt> pendents;
+        synchronized (resolts) {
+            pendents = new ArrayList<>(resolts);
+            resolts.clear();
+        }
+        List<Canvi> rebutjats = new ArrayList<>();
+        for (Resolt resolt : pendents) {
+            Canvi canvi = resolt.canvi();
+            int id = canvi.original().getId();
+            enviats.remove(id, canvi);
+            if (!resolt.confirmat()) {
+                rebutjats.add(canvi);
+            } else if (canvi.nou() != null) {
+                // Els canvis posteriors del llibre ja no s'han de desfer fins abans d'aquest
+                Llibre confirmat = resolt.servidor() != null ? resolt.servidor() : canvi.nou();
+                canvis.computeIfPresent(id, (clau, posterior) -> new Canvi(confirmat, posterior.posicio(), posterior.nou()));
+                enviats.computeIfPresent(id, (clau, posterior) -> new Canvi(confirmat, posterior.posicio(), posterior.nou()));
+            }
+        }
+        desfer(rebutjats);
+    }
+
+    // Torna les files a la versió d'abans, si no n'ha arribat una de més nova mentrestant, i torna els
+    // llibres esborrats a la posició que tenien
+    private void desfer(List<Canvi> desfets) {
+        if (desfets.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> posicions = posicions();
+        Map<Integer, Canvi> esborrats = new HashMap<>();
+        for (Canvi canvi : desfets) {
+            Integer posicio = posicions.get(canvi.original().getId());
+            if (posicio == null) {
+                if (canvi.nou() == null) {
+                    esborrats.putIfAbsent(canvi.original().getId(), canvi);
+                }
+            } else if (mateixaVersio(llibres.get(posicio), canvi.nou())) {
+                llibres.set(posicio, canvi.original());
+            }
+        }
+        // Per ordre de posició, perquè cada llibre torni a caure on era
+        List<Canvi> perPosicio = new ArrayList<>(esborrats.values());
+        perPosicio.sort(Comparator.comparingInt(Canvi::posicio));
+        for (Canvi canvi : perPosicio) {
+            llibres.add(Math.min(canvi.posicio(), llibres.size()), canvi.original());
+        }
+    }
+
+    // Es compara el contingut: les files d'una llista compacta són vistes noves a cada get()
+    private static boolean mateixaVersio(Llibre fila, Llibre nou) {
+        return nou != null && fila.getId() == nou.getId()
+                && Objects.equals(fila.getUpdated_at(), nou.getUpdated_at())
+                && Objects.equals(fila.getTitle(), nou.getTitle())
+                && Objects.equals(fila.getIsbn(), nou.getIsbn())
+                && Objects.equals(fila.getPublished_date(), nou.getPublished_date())
+                && fila.isAvailable() == nou.isAvailable()
+                && (fila.getAuthor() == null ? nou.getAuthor() == null
+                        : nou.getAuthor() != null && fila.getAuthor().getId() == nou.getAuthor().getId())
+                && (fila.getGenre() == null ? nou.getGenre() == null
+                        : nou.getGenre() != null && fila.getGenre().getId() == nou.getGenre().getId());
+    }
+
+    private Map<Integer, Integer> posicions() {
+        Map<Integer, Integer> posicions = new HashMap<>(llibres.size() * 2);
+        for (int i = 0; i < llibres.size(); i++) {
+            posicions.put(llibres.get(i).getId(), i);
+        }
+        return posicions;
+    }
+}
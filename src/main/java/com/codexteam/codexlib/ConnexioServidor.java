@@ -1,28 +1,71 @@
 package com.codexteam.codexlib;
 
-import org.json.JSONObject;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Scanner;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Classe encarregada de gestionar la connexió amb el servidor,
  * incloent l'autenticació mitjançant login i l'emmagatzematge del token JWT.
+ *
+ * <p>La sessió es guarda en una {@link SessioUsuari} immutable. El token es refresca amb
+ * {@code POST /auth/refresh} una mica abans que caduqui (segons el camp {@code exp} del JWT).
+ * Només hi ha un refresc en curs alhora: les peticions que el necessiten l'esperen
+ * (vegeu {@link #tokenVigent()} i {@link ClientApi#enviar}).</p>
+ *
+ * <p>Si el refresc falla (servidor caigut, error de xarxa), no es torna a provar fins al cap d'una espera
+ * que es dobla a cada fallada (de {@link #ESPERA_INICIAL} a {@link #ESPERA_MAXIMA}); mentrestant les
+ * peticions fan servir el token que hi ha. Si el servidor respon 401 o 403, la sessió ja no es pot
+ * refrescar: es tanca i s'avisa els oients de {@link #escoltarFiSessio(Runnable)}.</p>
  */
 public class ConnexioServidor {
 
-    /** Token JWT obtingut després de fer login. */
-    private static String tokenSessio = null;
+    /** Temps abans de la caducitat en què es refresca el token (es pot canviar amb -Dcodexlib.sessio.marge, en segons). */
+    private static final Duration MARGE_REFRESC = Duration.ofSeconds(Long.getLong("codexlib.sessio.marge", 60));
 
-    /** Nom de l'usuari que ha iniciat sessió. */
-    private static String nomUsuariActual = null;
+    /** Sessió actual, o null si no s'ha iniciat sessió. */
+    private static final AtomicReference<SessioUsuari> SESSIO = new AtomicReference<>();
 
-    /** Tipus d'usuari (1 = administrador, qualsevol altre = usuari normal). */
-    private static int tipusUsuari = -1;
+    /** Espera després del primer refresc fallat i màxima. */
+    private static final Duration ESPERA_INICIAL = Duration.ofSeconds(5);
+    private static final Duration ESPERA_MAXIMA = Duration.ofMinutes(5);
+
+    private static final System.Logger REGISTRE = System.getLogger(ConnexioServidor.class.getName());
+
+    // Refresc en curs, compartit per totes les peticions que l'esperen
+    private static CompletableFuture<String> refrescEnCurs;
+    private static ScheduledFuture<?> refrescProgramat;
+    // Després d'un refresc fallat, no se'n prova cap altre abans d'aquest moment
+    private static Instant properIntent;
+    private static Duration espera = ESPERA_INICIAL;
+
+    private static final List<Runnable> OIENTS_FI_SESSIO = new CopyOnWriteArrayList<>();
+
+    /** El servidor no accepta el token per refrescar-lo: la sessió s'ha acabat. */
+    private static final class SessioAcabada extends RuntimeException {
+        SessioAcabada(int codi) {
+            super("El servidor no ha acceptat el refresc de la sessió: " + codi);
+        }
+    }
+
+    private static final ScheduledExecutorService PROGRAMADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread fil = new Thread(r, "codexlib-sessio");
+        fil.setDaemon(true);
+        return fil;
+    });
 
     /**
-     * Realitza el procés de login amb el servidor.
+     * Realitza el procés de login amb el servidor. Bloqueja fins que arriba la resposta,
+     * de manera que des de la interfície s'ha de cridar en segon pla (vegeu {@link GestorTasques}).
      *
      * @param username Nom d'usuari.
      * @param password Contrasenya.
@@ -30,38 +73,25 @@ public class ConnexioServidor {
      */
     public static boolean login(String username, String password) {
         try {
-            // URL endpoint del login
-            URL url = new URL("http://localhost:8080/auth/login");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-
-            // Crear JSON amb les dades de connexió
-            String jsonInput = "{\"username\":\"" + username + "\", \"password\":\"" + password + "\"}";
-
-            // Enviem la petició al server
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonInput.getBytes("utf-8");
-                os.write(input, 0, input.length);
-            }
+            // Enviem les dades de connexió en JSON pel client compartit
+            HttpRequest request = ClientApi.peticio("/auth/login")
+                    .POST(CodecJson.cosPeticio(new CodecJson.PeticioLogin(username, password)))
+                    .build();
+            HttpResponse<CodecJson.RespostaLogin> response = ClientApi.enviarMesurant(request,
+                    CodecJson.<CodecJson.RespostaLogin>cos(CodecJson.LECTOR_RESPOSTA_LOGIN, "login")).get();
 
             // Obtenim resposta del server
-            int responseCode = conn.getResponseCode();
-            if (responseCode == 200) {
-                try (Scanner scanner = new Scanner(conn.getInputStream(), "utf-8")) {
-                    String jsonResponse = scanner.useDelimiter("\\A").next();
+            if (response.statusCode() == 200 && response.body() != null) {
+                // Obtenim el token d'inici de sessió, el nom d'usuari i el rol
+                CodecJson.RespostaLogin dades = response.body();
+                SessioUsuari sessio = SessioUsuari.crear(dades.token(), dades.username(), dades.roleId());
+                SESSIO.set(sessio);
+                reiniciarEspera();
+                programarRefresc(sessio);
+                // Envia les escriptures que hagin quedat pendents d'aquest usuari
+                CuaEscriptures.iniciar();
 
-                    // Convertim el JSON en un objecte
-                    JSONObject jsonObject = new JSONObject(jsonResponse);
-
-                    // Obtenim el token d'inici de sessió, el nom d'usuari i el rol
-                    tokenSessio = jsonObject.getString("token");
-                    nomUsuariActual = jsonObject.getString("username");
-                    tipusUsuari = jsonObject.getInt("roleId");
-
-                    return true;
-                }
+                return true;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -69,13 +99,171 @@ public class ConnexioServidor {
         return false;
     }
 
+    //=====================================================
+    //                 REFRESC DEL TOKEN
+    //=====================================================
+    /**
+     * Retorna un token que encara no està a punt de caducar. Si li falta poc per caducar,
+     * el futur s'acaba quan el refresc (compartit) ha acabat.
+     *
+     * @return Futur amb el token que s'ha d'enviar, o amb null si no hi ha sessió.
+     */
+    public static CompletableFuture<String> tokenVigent() {
+        SessioUsuari sessio = SESSIO.get();
+        if (sessio == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!sessio.caducaAbans(Instant.now().plus(MARGE_REFRESC))) {
+            return CompletableFuture.completedFuture(sessio.token());
+        }
+        return refrescar(sessio.token());
+    }
+
+    /**
+     * Refresca el token, si no s'ha fet ja des que es va fer servir {@code tokenUsat}.
+     * Si ja hi ha un refresc en curs, retorna el mateix futur.
+     *
+     * @param tokenUsat Token amb què s'ha fet la petició (per exemple, la que ha rebut un 401).
+     * @return Futur amb el token nou. Si el refresc falla, o encara s'està esperant després d'una fallada,
+     *         es retorna el token que hi havia, i la petició fallarà com ho hauria fet sense refresc.
+     *         Si la sessió s'ha acabat, es retorna null.
+     */
+    public static synchronized CompletableFuture<String> refrescar(String tokenUsat) {
+        SessioUsuari sessio = SESSIO.get();
+        if (sessio == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!sessio.token().equals(tokenUsat)) {
+            return CompletableFuture.completedFuture(sessio.token()); // Ja s'ha refrescat
+        }
+        if (refrescEnCurs != null) {
+            return refrescEnCurs;
+        }
+        if (properIntent != null && Instant.now().isBefore(properIntent)) {
+            return CompletableFuture.completedFuture(sessio.token()); // Encara s'espera després d'una fallada
+        }
+
+        // Aquesta petició no passa per ClientApi.enviar, que esperaria aquest mateix refresc
+        HttpRequest request = ClientApi.peticio("/auth/refresh")
+                .setHeader("Authorization", "Bearer " + sessio.token())
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        CompletableFuture<String> refresc = ClientApi
+                .enviarMesurant(request, CodecJson.<CodecJson.RespostaToken>cos(CodecJson.LECTOR_RESPOSTA_TOKEN, "sessio"))
+                .thenApply(response -> {
+                    if (response.statusCode() == 401 || response.statusCode() == 403) {
+                        throw new SessioAcabada(response.statusCode());
+                    }
+                    if (response.statusCode() != 200 || response.body() == null) {
+                        throw new IllegalStateException("No s'ha pogut refrescar la sessió: " + response.statusCode());
+                    }
+                    SessioUsuari nova = sessio.ambToken(response.body().token());
+                    // Si s'ha tancat la sessió mentrestant, no es torna a obrir
+                    if (SESSIO.compareAndSet(sessio, nova)) {
+                        reiniciarEspera();
+                        programarRefresc(nova);
+                    }
+                    return nova.token();
+                })
+                .exceptionally(e -> {
+                    Throwable causa = e.getCause() != null ? e.getCause() : e;
+                    if (causa instanceof SessioAcabada) {
+                        REGISTRE.log(System.Logger.Level.WARNING, causa.getMessage() + "; es tanca la sessió");
+                        acabarSessio(sessio);
+                        return null;
+                    }
+                    REGISTRE.log(System.Logger.Level.WARNING, "No s'ha pogut refrescar la sessió", causa);
+                    esperarDespresDeFallada(sessio);
+                    return sessio.token();
+                });
+        refrescEnCurs = refresc;
+        refresc.whenComplete((token, e) -> {
+            synchronized (ConnexioServidor.class) {
+                if (refrescEnCurs == refresc) {
+                    refrescEnCurs = null;
+                }
+            }
+        });
+        return refresc;
+    }
+
+    // Ajorna el proper intent, amb una espera que es dobla a cada fallada, i el programa
+    private static synchronized void esperarDespresDeFallada(SessioUsuari sessio) {
+        properIntent = Instant.now().plus(espera);
+        long milis = espera.toMillis();
+        espera = espera.multipliedBy(2).compareTo(ESPERA_MAXIMA) > 0 ? ESPERA_MAXIMA : espera.multipliedBy(2);
+        if (SESSIO.get() != sessio) {
+            return;
+        }
+        if (refrescProgramat != null) {
+            refrescProgramat.cancel(false);
+        }
+        refrescProgramat = PROGRAMADOR.schedule(() -> refrescar(sessio.token()), milis, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized void reiniciarEspera() {
+        properIntent = null;
+        espera = ESPERA_INICIAL;
+    }
+
+    // El servidor ja no accepta el token: es tanca la sessió (si no s'ha tancat o canviat ja) i s'avisa
+    private static void acabarSessio(SessioUsuari sessio) {
+        if (SESSIO.get() != sessio) {
+            return;
+        }
+        logout();
+        for (Runnable oient : OIENTS_FI_SESSIO) {
+            try {
+                oient.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Registra un oient que es crida (des d'un fil de fons) quan la sessió s'acaba perquè el servidor ja no
+     * accepta el token. La sessió ja s'ha tancat quan es crida.
+     *
+     * @param oient Acció a fer, per exemple tornar a la pantalla de login.
+     */
+    public static void escoltarFiSessio(Runnable oient) {
+        OIENTS_FI_SESSIO.add(oient);
+    }
+
+    /**
+     * Deixa de rebre l'avís de fi de sessió.
+     *
+     * @param oient Oient registrat amb {@link #escoltarFiSessio(Runnable)}.
+     */
+    public static void deixarDEscoltarFiSessio(Runnable oient) {
+        OIENTS_FI_SESSIO.remove(oient);
+    }
+
+    // Programa el refresc una mica abans de la caducitat, encara que no es faci cap petició
+    private static synchronized void programarRefresc(SessioUsuari sessio) {
+        if (refrescProgramat != null) {
+            refrescProgramat.cancel(false);
+            refrescProgramat = null;
+        }
+        if (sessio.caducitat() == null) {
+            return;
+        }
+        long espera = Math.max(0, Duration.between(Instant.now(), sessio.caducitat().minus(MARGE_REFRESC)).toMillis());
+        refrescProgramat = PROGRAMADOR.schedule(() -> refrescar(sessio.token()), espera, TimeUnit.MILLISECONDS);
+    }
+
+    //=====================================================
+    //                 DADES DE LA SESSIÓ
+    //=====================================================
     /**
      * Retorna el token JWT obtingut després de l'autenticació.
      *
      * @return Token JWT de sessió.
      */
     public static String getTokenSessio() {
-        return tokenSessio;
+        SessioUsuari sessio = SESSIO.get();
+        return sessio != null ? sessio.token() : null;
     }
 
     /**
@@ -84,7 +272,8 @@ public class ConnexioServidor {
      * @return Nom de l'usuari actual.
      */
     public static String getNomUsuariActual() {
-        return nomUsuariActual;
+        SessioUsuari sessio = SESSIO.get();
+        return sessio != null ? sessio.nomUsuari() : null;
     }
 
     /**
@@ -93,15 +282,23 @@ public class ConnexioServidor {
      * @return Codi del rol d'usuari.
      */
     public static int getTipusUsuari() {
-        return tipusUsuari;
+        SessioUsuari sessio = SESSIO.get();
+        return sessio != null ? sessio.tipus() : -1;
     }
 
     /**
      * Elimina les dades de sessió actual (token, usuari i rol).
      */
     public static void logout() {
-        tokenSessio = null;
-        nomUsuariActual = null;
-        tipusUsuari = -1;
+        SESSIO.set(null);
+        CachePeticions.buidar();
+        CuaEscriptures.aturar();
+        synchronized (ConnexioServidor.class) {
+            if (refrescProgramat != null) {
+                refrescProgramat.cancel(false);
+                refrescProgramat = null;
+            }
+        }
+        reiniciarEspera();
     }
-}
\ No newline at end of file
+}
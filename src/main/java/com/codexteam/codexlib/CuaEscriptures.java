@@ -0,0 +1,633 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cua d'escriptures cap al servidor (edicions de llibres, reserves...), perquè el client es pugui continuar
+ * fent servir quan el servidor no és accessible.
+ *
+ * <p>Cada escriptura es desa primer al {@link DiariEscriptures} i després s'envia en segon pla. Les
+ * pendents s'envien juntes amb {@code POST /batch} (es pot canviar amb -Dcodexlib.escriptures.ruta),
+ * com a molt {@link #MIDA_LOT} per petició:</p>
+ * <pre>
+ * {"operations": [{"id": "...", "method": "PUT", "path": "/books/12", "body": {...}, "base": "2024-05-02T10:00:00"}]}
+ * → {"results": [{"id": "...", "status": 200, "body": {...}}]}
+ * </pre>
+ * <p>Si el {@code updated_at} del servidor ja no és el de {@code base}, el resultat és un 409 amb la versió
+ * vigent al cos. Si el servidor no té la ruta del lot, les operacions s'envien una a una.</p>
+ *
+ * <p>Una operació es pot enviar més d'un cop: si la connexió cau després que el servidor l'hagi desada,
+ * el client no en rep el resultat i la torna a enviar. Per això cada petició porta la capçalera
+ * {@code Idempotency-Key}: en les d'una operació és l'{@code id} de l'operació, que es guarda al diari i
+ * no canvia entre reintents; en les d'un lot, una clau derivada dels {@code id} de les seves operacions
+ * (a més de l'{@code id} de cada operació al cos). El servidor ha de respectar-la: si ja ha aplicat una
+ * operació amb aquella clau, ha de tornar el resultat que va donar en lloc d'aplicar-la de nou (sobretot
+ * en les POST, que sense això crearien duplicats). Per això una operació que ja ha sortit (el diari ho
+ * recorda) no es modifica mai: una edició posterior del mateix element va a la cua darrere seu, i quan el
+ * servidor confirma la primera, la segona passa a tenir com a base la versió que n'ha resultat.</p>
+ *
+ * <p>Quan el servidor no respon, la cua no reintenta cada operació: espera amb un temps creixent i torna
+ * a provar amb el lot sencer. {@link #reprendre()} ho fa de seguida (per exemple, quan es recupera la
+ * subscripció als canvis). Els reintents només s'envien amb la sessió de l'usuari que va fer el canvi.</p>
+ */
+public class CuaEscriptures {
+
+    /** Operacions per petició (es pot canviar amb -Dcodexlib.escriptures.lot). */
+    public static final int MIDA_LOT = Integer.getInteger("codexlib.escriptures.lot", 500);
+
+    /** Ruta del lot al servidor (es pot canviar amb -Dcodexlib.escriptures.ruta). */
+    private static final String RUTA_LOT = System.getProperty("codexlib.escriptures.ruta", "/batch");
+
+    /** Espera inicial i màxima abans de tornar a provar quan el servidor no respon. */
+    private static final long ESPERA_INICIAL_MS = 5_000;
+    private static final long ESPERA_MAXIMA_MS = 300_000;
+
+    /** Capçalera amb què el servidor reconeix una petició repetida. */
+    private static final String CAPCALERA_IDEMPOTENCIA = "Idempotency-Key";
+
+    private static final System.Logger REGISTRE = System.getLogger(CuaEscriptures.class.getName());
+
+    // Tots els enviaments surten d'aquest fil; les respostes arriben als del client HTTP
+    private static final ScheduledExecutorService PROGRAMADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread fil = new Thread(r, "codexlib-escriptures");
+        fil.setDaemon(true);
+        return fil;
+    });
+
+    /**
+     * Escriptura que s'ha de registrar a la cua.
+     *
+     * @param metode Mètode HTTP.
+     * @param ruta   Ruta de l'endpoint.
+     * @param cos    Objecte que s'envia com a cos, o null.
+     * @param base   {@code updated_at} de la versió modificada, o null si és un element nou.
+     */
+    public record Escriptura(String metode, String ruta, Object cos, String base) {
+    }
+
+    /** Resultat final d'una operació. */
+    public enum Estat { CONFIRMADA, CONFLICTE, REBUTJADA }
+
+    /**
+     * Resultat d'una operació de la cua.
+     *
+     * @param operacio Operació enviada.
+     * @param estat    Què n'ha dit el servidor.
+     * @param codi     Codi HTTP.
+     * @param cos      Cos de la resposta: l'element desat o, en un conflicte, la versió vigent. Pot ser null.
+     */
+    public record Resultat(CodecJson.Operacio operacio, Estat estat, int codi, JsonNode cos) {
+
+        /** @return El llibre del cos de la resposta, o null si l'operació no és d'un llibre o no n'hi ha. */
+        public Llibre llibre() {
+            return operacio.path().startsWith("/books/") ? CuaEscriptures.llibre(cos) : null;
+        }
+
+        /** @return L'identificador del llibre de la ruta ({@code /books/{id}}), o null si no n'és cap. */
+        public Integer idLlibre() {
+            return CuaEscriptures.idLlibre(operacio);
+        }
+    }
+
+    private static final List<Consumer<Resultat>> OIENTS = new CopyOnWriteArrayList<>();
+    private static final List<Runnable> OIENTS_ESTAT = new CopyOnWriteArrayList<>();
+
+    // ESTAT (protegit per CuaEscriptures.class)
+    private static DiariEscriptures diari;
+    private static final Map<String, CompletableFuture<Resultat>> esperes = new HashMap<>();
+    private static boolean actiu;
+    private static boolean enviant;
+    private static boolean senseConnexio;
+    private static boolean lotAdmes = true;
+    private static long espera = ESPERA_INICIAL_MS;
+    private static ScheduledFuture<?> reintent;
+
+    //=====================================================
+    //                 INICI I FINAL
+    //=====================================================
+    /**
+     * Obre el diari i comença a enviar el que hi hagi pendent. Es crida en iniciar sessió.
+     */
+    public static synchronized void iniciar() {
+        if (diari == null) {
+            try {
+                diari = DiariEscriptures.obrir();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        actiu = true;
+        reprendre();
+    }
+
+    /**
+     * Deixa d'enviar (en tancar la sessió). El que quedi pendent s'enviarà en la propera sessió del mateix usuari.
+     */
+    public static synchronized void aturar() {
+        actiu = false;
+        cancelarReintent();
+    }
+
+    /**
+     * Torna a provar d'enviar de seguida, sense esperar el reintent programat.
+     */
+    public static synchronized void reprendre() {
+        cancelarReintent();
+        espera = ESPERA_INICIAL_MS;
+        PROGRAMADOR.execute(CuaEscriptures::enviar);
+    }
+
+    //=====================================================
+    //                  ESCRIPTURES
+    //=====================================================
+    /**
+     * Desa els canvis d'un llibre ({@code PUT /books/{id}}).
+     *
+     * @param llibre Llibre amb els canvis.
+     * @param base   {@code updated_at} de la versió que s'ha editat.
+     * @return Futur amb el resultat, quan el servidor l'hagi donat.
+     */
+    public static CompletableFuture<Resultat> desarLlibre(Llibre llibre, String base) {
+        return registrar("PUT", "/books/" + llibre.getId(), llibre, base);
+    }
+
+    /**
+     * Reserva un llibre ({@code POST /reservations}) per a l'usuari de la sessió.
+     *
+     * @param idLlibre Identificador del llibre.
+     * @param dia      Dia de la reserva.
+     * @return Futur amb el resultat, quan el servidor l'hagi donat.
+     */
+    public static CompletableFuture<Resultat> reservar(int idLlibre, LocalDate dia) {
+        return registrar("POST", "/reservations",
+                new CodecJson.PeticioReserva(idLlibre, ConnexioServidor.getNomUsuariActual(), dia.toString()), null);
+    }
+
+    /**
+     * Esborra un llibre ({@code DELETE /books/{id}}).
+     *
+     * @param llibre Llibre que s'esborra, tal com es mostrava.
+     * @return Futur amb el resultat, quan el servidor l'hagi donat.
+     */
+    public static CompletableFuture<Resultat> esborrarLlibre(Llibre llibre) {
+        return registrar("DELETE", "/books/" + llibre.getId(), null, llibre.getUpdated_at());
+    }
+
+    /**
+     * Registra una escriptura al diari i la posa a la cua (vegeu {@link #registrar(List)}).
+     *
+     * @param metode Mètode HTTP.
+     * @param ruta   Ruta de l'endpoint.
+     * @param cos    Objecte que s'envia com a cos, o null.
+     * @param base   {@code updated_at} de la versió modificada, o null.
+     * @return Futur amb el resultat. Falla si no s'ha pogut desar al diari.
+     */
+    public static CompletableFuture<Resultat> registrar(String metode, String ruta, Object cos, String base) {
+        return registrar(List.of(new Escriptura(metode, ruta, cos, base))).get(0);
+    }
+
+    /**
+     * Registra escriptures al diari, totes amb una sola escriptura al disc, i les posa a la cua perquè s'enviïn
+     * juntes. Torna de seguida: el diari s'escriu al fil de la cua, no al de qui crida (normalment el de JavaFX).
+     * Si encara hi ha pendent un {@code PUT} a la mateixa ruta que no s'ha enviat mai, el nou el substitueix
+     * (conservant-ne la base); si ja s'ha enviat, el nou s'hi afegeix darrere.
+     *
+     * @param escriptures Escriptures, en l'ordre en què s'han d'aplicar. Els cossos no s'han de modificar després.
+     * @return Un futur amb el resultat de cada escriptura, en el mateix ordre. Fallen si no s'han pogut desar
+     *         al diari.
+     */
+    public static List<CompletableFuture<Resultat>> registrar(List<Escriptura> escriptures) {
+        List<CompletableFuture<Resultat>> resultats = new ArrayList<>(escriptures.size());
+        escriptures.forEach(escriptura -> resultats.add(new CompletableFuture<>()));
+        synchronized (CuaEscriptures.class) {
+            if (diari == null) {
+                IllegalStateException error = new IllegalStateException("La cua d'escriptures no s'ha iniciat.");
+                resultats.forEach(resultat -> resultat.completeExceptionally(error));
+                return resultats;
+            }
+        }
+        // L'usuari és el de la sessió en què s'ha fet el canvi
+        String usuari = ConnexioServidor.getNomUsuariActual();
+        PROGRAMADOR.execute(() -> desarAlDiari(escriptures, usuari, resultats));
+        return resultats;
+    }
+
+    // Al fil de la cua: les operacions noves i la fi de les que substitueixen van al diari amb una sola escriptura
+    private static void desarAlDiari(List<Escriptura> escriptures, String usuari, List<CompletableFuture<Resultat>> resultats) {
+        synchronized (CuaEscriptures.class) {
+            // Un PUT pendent que no s'ha enviat mai es pot substituir per un de més nou; un que ja ha sortit
+            // (encara que l'enviament fallés) pot haver arribat al servidor, i s'ha de reenviar igual
+            Map<String, CodecJson.Operacio> substituibles = new HashMap<>();
+            for (CodecJson.Operacio operacio : diari.getPendents()) {
+                if (Objects.equals(operacio.user(), usuari)) {
+                    if (operacio.method().equals("PUT") && !diari.esEnviada(operacio.id())) {
+                        substituibles.put(operacio.path(), operacio);
+                    } else {
+                        substituibles.remove(operacio.path());
+                    }
+                }
+            }
+
+            List<CodecJson.Operacio> operacions = new ArrayList<>(escriptures.size());
+            Map<String, CompletableFuture<Resultat>> substituides = new LinkedHashMap<>();
+            try {
+                for (int i = 0; i < escriptures.size(); i++) {
+                    Escriptura escriptura = escriptures.get(i);
+                    boolean put = "PUT".equals(escriptura.metode());
+                    CodecJson.Operacio anterior = put ? substituibles.get(escriptura.ruta()) : null;
+                    CodecJson.Operacio operacio = new CodecJson.Operacio(UUID.randomUUID().toString(), usuari,
+                            escriptura.metode(), escriptura.ruta(), CodecJson.arbre(escriptura.cos()),
+                            anterior != null ? anterior.base() : escriptura.base(), System.currentTimeMillis());
+                    if (put) {
+                        substituibles.put(operacio.path(), operacio);
+                    } else {
+                        substituibles.remove(operacio.path());
+                    }
+                    if (anterior != null) {
+                        substituides.put(anterior.id(), resultats.get(i));
+                    }
+                    operacions.add(operacio);
+                }
+                diari.actualitzar(operacions, substituides.keySet());
+            } catch (IOException | RuntimeException e) {
+                resultats.forEach(resultat -> resultat.completeExceptionally(e));
+                return;
+            }
+            for (int i = 0; i < operacions.size(); i++) {
+                esperes.put(operacions.get(i).id(), resultats.get(i));
+            }
+            // Qui esperava l'operació substituïda rep el resultat de la nova
+            substituides.forEach((id, nova) -> {
+                CompletableFuture<Resultat> anterior = esperes.remove(id);
+                if (anterior != null) {
+                    nova.whenComplete((resultat, error) -> {
+                        if (error != null) {
+                            anterior.completeExceptionally(error);
+                        } else {
+                            anterior.complete(resultat);
+                        }
+                    });
+                }
+            });
+        }
+        notificarEstat();
+        if (!senseConnexio()) {
+            enviar();
+        }
+    }
+
+    //=====================================================
+    //                  CONSULTES
+    //=====================================================
+    /**
+     * Afegeix un oient que rep el resultat de cada operació (en un fil qualsevol).
+     */
+    public static void escoltar(Consumer<Resultat> oient) {
+        OIENTS.add(oient);
+    }
+
+    public static void deixarDEscoltar(Consumer<Resultat> oient) {
+        OIENTS.remove(oient);
+    }
+
+    /**
+     * Afegeix un oient que es crida (en un fil qualsevol) quan canvien les operacions pendents o la connexió.
+     */
+    public static void escoltarEstat(Runnable oient) {
+        OIENTS_ESTAT.add(oient);
+    }
+
+    public static void deixarDEscoltarEstat(Runnable oient) {
+        OIENTS_ESTAT.remove(oient);
+    }
+
+    /** @return Operacions que encara no ha confirmat el servidor. */
+    public static synchronized int pendents() {
+        return diari != null ? diari.getPendents().size() : 0;
+    }
+
+    /** @return Cert si el darrer enviament no ha arribat al servidor. */
+    public static synchronized boolean senseConnexio() {
+        return senseConnexio;
+    }
+
+    /**
+     * Canvis de llibres que el servidor encara no ha confirmat, per mostrar-los per sobre de la còpia local
+     * del catàleg.
+     *
+     * @return L'última versió desada de cada llibre editat i els identificadors dels esborrats.
+     */
+    public static SincronitzacioCataleg.Canvis canvisPendents() {
+        List<CodecJson.Operacio> operacions;
+        synchronized (CuaEscriptures.class) {
+            if (diari == null) {
+                return new SincronitzacioCataleg.Canvis(List.of(), List.of());
+            }
+            operacions = diari.getPendents();
+        }
+        Map<Integer, Llibre> editats = new LinkedHashMap<>();
+        List<Integer> esborrats = new ArrayList<>();
+        for (CodecJson.Operacio operacio : operacions) {
+            if (!operacio.path().startsWith("/books/")) {
+                continue;
+            }
+            if (operacio.method().equals("PUT")) {
+                Llibre llibre = llibre(operacio.body());
+                if (llibre != null) {
+                    editats.put(llibre.getId(), llibre);
+                }
+            } else if (operacio.method().equals("DELETE")) {
+                Integer id = idLlibre(operacio);
+                if (id != null) {
+                    editats.remove(id);
+                    esborrats.add(id);
+                }
+            }
+        }
+        return new SincronitzacioCataleg.Canvis(new ArrayList<>(editats.values()), esborrats);
+    }
+
+    private static Integer idLlibre(CodecJson.Operacio operacio) {
+        if (!operacio.path().startsWith("/books/")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(operacio.path().substring("/books/".length()));
+        } catch (NumberFormatException e) {
+            return null; // No és la ruta d'un llibre concret
+        }
+    }
+
+    private static Llibre llibre(JsonNode cos) {
+        if (cos == null || !cos.isObject()) {
+            return null;
+        }
+        try {
+            return CodecJson.LECTOR_LLIBRE.readValue(cos);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //=====================================================
+    //                    ENVIAMENT
+    //=====================================================
+    private static void enviar() {
+        List<CodecJson.Operacio> lot = new ArrayList<>();
+        boolean perLots;
+        synchronized (CuaEscriptures.class) {
+            if (!actiu || enviant || diari == null || ConnexioServidor.getTokenSessio() == null) {
+                return;
+            }
+            String usuari = ConnexioServidor.getNomUsuariActual();
+            Set<String> rutes = new HashSet<>();
+            for (CodecJson.Operacio operacio : diari.getPendents()) {
+                if (Objects.equals(operacio.user(), usuari)) {
+                    // Si el lot ja porta una operació del mateix element, aquesta n'espera el resultat (vegeu rebasar)
+                    if (!rutes.add(operacio.path()) && operacio.base() != null) {
+                        continue;
+                    }
+                    lot.add(operacio);
+                    if (lot.size() == MIDA_LOT) {
+                        break;
+                    }
+                }
+            }
+            if (lot.isEmpty()) {
+                return;
+            }
+            enviant = true;
+            perLots = lotAdmes;
+            try {
+                diari.marcarEnviades(lot.stream().map(CodecJson.Operacio::id).toList());
+            } catch (IOException e) {
+                // La marca ja val per a aquesta sessió
+                e.printStackTrace();
+            }
+        }
+
+        CompletableFuture<Boolean> enviament;
+        try {
+            enviament = perLots ? enviarLot(lot) : enviarUnaAUna(lot, 0);
+        } catch (RuntimeException e) {
+            enviament = CompletableFuture.failedFuture(e);
+        }
+        enviament.whenComplete((complet, error) -> {
+            synchronized (CuaEscriptures.class) {
+                enviant = false;
+                senseConnexio = error != null;
+                if (error == null && complet) {
+                    espera = ESPERA_INICIAL_MS;
+                    PROGRAMADOR.execute(CuaEscriptures::enviar);
+                } else {
+                    programarReintent();
+                }
+            }
+            if (error != null) {
+                REGISTRE.log(System.Logger.Level.INFO, "No s'han pogut enviar les escriptures pendents: " + error.getMessage());
+            }
+            notificarEstat();
+        });
+    }
+
+    /**
+     * Envia el lot amb una sola petició.
+     *
+     * @return Futur amb cert si totes les operacions tenen resultat i es pot continuar amb les següents.
+     */
+    private static CompletableFuture<Boolean> enviarLot(List<CodecJson.Operacio> lot) {
+        HttpRequest.Builder builder = ClientApi.peticio(RUTA_LOT).POST(CodecJson.cosPeticio(new CodecJson.PeticioLot(lot)))
+                .header(CAPCALERA_IDEMPOTENCIA, clauLot(lot));
+        return ClientApi.enviar(builder, CodecJson.<CodecJson.RespostaLot>cos(CodecJson.LECTOR_RESPOSTA_LOT, "lot"))
+                .thenCompose(response -> {
+                    int codi = response.statusCode();
+                    if (codi == 404 || codi == 405 || codi == 501) {
+                        REGISTRE.log(System.Logger.Level.INFO, "El servidor no admet lots (" + codi + "); les escriptures s'envien una a una.");
+                        synchronized (CuaEscriptures.class) {
+                            lotAdmes = false;
+                        }
+                        return enviarUnaAUna(lot, 0);
+                    }
+                    if (codi != 200 || response.body() == null || response.body().results() == null) {
+                        REGISTRE.log(System.Logger.Level.WARNING, "Resposta inesperada del lot d'escriptures: " + codi);
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    List<Resultat> resultats = new ArrayList<>();
+                    for (CodecJson.ResultatOperacio resultat : response.body().results()) {
+                        CodecJson.Operacio operacio = diari.getPendent(resultat.id());
+                        Estat estat = operacio != null ? estat(operacio, resultat.status()) : null;
+                        if (estat != null) {
+                            resultats.add(new Resultat(operacio, estat, resultat.status(), resultat.body()));
+                        }
+                    }
+                    acabar(resultats);
+                    return CompletableFuture.completedFuture(resultats.size() == lot.size());
+                });
+    }
+
+    // Sense lots: una petició rere l'altra (pel mateix client HTTP/2); s'atura a la primera sense resultat
+    private static CompletableFuture<Boolean> enviarUnaAUna(List<CodecJson.Operacio> lot, int index) {
+        if (index == lot.size()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        CodecJson.Operacio operacio = lot.get(index);
+        HttpRequest.BodyPublisher cos = operacio.body() != null
+                ? CodecJson.cosPeticio(operacio.body()) : HttpRequest.BodyPublishers.noBody();
+        HttpRequest.Builder builder = ClientApi.peticio(operacio.path()).method(operacio.method(), cos)
+                .header(CAPCALERA_IDEMPOTENCIA, operacio.id());
+        return ClientApi.enviar(builder, HttpResponse.BodyHandlers.ofByteArray())
+                .thenCompose(response -> {
+                    Estat estat = estat(operacio, response.statusCode());
+                    if (estat == null) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    acabar(List.of(new Resultat(operacio, estat, response.statusCode(), arbre(response.body()))));
+                    return enviarUnaAUna(lot, index + 1);
+                });
+    }
+
+    // El mateix lot reenviat té la mateixa clau; un lot amb altres operacions, una altra
+    private static String clauLot(List<CodecJson.Operacio> lot) {
+        StringBuilder ids = new StringBuilder();
+        lot.forEach(operacio -> ids.append(operacio.id()).append('\n'));
+        return UUID.nameUUIDFromBytes(ids.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    // Null si el codi no és definitiu i l'operació s'ha de tornar a enviar més endavant
+    private static Estat estat(CodecJson.Operacio operacio, int codi) {
+        // Esborrar el que ja no hi és deixa el servidor com es volia
+        if (codi / 100 == 2 || (codi == 404 && operacio.method().equals("DELETE"))) {
+            return Estat.CONFIRMADA;
+        }
+        if (codi == 409 || codi == 412) {
+            return Estat.CONFLICTE;
+        }
+        if (codi / 100 == 4 && codi != 401 && codi != 408 && codi != 429) {
+            return Estat.REBUTJADA;
+        }
+        return null;
+    }
+
+    private static JsonNode arbre(byte[] cos) {
+        if (cos == null || cos.length == 0) {
+            return null;
+        }
+        try {
+            return CodecJson.llegir(CodecJson.LECTOR_ARBRE, cos, "escriptures");
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    // Treu les operacions del diari i avisa els que esperaven el resultat
+    private static void acabar(List<Resultat> resultats) {
+        if (resultats.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Resultat>> futurs = new ArrayList<>(resultats.size());
+        synchronized (CuaEscriptures.class) {
+            try {
+                diari.actualitzar(rebasar(resultats), resultats.stream().map(resultat -> resultat.operacio().id()).toList());
+            } catch (IOException e) {
+                // Es tornarien a enviar en la propera sessió; el servidor en detectaria el conflicte
+                e.printStackTrace();
+            }
+            for (Resultat resultat : resultats) {
+                futurs.add(esperes.remove(resultat.operacio().id()));
+            }
+        }
+        for (int i = 0; i < resultats.size(); i++) {
+            Resultat resultat = resultats.get(i);
+            if (resultat.estat() == Estat.CONFIRMADA) {
+                // Les respostes guardades de la col·lecció ja no són vàlides ("/books/12" -> "/books")
+                String ruta = resultat.operacio().path();
+                int barra = ruta.indexOf('/', 1);
+                CachePeticions.invalidar(barra > 0 ? ruta.substring(0, barra) : ruta);
+            } else {
+                REGISTRE.log(System.Logger.Level.INFO, "Escriptura " + resultat.estat() + " (" + resultat.codi() + "): "
+                        + resultat.operacio().method() + " " + resultat.operacio().path());
+            }
+            if (futurs.get(i) != null) {
+                futurs.get(i).complete(resultat);
+            }
+            for (Consumer<Resultat> oient : OIENTS) {
+                oient.accept(resultat);
+            }
+        }
+    }
+
+    // Les operacions posteriors del mateix element fetes a partir de la mateixa versió (per exemple, una segona
+    // edició mentre la primera era al servidor) passen a partir de la versió que el servidor acaba de desar;
+    // si no, serien un conflicte amb la primera. Les que ja han sortit no es toquen
+    private static List<CodecJson.Operacio> rebasar(List<Resultat> resultats) {
+        Map<String, CodecJson.Operacio> rebasades = new LinkedHashMap<>();
+        List<CodecJson.Operacio> pendents = diari.getPendents();
+        for (Resultat resultat : resultats) {
+            CodecJson.Operacio operacio = resultat.operacio();
+            JsonNode desada = resultat.cos() != null ? resultat.cos().get("updated_at") : null;
+            if (resultat.estat() != Estat.CONFIRMADA || operacio.base() == null || desada == null || !desada.isTextual()) {
+                continue;
+            }
+            boolean posterior = false;
+            for (CodecJson.Operacio pendent : pendents) {
+                CodecJson.Operacio actual = rebasades.getOrDefault(pendent.id(), pendent);
+                if (posterior && actual.path().equals(operacio.path()) && Objects.equals(actual.user(), operacio.user())
+                        && operacio.base().equals(actual.base()) && !diari.esEnviada(actual.id())) {
+                    rebasades.put(actual.id(), new CodecJson.Operacio(actual.id(), actual.user(), actual.method(),
+                            actual.path(), actual.body(), desada.asText(), actual.created()));
+                }
+                posterior |= pendent.id().equals(operacio.id());
+            }
+        }
+        return new ArrayList<>(rebasades.values());
+    }
+
+    // Espera creixent amb una mica d'atzar, perquè no tornin tots els clients alhora
+    private static void programarReintent() {
+        cancelarReintent();
+        if (!actiu) {
+            return;
+        }
+        long ara = espera + ThreadLocalRandom.current().nextLong(espera / 4 + 1);
+        reintent = PROGRAMADOR.schedule(CuaEscriptures::enviar, ara, TimeUnit.MILLISECONDS);
+        espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+    }
+
+    private static void cancelarReintent() {
+        if (reintent != null) {
+            reintent.cancel(false);
+            reintent = null;
+        }
+    }
+
+    private static void notificarEstat() {
+        for (Runnable oient : OIENTS_ESTAT) {
+            oient.run();
+        }
+    }
+}
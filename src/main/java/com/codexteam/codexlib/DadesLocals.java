@@ -0,0 +1,29 @@
+package com.codexteam.codexlib;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Ubicació de les dades que el client desa al disc (instantània del catàleg, memòries cau...).
+ * Per defecte és la carpeta ".codexlib" del directori de l'usuari; es pot canviar amb -Dcodexlib.dades.
+ */
+public class DadesLocals {
+
+    private static final Path DIRECTORI = Paths.get(System.getProperty("codexlib.dades",
+            Paths.get(System.getProperty("user.home"), ".codexlib").toString()));
+
+    /**
+     * Retorna la ruta d'un fitxer o carpeta dins del directori de dades, creant el directori pare si cal.
+     *
+     * @param nom Nom relatiu del fitxer (per exemple "cataleg.bin").
+     * @return Ruta absoluta del fitxer.
+     * @throws IOException Si no es pot crear el directori.
+     */
+    public static Path fitxer(String nom) throws IOException {
+        Path fitxer = DIRECTORI.resolve(nom);
+        Files.createDirectories(fitxer.getParent());
+        return fitxer;
+    }
+}
@@ -0,0 +1,125 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Descodifica la llista de llibres directament del flux de la resposta, objecte a objecte,
+ * amb el {@link JsonParser} de Jackson. Els llibres es lliuren en lots petits a mesura que es
+ * llegeixen, de manera que no cal tenir el text sencer ni tot el catàleg en memòria alhora.
+ */
+public class DescodificadorLlibres {
+
+    /** Nombre de llibres que es lliuren de cop al consumidor. */
+    public static final int MIDA_LOT = 100;
+
+    /**
+     * Resum d'una lectura.
+     *
+     * @param total   Nombre de llibres llegits.
+     * @param darrera Valor del camp "last" si la resposta era paginada, o null si era una llista simple.
+     */
+    public record Resultat(int total, Boolean darrera) {
+    }
+
+    /**
+     * Llegeix els llibres del flux i els va passant al consumidor en lots de com a molt {@code midaLot}.
+     * Accepta una llista JSON o un objecte paginat amb els camps "content" i "last".
+     *
+     * @param entrada    Flux amb el cos de la resposta (es tanca en acabar).
+     * @param midaLot    Mida màxima de cada lot.
+     * @param consumidor Receptor dels lots, cridat des del fil que llegeix.
+     * @return Resum de la lectura.
+     * @throws IOException Si el flux no es pot llegir o no té el format esperat.
+     */
+    public static Resultat llegir(InputStream entrada, int midaLot, Consumer<List<Llibre>> consumidor) throws IOException {
+        // El flux sol ser la connexió: el temps esperant bytes és de xarxa i no es compta com a descodificació
+        FluxCronometrat flux = new FluxCronometrat(entrada);
+        long inici = System.nanoTime();
+        Resultat resultat = llegirResposta(flux, midaLot, consumidor);
+        Telemetria.descodificacioDurada("llibres", System.nanoTime() - inici - flux.lectura, resultat.total());
+        return resultat;
+    }
+
+    // Acumula el temps passat dins de les lectures del flux de sota
+    private static final class FluxCronometrat extends FilterInputStream {
+
+        private long lectura;
+
+        FluxCronometrat(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long inici = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                lectura += System.nanoTime() - inici;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int desplacament, int longitud) throws IOException {
+            long inici = System.nanoTime();
+            try {
+                return super.read(bytes, desplacament, longitud);
+            } finally {
+                lectura += System.nanoTime() - inici;
+            }
+        }
+    }
+
+    private static Resultat llegirResposta(InputStream entrada, int midaLot, Consumer<List<Llibre>> consumidor) throws IOException {
+        try (JsonParser parser = CodecJson.LECTOR_LLIBRE.createParser(entrada)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                return new Resultat(llegirLlista(parser, midaLot, consumidor), null);
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Format de resposta inesperat: " + token);
+            }
+
+            int total = 0;
+            Boolean darrera = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String camp = parser.getCurrentName();
+                JsonToken valor = parser.nextToken();
+                if ("content".equals(camp) && valor == JsonToken.START_ARRAY) {
+                    total = llegirLlista(parser, midaLot, consumidor);
+                } else if ("last".equals(camp) && valor.isBoolean()) {
+                    darrera = parser.getBooleanValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new Resultat(total, darrera);
+        }
+    }
+
+    // Llegeix els objectes d'una llista JSON un per un (el parser ha d'estar sobre START_ARRAY)
+    private static int llegirLlista(JsonParser parser, int midaLot, Consumer<List<Llibre>> consumidor) throws IOException {
+        int total = 0;
+        List<Llibre> lot = new ArrayList<>(midaLot);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            lot.add(CodecJson.LECTOR_LLIBRE.readValue(parser));
+            total++;
+            if (lot.size() >= midaLot) {
+                consumidor.accept(lot);
+                lot = new ArrayList<>(midaLot);
+            }
+        }
+        if (!lot.isEmpty()) {
+            consumidor.accept(lot);
+        }
+        return total;
+    }
+}
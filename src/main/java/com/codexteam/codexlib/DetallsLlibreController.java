@@ -1,8 +1,8 @@
 package com.codexteam.codexlib;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
 
@@ -44,9 +44,18 @@ public class DetallsLlibreController {
         dataPublicacioTextField.setText(dataPublicacio);
         isbnTextField.setText(isbn);
 
-        // Mostrem la portada si existeix ('Sense portada' li passem des de IsbnController)
+        // Mostrem la portada si existeix ('Sense portada' li passem des de IsbnController).
+        // Mentre es carrega en segon pla es veu el marcador.
+        portadaImageView.setImage(ServeiPortades.marcador());
         if (portadaUrl != null && !portadaUrl.equals("Sense portada")) {
-            portadaImageView.setImage(new Image(portadaUrl));
+            ServeiPortades.carregar(isbn, portadaUrl, portadaImageView.getFitWidth(), portadaImageView.getFitHeight())
+                    .whenComplete((portada, error) -> {
+                        if (error != null) {
+                            error.printStackTrace();
+                        } else {
+                            Platform.runLater(() -> portadaImageView.setImage(portada));
+                        }
+                    });
         }
     }
 
@@ -0,0 +1,126 @@
+package com.codexteam.codexlib;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.util.Duration;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * Controlador de la finestra de diagnòstic: mostra les mesures de {@link Telemetria}
+ * (peticions, descodificació, fil de la interfície i memòries cau) i les actualitza cada dos segons
+ * mentre la finestra és oberta. El resum es pot copiar per enganxar-lo en una incidència.
+ */
+public class DiagnosticController {
+
+    @FXML private TableView<Telemetria.Fila> taulaPeticions;
+    @FXML private TableColumn<Telemetria.Fila, String> colEndpoint;
+    @FXML private TableColumn<Telemetria.Fila, String> colPeticions;
+    @FXML private TableColumn<Telemetria.Fila, String> colErrors;
+    @FXML private TableColumn<Telemetria.Fila, String> colP50;
+    @FXML private TableColumn<Telemetria.Fila, String> colP95;
+    @FXML private TableColumn<Telemetria.Fila, String> colMaxim;
+    @FXML private TableColumn<Telemetria.Fila, String> colBytes;
+
+    @FXML private TableView<Telemetria.Fila> taulaDescodificacio;
+    @FXML private TableColumn<Telemetria.Fila, String> colTipus;
+    @FXML private TableColumn<Telemetria.Fila, String> colVegades;
+    @FXML private TableColumn<Telemetria.Fila, String> colMitjana;
+    @FXML private TableColumn<Telemetria.Fila, String> colMaximDescodificacio;
+    @FXML private TableColumn<Telemetria.Fila, String> colElements;
+
+    @FXML private Label etiquetaFilInterficie;
+    @FXML private Label etiquetaCaches;
+
+    private final Timeline refresc = new Timeline(new KeyFrame(Duration.seconds(2), event -> actualitzar()));
+
+    @FXML
+    private void initialize() {
+        columna(colEndpoint, Telemetria.Fila::nom);
+        columna(colPeticions, fila -> String.valueOf(fila.total()));
+        columna(colErrors, fila -> String.valueOf(fila.errors()));
+        columna(colP50, fila -> format(fila.p50()));
+        columna(colP95, fila -> format(fila.p95()));
+        columna(colMaxim, fila -> format(fila.maxim()));
+        columna(colBytes, fila -> String.valueOf(fila.quantitat() / 1024));
+
+        columna(colTipus, Telemetria.Fila::nom);
+        columna(colVegades, fila -> String.valueOf(fila.total()));
+        columna(colMitjana, fila -> format(fila.mitjana()));
+        columna(colMaximDescodificacio, fila -> format(fila.maxim()));
+        columna(colElements, fila -> String.valueOf(fila.quantitat()));
+
+        // Només es refresca mentre la finestra es veu (la finestra es reutilitza, vegeu CacheVistes)
+        refresc.setCycleCount(Timeline.INDEFINITE);
+        taulaPeticions.sceneProperty().addListener((obs, anterior, escena) -> {
+            if (escena != null) {
+                escena.windowProperty().addListener((o, finestraAnterior, finestra) -> {
+                    if (finestra != null) {
+                        finestra.setOnShown(event -> {
+                            actualitzar();
+                            refresc.play();
+                        });
+                        finestra.setOnHidden(event -> refresc.stop());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Torna a llegir les mesures.
+     */
+    @FXML
+    private void actualitzar() {
+        taulaPeticions.getItems().setAll(Telemetria.endpoints());
+        taulaDescodificacio.getItems().setAll(Telemetria.descodificacions());
+
+        Telemetria.Fila fil = Telemetria.retardFilInterficie();
+        etiquetaFilInterficie.setText("Fil de la interfície: retard p50 " + format(fil.p50()) + " ms, p95 "
+                + format(fil.p95()) + " ms, màxim " + format(fil.maxim()) + " ms");
+
+        StringJoiner caches = new StringJoiner(", ", "Memòries cau: ", "");
+        caches.setEmptyValue("Memòries cau: -");
+        for (Map.Entry<String, Double> cache : Telemetria.encertsCache().entrySet()) {
+            caches.add(cache.getKey() + " " + Math.round(100 * cache.getValue()) + "% d'encerts");
+        }
+        etiquetaCaches.setText(caches.toString());
+    }
+
+    /**
+     * Posa les mesures a zero.
+     */
+    @FXML
+    private void restablir() {
+        Telemetria.restablir();
+        actualitzar();
+    }
+
+    /**
+     * Copia el resum de les mesures al porta-retalls.
+     */
+    @FXML
+    private void copiarResum() {
+        ClipboardContent contingut = new ClipboardContent();
+        contingut.putString(Telemetria.resum());
+        Clipboard.getSystemClipboard().setContent(contingut);
+    }
+
+    private static void columna(TableColumn<Telemetria.Fila, String> columna, Function<Telemetria.Fila, String> valor) {
+        columna.setCellValueFactory(cella -> new SimpleStringProperty(valor.apply(cella.getValue())));
+    }
+
+    private static String format(double milisegons) {
+        return String.format(Locale.ROOT, milisegons < 10 ? "%.1f" : "%.0f", milisegons);
+    }
+}
@@ -0,0 +1,225 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Diari al disc de les escriptures que encara no ha confirmat el servidor (vegeu {@link CuaEscriptures}).
+ * Només s'hi afegeixen línies, cada una un JSON:
+ * <ul>
+ *     <li>una {@link CodecJson.Operacio}: escriptura nova, o la nova versió d'una que encara no s'ha enviat
+ *         si l'{@code id} ja hi era;</li>
+ *     <li>{@code {"sent": "id"}}: l'operació s'ha enviat almenys un cop, i per tant ja no es pot canviar
+ *         (els reintents han de ser idèntics, vegeu {@link CuaEscriptures});</li>
+ *     <li>{@code {"done": "id"}}: l'operació ja té resultat (o l'ha substituïda una altra).</li>
+ * </ul>
+ * Cada registre es força al disc abans de tornar, de manera que una operació acceptada no es perd encara que
+ * el programa es tanqui. Quan no queda res pendent el fitxer s'esborra, i en obrir-lo es reescriu només
+ * amb el que queda pendent.
+ */
+public class DiariEscriptures {
+
+    private static final String NOM_FITXER = "escriptures/diari.jsonl";
+
+    private final Path fitxer;
+    private final Map<String, CodecJson.Operacio> pendents = new LinkedHashMap<>();
+    private final Set<String> enviades = new HashSet<>();
+    private FileOutputStream escriptor;
+
+    private DiariEscriptures(Path fitxer) {
+        this.fitxer = fitxer;
+    }
+
+    /**
+     * Obre el diari, llegint les operacions que hi hagin quedat pendents.
+     *
+     * @return El diari.
+     * @throws IOException Si no es pot llegir o compactar el fitxer.
+     */
+    public static DiariEscriptures obrir() throws IOException {
+        DiariEscriptures diari = new DiariEscriptures(DadesLocals.fitxer(NOM_FITXER));
+        if (!Files.exists(diari.fitxer)) {
+            return diari;
+        }
+        int linies = 0;
+        for (String linia : Files.readAllLines(diari.fitxer, StandardCharsets.UTF_8)) {
+            linies++;
+            try {
+                JsonNode node = CodecJson.LECTOR_ARBRE.readValue(linia);
+                if (node.has("done")) {
+                    diari.pendents.remove(node.get("done").asText());
+                    diari.enviades.remove(node.get("done").asText());
+                } else if (node.has("sent")) {
+                    diari.enviades.add(node.get("sent").asText());
+                } else {
+                    CodecJson.Operacio operacio = CodecJson.LECTOR_OPERACIO.readValue(node);
+                    diari.pendents.put(operacio.id(), operacio);
+                }
+            } catch (IOException e) {
+                // Línia incompleta (per exemple, si es va tallar l'escriptura)
+            }
+        }
+        diari.enviades.retainAll(diari.pendents.keySet());
+        if (diari.pendents.isEmpty()) {
+            Files.deleteIfExists(diari.fitxer);
+        } else if (linies > diari.pendents.size() + diari.enviades.size()) {
+            diari.compactar();
+        }
+        return diari;
+    }
+
+    /**
+     * Afegeix operacions al diari i les força al disc.
+     *
+     * @param operacions Operacions noves.
+     * @throws IOException Si no es poden escriure.
+     */
+    public void registrar(Collection<CodecJson.Operacio> operacions) throws IOException {
+        actualitzar(operacions, List.of());
+    }
+
+    /**
+     * Marca operacions com a acabades. Si ja no en queda cap de pendent, s'esborra el fitxer.
+     *
+     * @param ids Identificadors de les operacions.
+     * @throws IOException Si no es pot escriure.
+     */
+    public void completar(Collection<String> ids) throws IOException {
+        actualitzar(List.of(), ids);
+    }
+
+    /**
+     * Afegeix o substitueix operacions i en marca d'altres com a acabades, tot amb una sola escriptura al disc.
+     * Una operació amb l'{@code id} d'una de pendent la substitueix i en conserva el lloc a la cua. Si ja no
+     * en queda cap de pendent, s'esborra el fitxer.
+     *
+     * @param operacions Operacions noves o substitutes.
+     * @param acabades   Identificadors de les operacions acabades.
+     * @throws IOException Si no es pot escriure.
+     */
+    public synchronized void actualitzar(Collection<CodecJson.Operacio> operacions, Collection<String> acabades) throws IOException {
+        List<String> presents = new ArrayList<>();
+        for (String id : acabades) {
+            if (pendents.containsKey(id)) {
+                presents.add(id);
+            }
+        }
+        if (operacions.isEmpty() && presents.isEmpty()) {
+            return;
+        }
+        if (operacions.isEmpty() && presents.size() == pendents.size()) {
+            pendents.clear();
+            enviades.clear();
+            tancar();
+            Files.deleteIfExists(fitxer);
+            return;
+        }
+        ByteArrayOutputStream linies = new ByteArrayOutputStream();
+        for (CodecJson.Operacio operacio : operacions) {
+            linia(linies, operacio);
+        }
+        for (String id : presents) {
+            linia(linies, Map.of("done", id));
+        }
+        escriure(linies);
+        for (CodecJson.Operacio operacio : operacions) {
+            pendents.put(operacio.id(), operacio);
+        }
+        presents.forEach(pendents::remove);
+        presents.forEach(enviades::remove);
+    }
+
+    /**
+     * Marca operacions com a enviades abans d'enviar-les: a partir d'ara ja no es poden substituir. La marca
+     * val per a aquesta sessió encara que no es pugui escriure al disc.
+     *
+     * @param ids Identificadors de les operacions que s'envien.
+     * @throws IOException Si no es pot escriure.
+     */
+    public synchronized void marcarEnviades(Collection<String> ids) throws IOException {
+        ByteArrayOutputStream linies = new ByteArrayOutputStream();
+        for (String id : ids) {
+            if (pendents.containsKey(id) && enviades.add(id)) {
+                linia(linies, Map.of("sent", id));
+            }
+        }
+        if (linies.size() > 0) {
+            escriure(linies);
+        }
+    }
+
+    /** @return Cert si l'operació pendent ja s'ha enviat almenys un cop. */
+    public synchronized boolean esEnviada(String id) {
+        return enviades.contains(id);
+    }
+
+    /** @return Operacions pendents, en l'ordre en què es van registrar. */
+    public synchronized List<CodecJson.Operacio> getPendents() {
+        return new ArrayList<>(pendents.values());
+    }
+
+    /** @return L'operació pendent amb aquest id, o null. */
+    public synchronized CodecJson.Operacio getPendent(String id) {
+        return pendents.get(id);
+    }
+
+    /**
+     * Tanca el fitxer del diari (les operacions pendents s'hi conserven).
+     */
+    public synchronized void tancar() throws IOException {
+        if (escriptor != null) {
+            escriptor.close();
+            escriptor = null;
+        }
+    }
+
+    private void escriure(ByteArrayOutputStream linies) throws IOException {
+        if (escriptor == null) {
+            escriptor = new FileOutputStream(fitxer.toFile(), true);
+        }
+        linies.writeTo(escriptor);
+        escriptor.flush();
+        escriptor.getFD().sync();
+    }
+
+    // Reescriu el fitxer amb les operacions pendents (fitxer temporal i substitució, com InstantaniaCataleg)
+    private void compactar() throws IOException {
+        Path temporal = fitxer.resolveSibling(fitxer.getFileName() + ".tmp");
+        ByteArrayOutputStream linies = new ByteArrayOutputStream();
+        for (CodecJson.Operacio operacio : pendents.values()) {
+            linia(linies, operacio);
+        }
+        for (String id : enviades) {
+            linia(linies, Map.of("sent", id));
+        }
+        try (FileOutputStream out = new FileOutputStream(temporal.toFile())) {
+            linies.writeTo(out);
+            out.getFD().sync();
+        }
+        Files.move(temporal, fitxer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void linia(ByteArrayOutputStream linies, Object valor) {
+        try {
+            CodecJson.ESCRIPTOR.writeValue(linies, valor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        linies.write('\n');
+    }
+}
@@ -0,0 +1,147 @@
+package com.codexteam.codexlib;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Registre al disc del progrés d'una importació massiva d'ISBN, per poder-la reprendre si
+ * s'interromp. Cada línia és una lletra i un ISBN:
+ * <ul>
+ *     <li>{@code P}: ISBN afegit a la importació.</li>
+ *     <li>{@code C}: ISBN ja consultat (el resultat és a la memòria cau de {@link ServeiIsbn}).</li>
+ *     <li>{@code I}: ISBN ja inserit al catàleg.</li>
+ * </ul>
+ */
+public class DiariImportacio {
+
+    private static final String NOM_FITXER = "importacio/sessio.txt";
+
+    public static final char AFEGIT = 'P';
+    public static final char CONSULTAT = 'C';
+    public static final char INSERIT = 'I';
+
+    private final Path fitxer;
+    private final Set<String> afegits = new LinkedHashSet<>();
+    private final Set<String> consultats = new HashSet<>();
+    private final Set<String> inserits = new HashSet<>();
+    private BufferedWriter escriptor;
+
+    private DiariImportacio(Path fitxer) {
+        this.fitxer = fitxer;
+    }
+
+    /**
+     * Obre el diari de la importació en curs, llegint el que s'hi hagi registrat abans.
+     *
+     * @return El diari, buit si no hi havia cap importació a mig fer.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    public static DiariImportacio obrir() throws IOException {
+        DiariImportacio diari = new DiariImportacio(DadesLocals.fitxer(NOM_FITXER));
+        if (Files.exists(diari.fitxer)) {
+            for (String linia : Files.readAllLines(diari.fitxer, StandardCharsets.UTF_8)) {
+                if (linia.length() < 3) {
+                    continue; // Línia incompleta (per exemple, si es va tallar l'escriptura)
+                }
+                String isbn = linia.substring(2);
+                switch (linia.charAt(0)) {
+                    case AFEGIT -> diari.afegits.add(isbn);
+                    case CONSULTAT -> diari.consultats.add(isbn);
+                    case INSERIT -> diari.inserits.add(isbn);
+                    default -> { }
+                }
+            }
+        }
+        return diari;
+    }
+
+    /**
+     * Afegeix entrades al diari i les escriu al disc immediatament.
+     *
+     * @param tipus Tipus d'entrada ({@link #AFEGIT}, {@link #CONSULTAT} o {@link #INSERIT}).
+     * @param isbns ISBN afectats.
+     * @throws IOException Si no es pot escriure.
+     */
+    public synchronized void registrar(char tipus, Collection<String> isbns) throws IOException {
+        if (isbns.isEmpty()) {
+            return;
+        }
+        if (escriptor == null) {
+            escriptor = Files.newBufferedWriter(fitxer, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        Set<String> desti = switch (tipus) {
+            case AFEGIT -> afegits;
+            case CONSULTAT -> consultats;
+            case INSERIT -> inserits;
+            default -> throw new IllegalArgumentException("Tipus d'entrada desconegut: " + tipus);
+        };
+        for (String isbn : isbns) {
+            if (desti.add(isbn)) {
+                escriptor.write(tipus);
+                escriptor.write(' ');
+                escriptor.write(isbn);
+                escriptor.newLine();
+            }
+        }
+        escriptor.flush();
+    }
+
+    /**
+     * Esborra el diari per començar una importació nova.
+     *
+     * @throws IOException Si no es pot esborrar el fitxer.
+     */
+    public synchronized void esborrar() throws IOException {
+        tancar();
+        Files.deleteIfExists(fitxer);
+        afegits.clear();
+        consultats.clear();
+        inserits.clear();
+    }
+
+    /**
+     * Tanca el fitxer del diari (el contingut es conserva per reprendre la importació).
+     */
+    public synchronized void tancar() throws IOException {
+        if (escriptor != null) {
+            escriptor.close();
+            escriptor = null;
+        }
+    }
+
+    /** @return ISBN afegits a la importació, en l'ordre en què es van afegir. */
+    public synchronized Set<String> getAfegits() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(afegits));
+    }
+
+    /** @return ISBN afegits que encara no s'han consultat ni inserit. */
+    public synchronized List<String> getPendents() {
+        List<String> pendents = new ArrayList<>();
+        for (String isbn : afegits) {
+            if (!consultats.contains(isbn) && !inserits.contains(isbn)) {
+                pendents.add(isbn);
+            }
+        }
+        return pendents;
+    }
+
+    public synchronized boolean esInserit(String isbn) {
+        return inserits.contains(isbn);
+    }
+
+    public synchronized boolean esAfegit(String isbn) {
+        return afegits.contains(isbn);
+    }
+}
@@ -0,0 +1,45 @@
+package com.codexteam.codexlib;
+
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * Fila de la taula de revisió de la importació massiva: un ISBN, el que n'ha retornat
+ * Open Library i l'estat en què es troba.
+ */
+public class FilaImportacio {
+
+    public static final String TROBAT = "Trobat";
+    public static final String NO_TROBAT = "No trobat";
+    public static final String ERROR = "Error";
+    public static final String INSERIT = "Inserit";
+
+    private final String isbn;
+    private final FitxaIsbn fitxa;
+    private final StringProperty estat;
+
+    /**
+     * @param isbn  ISBN normalitzat.
+     * @param fitxa Dades d'Open Library, o null si no s'ha trobat o hi ha hagut un error.
+     * @param estat Estat inicial de la fila.
+     */
+    public FilaImportacio(String isbn, FitxaIsbn fitxa, String estat) {
+        this.isbn = isbn;
+        this.fitxa = fitxa;
+        this.estat = new SimpleStringProperty(estat);
+    }
+
+    public String getIsbn() { return isbn; }
+
+    public FitxaIsbn getFitxa() { return fitxa; }
+
+    public String getTitol() { return fitxa != null ? fitxa.getTitol() : ""; }
+
+    public String getAutor() { return fitxa != null ? fitxa.getAutor() : ""; }
+
+    public String getPublicacio() { return fitxa != null ? fitxa.getPublicacio() : ""; }
+
+    public String getEstat() { return estat.get(); }
+    public void setEstat(String estat) { this.estat.set(estat); }
+    public StringProperty estatProperty() { return estat; }
+}
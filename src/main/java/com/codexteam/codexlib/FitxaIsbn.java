@@ -0,0 +1,31 @@
+package com.codexteam.codexlib;
+
+/**
+ * Dades bàsiques d'un llibre obtingudes d'Open Library a partir del seu ISBN.
+ */
+public class FitxaIsbn {
+    private final String isbn;
+    private final String titol;
+    private final String autor;
+    private final String publicacio;
+    private final String portada;
+
+    public FitxaIsbn(String isbn, String titol, String autor, String publicacio, String portada) {
+        this.isbn = isbn;
+        this.titol = titol;
+        this.autor = autor;
+        this.publicacio = publicacio;
+        this.portada = portada;
+    }
+
+    public String getIsbn() { return isbn; }
+
+    public String getTitol() { return titol; }
+
+    public String getAutor() { return autor; }
+
+    public String getPublicacio() { return publicacio; }
+
+    /** URL de la portada, o "Sense portada" si Open Library no en té. */
+    public String getPortada() { return portada; }
+}
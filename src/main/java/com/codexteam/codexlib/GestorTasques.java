@@ -0,0 +1,153 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.scene.Node;
+import javafx.stage.WindowEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Execució de les peticions d'un controlador fora del fil de JavaFX.
+ *
+ * <p>Cada tasca té un temps màxim; si el supera, es cancel·la i es notifica com a error.
+ * Els resultats i els errors es lliuren sempre al fil de JavaFX, i les tasques cancel·lades
+ * (perquè s'ha tancat la finestra o se n'ha començat una altra) no en lliuren cap.
+ * La propietat {@link #ocupatProperty()} indica si hi ha alguna tasca en curs, per desactivar
+ * botons i mostrar un indicador d'activitat.</p>
+ *
+ * <p>Els mètodes s'han de cridar des del fil de JavaFX.</p>
+ */
+public class GestorTasques {
+
+    /** Fils per a les tasques que bloquegen (per exemple, una petició síncrona). */
+    private static final ExecutorService EXECUTOR = ClientApi.crearExecutor(4, "codexlib-tasques-");
+
+    private final Set<CompletableFuture<?>> enCurs = new HashSet<>();
+    private final ReadOnlyBooleanWrapper ocupat = new ReadOnlyBooleanWrapper(false);
+
+    /**
+     * Executa una tasca que bloqueja en un fil de fons.
+     *
+     * @param tasca   Feina a fer (s'interromp si es cancel·la o se supera el temps).
+     * @param temps   Temps màxim d'execució.
+     * @param enExit  Rep el resultat al fil de JavaFX.
+     * @param enError Rep l'error al fil de JavaFX (una {@link java.util.concurrent.TimeoutException} si se supera el temps).
+     * @return Futur de la tasca; cancel·lar-lo atura la tasca sense avisar cap dels dos receptors.
+     */
+    public <T> CompletableFuture<T> executar(Callable<T> tasca, Duration temps, Consumer<T> enExit, Consumer<Throwable> enError) {
+        CompletableFuture<T> resultat = new CompletableFuture<>();
+        Future<?> execucio = EXECUTOR.submit(() -> {
+            try {
+                resultat.complete(tasca.call());
+            } catch (Throwable e) {
+                resultat.completeExceptionally(e);
+            }
+        });
+        resultat.whenComplete((r, e) -> {
+            if (e != null) {
+                execucio.cancel(true);
+            }
+        });
+        return controlar(resultat, temps, enExit, enError);
+    }
+
+    /**
+     * Controla una operació que ja és asíncrona (per exemple, una petició amb {@code sendAsync}).
+     *
+     * @param tasca   Crea l'operació; el futur que retorna es cancel·la si se supera el temps o es cancel·la la tasca.
+     * @param temps   Temps màxim d'execució.
+     * @param enExit  Rep el resultat al fil de JavaFX.
+     * @param enError Rep l'error al fil de JavaFX.
+     * @return Futur de la tasca.
+     */
+    public <T> CompletableFuture<T> executarAsync(Supplier<CompletableFuture<T>> tasca, Duration temps,
+                                                  Consumer<T> enExit, Consumer<Throwable> enError) {
+        CompletableFuture<T> operacio = tasca.get();
+        CompletableFuture<T> resultat = new CompletableFuture<>();
+        operacio.whenComplete((r, e) -> {
+            if (e != null) {
+                resultat.completeExceptionally(e);
+            } else {
+                resultat.complete(r);
+            }
+        });
+        resultat.whenComplete((r, e) -> {
+            if (e != null) {
+                operacio.cancel(true);
+            }
+        });
+        return controlar(resultat, temps, enExit, enError);
+    }
+
+    private <T> CompletableFuture<T> controlar(CompletableFuture<T> resultat, Duration temps,
+                                               Consumer<T> enExit, Consumer<Throwable> enError) {
+        enCurs.add(resultat);
+        ocupat.set(true);
+        resultat.orTimeout(temps.toMillis(), TimeUnit.MILLISECONDS);
+        resultat.whenComplete((valor, error) -> Platform.runLater(() -> {
+            enCurs.remove(resultat);
+            ocupat.set(!enCurs.isEmpty());
+            if (resultat.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (!(causa instanceof CancellationException)) {
+                    enError.accept(causa);
+                }
+            } else {
+                enExit.accept(valor);
+            }
+        }));
+        return resultat;
+    }
+
+    /**
+     * Cancel·la totes les tasques en curs.
+     */
+    public void cancelarTot() {
+        for (CompletableFuture<?> tasca : new ArrayList<>(enCurs)) {
+            tasca.cancel(true);
+        }
+    }
+
+    /**
+     * Cancel·la les tasques en curs quan es tanqui la finestra que conté el node.
+     *
+     * @param node Qualsevol node de la finestra (pot ser que encara no estigui en una escena).
+     */
+    public void vincularFinestra(Node node) {
+        node.sceneProperty().addListener((obs, anterior, escena) -> {
+            if (escena != null) {
+                escena.windowProperty().addListener((o, finestraAnterior, finestra) -> {
+                    if (finestra != null) {
+                        finestra.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> cancelarTot());
+                    }
+                });
+            }
+        });
+    }
+
+    /** @return Cert mentre hi ha alguna tasca en curs. */
+    public ReadOnlyBooleanProperty ocupatProperty() {
+        return ocupat.getReadOnlyProperty();
+    }
+
+    public boolean isOcupat() {
+        return ocupat.get();
+    }
+}
@@ -0,0 +1,297 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Controlador de la finestra d'importació massiva d'ISBN.
+ * Els ISBN es poden carregar d'un fitxer de text o escanejar un a un; es consulten en segon pla
+ * amb {@link ImportadorIsbn} i els resultats s'afegeixen a la taula de revisió a mesura que arriben.
+ * Un cop revisats, els llibres trobats es poden inserir al catàleg.
+ */
+public class ImportacioIsbnController {
+
+    @FXML private TextField campEscaner;
+    @FXML private ProgressBar barraProgres;
+    @FXML private Label etiquetaProgres;
+    @FXML private TableView<FilaImportacio> taulaImportacio;
+    @FXML private TableColumn<FilaImportacio, String> columnaIsbn;
+    @FXML private TableColumn<FilaImportacio, String> columnaTitol;
+    @FXML private TableColumn<FilaImportacio, String> columnaAutor;
+    @FXML private TableColumn<FilaImportacio, String> columnaPublicacio;
+    @FXML private TableColumn<FilaImportacio, String> columnaEstat;
+    @FXML private Button aturarButton;
+    @FXML private Button inserirButton;
+
+    private final ObservableList<FilaImportacio> files = FXCollections.observableArrayList();
+
+    /** Posició de cada ISBN a la taula, per substituir la fila si es torna a consultar. */
+    private final Map<String, Integer> posicions = new HashMap<>();
+
+    private DiariImportacio diari;
+    private ImportadorIsbn importador;
+
+    @FXML
+    private void initialize() {
+        columnaIsbn.setCellValueFactory(new PropertyValueFactory<>("isbn"));
+        columnaTitol.setCellValueFactory(new PropertyValueFactory<>("titol"));
+        columnaAutor.setCellValueFactory(new PropertyValueFactory<>("autor"));
+        columnaPublicacio.setCellValueFactory(new PropertyValueFactory<>("publicacio"));
+        columnaEstat.setCellValueFactory(cella -> cella.getValue().estatProperty());
+        taulaImportacio.setItems(files);
+
+        // Aturar els fils de la importació si es tanca la finestra (el diari permet reprendre-la)
+        taulaImportacio.sceneProperty().addListener((obs, anterior, escena) -> {
+            if (escena != null) {
+                escena.windowProperty().addListener((o, finestraAnterior, finestra) -> {
+                    if (finestra != null) {
+                        finestra.setOnShown(event -> reprendreOIniciar());
+                        finestra.setOnHidden(event -> tancar());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Si hi ha una importació a mig fer, pregunta si es vol reprendre. En cas contrari, o si es
+     * descarta, comença una importació nova.
+     */
+    private void reprendreOIniciar() {
+        try {
+            diari = DiariImportacio.obrir();
+            List<String> pendents = new ArrayList<>(diari.getAfegits());
+            int senseProcessar = diari.getPendents().size();
+            if (senseProcessar == 0) {
+                // Una importació acabada (o cap) no es proposa reprendre
+                diari.esborrar();
+                pendents.clear();
+            } else {
+                Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+                alert.setTitle("Importació a mig fer");
+                alert.setHeaderText(null);
+                alert.setContentText("Hi ha una importació amb " + senseProcessar + " de " + pendents.size()
+                        + " ISBN per processar. Vols reprendre-la?");
+                Optional<ButtonType> resposta = alert.showAndWait();
+                if (resposta.isEmpty() || resposta.get() != ButtonType.OK) {
+                    diari.esborrar();
+                    pendents.clear();
+                }
+            }
+            iniciarImportador();
+            // Els ja consultats surten de la memòria cau de ServeiIsbn sense tornar a la xarxa
+            importador.afegir(pendents);
+            actualitzarProgres();
+        } catch (IOException e) {
+            mostrarAlerta("Error", "No s'ha pogut obrir el registre de la importació.");
+            e.printStackTrace();
+        }
+    }
+
+    private void iniciarImportador() {
+        importador = new ImportadorIsbn(diari, lot -> Platform.runLater(() -> afegirFiles(lot)));
+    }
+
+    /**
+     * Demana un fitxer de text amb ISBN (separats per salts de línia, espais, comes o punts i comes)
+     * i els afegeix a la importació.
+     */
+    @FXML
+    private void obrirFitxer() {
+        FileChooser selector = new FileChooser();
+        selector.setTitle("Selecciona un fitxer d'ISBN");
+        selector.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Fitxers de text", "*.txt", "*.csv"),
+                new FileChooser.ExtensionFilter("Tots els fitxers", "*.*"));
+        Window finestra = taulaImportacio.getScene().getWindow();
+        File fitxer = selector.showOpenDialog(finestra);
+        if (fitxer == null) {
+            return;
+        }
+        try {
+            String contingut = Files.readString(fitxer.toPath(), StandardCharsets.UTF_8);
+            int afegits = importador.afegir(Arrays.asList(contingut.split("[\\s,;]+")));
+            if (afegits == 0) {
+                mostrarAlerta("Importació", "El fitxer no conté cap ISBN nou.");
+            }
+            actualitzarProgres();
+        } catch (IOException e) {
+            mostrarAlerta("Error", "No s'ha pogut llegir el fitxer.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Afegeix l'ISBN del camp de l'escàner (els lectors de codis de barres acaben amb un Retorn).
+     */
+    @FXML
+    private void afegirEscanejat() {
+        String text = campEscaner.getText().trim();
+        campEscaner.clear();
+        if (text.isEmpty()) {
+            return;
+        }
+        try {
+            importador.afegir(List.of(text));
+            actualitzarProgres();
+        } catch (IOException e) {
+            mostrarAlerta("Error", "No s'ha pogut registrar l'ISBN.");
+            e.printStackTrace();
+        }
+    }
+
+    private void afegirFiles(List<FilaImportacio> lot) {
+        for (FilaImportacio fila : lot) {
+            Integer posicio = posicions.get(fila.getIsbn());
+            if (posicio != null) {
+                files.set(posicio, fila);
+            } else {
+                posicions.put(fila.getIsbn(), files.size());
+                files.add(fila);
+            }
+        }
+        actualitzarProgres();
+        esborrarSiAcabada();
+    }
+
+    // Quan tot s'ha consultat i no queda res per inserir ni per tornar a provar, el diari ja no cal
+    private void esborrarSiAcabada() {
+        if (importador.getTotal() == 0 || importador.getProcessats() < importador.getTotal()) {
+            return;
+        }
+        for (FilaImportacio fila : files) {
+            if (FilaImportacio.TROBAT.equals(fila.getEstat()) || FilaImportacio.ERROR.equals(fila.getEstat())) {
+                return;
+            }
+        }
+        try {
+            diari.esborrar();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void actualitzarProgres() {
+        int total = importador.getTotal();
+        int processats = importador.getProcessats();
+        barraProgres.setProgress(total == 0 ? 0 : (double) processats / total);
+        etiquetaProgres.setText(processats + " / " + total);
+    }
+
+    /**
+     * Atura les consultes pendents. La importació es pot reprendre més endavant obrint de nou la finestra.
+     */
+    @FXML
+    private void aturar() {
+        if (importador != null) {
+            importador.aturar();
+        }
+        aturarButton.setDisable(true);
+    }
+
+    /**
+     * Descarta la importació actual i en comença una de nova.
+     */
+    @FXML
+    private void novaImportacio() {
+        try {
+            importador.aturar();
+            diari.esborrar();
+            files.clear();
+            posicions.clear();
+            iniciarImportador();
+            aturarButton.setDisable(false);
+            actualitzarProgres();
+        } catch (IOException e) {
+            mostrarAlerta("Error", "No s'ha pogut esborrar el registre de la importació.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Insereix al catàleg els llibres trobats que encara no s'hi han inserit.
+     */
+    @FXML
+    private void inserirAlCataleg() {
+        List<FilaImportacio> trobades = new ArrayList<>();
+        for (FilaImportacio fila : files) {
+            if (FilaImportacio.TROBAT.equals(fila.getEstat())) {
+                trobades.add(fila);
+            }
+        }
+        if (trobades.isEmpty()) {
+            mostrarAlerta("Importació", "No hi ha cap llibre trobat pendent d'inserir.");
+            return;
+        }
+
+        inserirButton.setDisable(true);
+        importador.inserirAlCataleg(trobades).whenComplete((inserides, error) -> Platform.runLater(() -> {
+            inserirButton.setDisable(false);
+            if (error != null) {
+                mostrarAlerta("Error", "No s'han pogut inserir tots els llibres. Els inserits ja estan marcats; torna-ho a provar per a la resta.");
+                error.printStackTrace();
+                // Els blocs que sí que s'han inserit consten al diari
+                for (FilaImportacio fila : trobades) {
+                    if (diari.esInserit(fila.getIsbn())) {
+                        fila.setEstat(FilaImportacio.INSERIT);
+                    }
+                }
+            } else {
+                inserides.forEach(fila -> fila.setEstat(FilaImportacio.INSERIT));
+                mostrarAlerta("Importació", "S'han inserit " + inserides.size() + " llibres al catàleg.");
+            }
+            esborrarSiAcabada();
+        }));
+    }
+
+    private void tancar() {
+        if (importador != null) {
+            importador.aturar();
+        }
+        if (diari != null) {
+            try {
+                diari.tancar();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Mostra una finestra d'alerta amb un missatge informatiu.
+     *
+     * @param titol    Títol de l'alerta.
+     * @param missatge Missatge a mostrar.
+     */
+    private void mostrarAlerta(String titol, String missatge) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle(titol);
+        alert.setHeaderText(null);
+        alert.setContentText(missatge);
+        alert.showAndWait();
+    }
+}
@@ -0,0 +1,282 @@
+package com.codexteam.codexlib;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Canalització de la importació massiva d'ISBN.
+ * Els ISBN s'afegeixen a una cua (des d'un fitxer o a mesura que s'escanegen) i uns quants fils
+ * els agrupen en lots que es consulten a Open Library amb una sola petició cadascun.
+ * El nombre de peticions simultànies és limitat i se'n respecta un interval mínim entre l'inici
+ * de dues peticions, per no saturar el servei.
+ *
+ * <p>Els resultats es lliuren per lots al receptor a mesura que arriben, i el progrés es registra
+ * al {@link DiariImportacio} per poder reprendre la importació si s'interromp.</p>
+ */
+public class ImportadorIsbn {
+
+    /** Nombre màxim d'ISBN per petició a Open Library. */
+    public static final int MIDA_LOT = 50;
+
+    /** Peticions simultànies a Open Library. */
+    private static final int CONCURRENCIA = 3;
+
+    /** Temps mínim entre l'inici de dues peticions. */
+    private static final long INTERVAL_MINIM_NS = TimeUnit.MILLISECONDS.toNanos(350);
+
+    /** Llibres per petició d'inserció al servidor. */
+    private static final int MIDA_INSERCIO = 200;
+
+    private static final Pattern ISBN_VALID = Pattern.compile("\\d{9}[\\dX]|\\d{13}");
+
+    private final DiariImportacio diari;
+    private final Consumer<List<FilaImportacio>> receptor;
+    private final LinkedBlockingQueue<String> cua = new LinkedBlockingQueue<>();
+    private final Set<String> vistos = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger processats = new AtomicInteger();
+    private final ExecutorService treballadors;
+    private volatile boolean aturat;
+    private long properTorn;
+
+    /**
+     * Crea la canalització i engega els fils que processen la cua.
+     *
+     * @param diari    Diari on es registra el progrés.
+     * @param receptor Rep cada lot de resultats (des d'un fil de fons).
+     */
+    public ImportadorIsbn(DiariImportacio diari, Consumer<List<FilaImportacio>> receptor) {
+        this.diari = diari;
+        this.receptor = receptor;
+        AtomicInteger comptador = new AtomicInteger();
+        this.treballadors = Executors.newFixedThreadPool(CONCURRENCIA, r -> {
+            Thread fil = new Thread(r, "codexlib-importacio-" + comptador.incrementAndGet());
+            fil.setDaemon(true);
+            return fil;
+        });
+        for (int i = 0; i < CONCURRENCIA; i++) {
+            treballadors.execute(this::treballar);
+        }
+    }
+
+    /**
+     * Afegeix ISBN a la cua. Els que no tenen format vàlid o ja s'han afegit s'ignoren.
+     *
+     * @param isbns ISBN tal com s'han llegit (es normalitzen).
+     * @return Nombre d'ISBN nous afegits.
+     * @throws IOException Si no es poden registrar al diari.
+     */
+    public int afegir(Collection<String> isbns) throws IOException {
+        List<String> nous = new ArrayList<>();
+        for (String isbn : isbns) {
+            String normalitzat = ServeiIsbn.normalitzar(isbn);
+            if (ISBN_VALID.matcher(normalitzat).matches() && vistos.add(normalitzat)) {
+                nous.add(normalitzat);
+            }
+        }
+        diari.registrar(DiariImportacio.AFEGIT, nous);
+        total.addAndGet(nous.size());
+        cua.addAll(nous);
+        return nous.size();
+    }
+
+    /**
+     * Atura els fils. Els ISBN pendents queden al diari per reprendre la importació més endavant.
+     */
+    public void aturar() {
+        aturat = true;
+        treballadors.shutdownNow();
+    }
+
+    public int getTotal() { return total.get(); }
+
+    public int getProcessats() { return processats.get(); }
+
+    //=====================================================
+    //               PROCESSAMENT DE LA CUA
+    //=====================================================
+    private void treballar() {
+        try {
+            while (!aturat) {
+                String primer = cua.poll(500, TimeUnit.MILLISECONDS);
+                if (primer == null) {
+                    continue;
+                }
+                List<String> lot = new ArrayList<>(MIDA_LOT);
+                lot.add(primer);
+                cua.drainTo(lot, MIDA_LOT - 1);
+                try {
+                    processar(lot);
+                } catch (RuntimeException e) {
+                    // Un lot que falla no ha d'aturar el fil: les seves files queden en error
+                    e.printStackTrace();
+                    lliurar(lot.size(), errors(lot));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processar(List<String> lot) throws InterruptedException {
+        List<FilaImportacio> files = new ArrayList<>(lot.size());
+        List<String> perConsultar = new ArrayList<>();
+
+        // Els que ja són a la memòria cau (per exemple, en reprendre una importació) no surten a la xarxa
+        for (String isbn : lot) {
+            Optional<FitxaIsbn> desat = ServeiIsbn.consultarCache(isbn);
+            if (desat != null) {
+                files.add(crearFila(isbn, desat));
+            } else {
+                perConsultar.add(isbn);
+            }
+        }
+
+        List<String> consultats = new ArrayList<>(lot);
+        if (!perConsultar.isEmpty()) {
+            esperarTorn();
+            try {
+                Map<String, Optional<FitxaIsbn>> resultats = ServeiIsbn.consultarLot(perConsultar);
+                for (String isbn : perConsultar) {
+                    files.add(crearFila(isbn, resultats.getOrDefault(isbn, Optional.empty())));
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                // No es registren com a consultats: es tornaran a demanar en reprendre la importació
+                consultats.removeAll(perConsultar);
+                files.addAll(errors(perConsultar));
+            }
+        }
+
+        if (aturat) {
+            return; // S'ha aturat o descartat la importació mentre s'esperava la resposta
+        }
+        try {
+            diari.registrar(DiariImportacio.CONSULTAT, consultats);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        lliurar(lot.size(), files);
+    }
+
+    private void lliurar(int mida, List<FilaImportacio> files) {
+        if (aturat) {
+            return;
+        }
+        processats.addAndGet(mida);
+        try {
+            receptor.accept(files);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static List<FilaImportacio> errors(List<String> isbns) {
+        List<FilaImportacio> files = new ArrayList<>(isbns.size());
+        for (String isbn : isbns) {
+            files.add(new FilaImportacio(isbn, null, FilaImportacio.ERROR));
+        }
+        return files;
+    }
+
+    private FilaImportacio crearFila(String isbn, Optional<FitxaIsbn> fitxa) {
+        String estat = diari.esInserit(isbn) ? FilaImportacio.INSERIT
+                : fitxa.isPresent() ? FilaImportacio.TROBAT : FilaImportacio.NO_TROBAT;
+        return new FilaImportacio(isbn, fitxa.orElse(null), estat);
+    }
+
+    // Limita el ritme: cada petició reserva el torn següent i espera fins que li toca
+    private void esperarTorn() throws InterruptedException {
+        long espera;
+        synchronized (this) {
+            long ara = System.nanoTime();
+            long torn = Math.max(ara, properTorn);
+            properTorn = torn + INTERVAL_MINIM_NS;
+            espera = torn - ara;
+        }
+        if (espera > 0) {
+            TimeUnit.NANOSECONDS.sleep(espera);
+        }
+    }
+
+    //=====================================================
+    //              INSERCIÓ AL SERVIDOR
+    //=====================================================
+    /**
+     * Envia els llibres trobats al servidor en blocs, amb POST /books/bulk.
+     * Cada bloc inserit es registra al diari perquè no es torni a inserir en reprendre la importació.
+     *
+     * @param files Files amb estat {@link FilaImportacio#TROBAT}.
+     * @return Futur amb les files que s'han inserit.
+     */
+    public CompletableFuture<List<FilaImportacio>> inserirAlCataleg(List<FilaImportacio> files) {
+        CompletableFuture<List<FilaImportacio>> resultat = CompletableFuture.completedFuture(new ArrayList<>());
+        for (int inici = 0; inici < files.size(); inici += MIDA_INSERCIO) {
+            List<FilaImportacio> bloc = files.subList(inici, Math.min(files.size(), inici + MIDA_INSERCIO));
+            resultat = resultat.thenCompose(inserides -> inserirBloc(bloc).thenApply(ok -> {
+                inserides.addAll(bloc);
+                return inserides;
+            }));
+        }
+        return resultat;
+    }
+
+    private CompletableFuture<Void> inserirBloc(List<FilaImportacio> bloc) {
+        List<Llibre> llibres = new ArrayList<>(bloc.size());
+        for (FilaImportacio fila : bloc) {
+            llibres.add(aLlibre(fila.getFitxa()));
+        }
+        HttpRequest.Builder request;
+        try {
+            request = ClientApi.peticio("/books/bulk").POST(CodecJson.cosPeticio(llibres));
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+        return ClientApi.enviar(request, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new IllegalStateException("El servidor ha rebutjat la inserció: " + response.statusCode());
+                    }
+                    CachePeticions.invalidar("/books");
+                    List<String> isbns = new ArrayList<>(bloc.size());
+                    bloc.forEach(fila -> isbns.add(fila.getIsbn()));
+                    try {
+                        diari.registrar(DiariImportacio.INSERIT, isbns);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+    }
+
+    // Open Library només dona el nom de l'autor; la data es passa si ve en format ISO
+    private static Llibre aLlibre(FitxaIsbn fitxa) {
+        Llibre llibre = new Llibre();
+        llibre.setTitle(fitxa.getTitol());
+        llibre.setIsbn(fitxa.getIsbn());
+        llibre.setAvailable(true);
+        if (fitxa.getPublicacio().matches("\\d{4}-\\d{2}-\\d{2}")) {
+            llibre.setPublished_date(fitxa.getPublicacio());
+        }
+        Autor autor = new Autor();
+        autor.setName(fitxa.getAutor());
+        llibre.setAuthor(autor);
+        return llibre;
+    }
+}
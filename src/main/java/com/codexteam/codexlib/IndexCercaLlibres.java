@@ -0,0 +1,295 @@
+package com.codexteam.codexlib;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Índex de cerca en memòria sobre la llista de llibres carregada.
+ * Indexa el títol, l'autor, l'ISBN i el gènere de cada llibre en paraules normalitzades
+ * (sense accents ni majúscules), i permet cercar per prefix de paraula: "cami rod" troba
+ * "El camí de Mercè Rodoreda".
+ *
+ * <p>L'índex escolta els canvis de la llista i s'actualitza de manera incremental. S'ha de crear
+ * abans que qualsevol {@code FilteredList} sobre la mateixa llista, perquè quan el filtre avaluï
+ * un llibre nou l'índex ja el tingui.</p>
+ */
+public class IndexCercaLlibres {
+
+    /** Marques diacrítiques que queden separades després de la descomposició NFD. */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /** Separadors de paraula: tot el que no és lletra ni xifra. */
+    private static final Pattern SEPARADORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Paraula normalitzada -> llibres (per posició interna) que la contenen. */
+    private final TreeMap<String, Posicions> termes = new TreeMap<>();
+
+    /** Paraules de cada posició interna, per poder-les treure quan el llibre canvia. */
+    private final List<String[]> paraulesPerPosicio = new ArrayList<>();
+
+    private final Map<Integer, Integer> posicioPerId = new HashMap<>();
+    private final Deque<Integer> posicionsLliures = new ArrayDeque<>();
+
+    /** S'incrementa a cada canvi de l'índex, perquè els filtres sàpiguen quan recalcular. */
+    private int versio;
+
+    /**
+     * Crea l'índex amb els llibres actuals i el manté al dia amb els canvis de la llista.
+     *
+     * @param llibres Llista de llibres que es mostra a la taula.
+     */
+    public IndexCercaLlibres(ObservableList<Llibre> llibres) {
+        llibres.forEach(this::afegir);
+        llibres.addListener((ListChangeListener<Llibre>) canvi -> {
+            if (esReordenacio(canvi)) {
+                return; // Els mateixos llibres en un altre ordre (OrdenacioLlibres): l'índex no canvia
+            }
+            // Si es treu una bona part de la llista (setAll, clear...), és més ràpid reconstruir l'índex
+            int treure = 0;
+            while (canvi.next()) {
+                treure += canvi.getRemovedSize();
+            }
+            canvi.reset();
+            if (treure > 0 && treure >= posicioPerId.size() / 4) {
+                reconstruir(canvi.getList());
+                return;
+            }
+            while (canvi.next()) {
+                if (canvi.wasPermutated()) {
+                    continue; // Les posicions internes no depenen de l'ordre de la llista
+                }
+                canvi.getRemoved().forEach(this::treure);
+                canvi.getAddedSubList().forEach(this::afegir);
+            }
+        });
+    }
+
+    //=====================================================
+    //               MANTENIMENT DE L'ÍNDEX
+    //=====================================================
+    // Un setAll amb exactament els mateixos objectes que hi havia
+    private static boolean esReordenacio(ListChangeListener.Change<? extends Llibre> canvi) {
+        if (!canvi.next() || !canvi.wasReplaced() || canvi.getFrom() != 0
+                || canvi.getRemovedSize() != canvi.getList().size() || canvi.getAddedSize() != canvi.getList().size()) {
+            canvi.reset();
+            return false;
+        }
+        boolean unic = !canvi.next();
+        canvi.reset();
+        if (!unic) {
+            return false;
+        }
+        canvi.next();
+        Set<Llibre> anteriors = Collections.newSetFromMap(new IdentityHashMap<>());
+        anteriors.addAll(canvi.getRemoved());
+        boolean mateixos = anteriors.size() == canvi.getAddedSize()
+                && canvi.getAddedSubList().stream().allMatch(anteriors::contains);
+        canvi.reset();
+        return mateixos;
+    }
+
+    private void reconstruir(List<? extends Llibre> llibres) {
+        termes.clear();
+        paraulesPerPosicio.clear();
+        posicioPerId.clear();
+        posicionsLliures.clear();
+        llibres.forEach(this::afegir);
+        versio++;
+    }
+
+    private void afegir(Llibre llibre) {
+        treure(llibre); // Un llibre modificat arriba com a objecte nou amb el mateix id
+        Integer lliure = posicionsLliures.poll();
+        int posicio = lliure != null ? lliure : paraulesPerPosicio.size();
+
+        String[] paraules = paraulesDe(llibre);
+        for (int i = 0; i < paraules.length; i++) {
+            Map.Entry<String, Posicions> entrada = termes.ceilingEntry(paraules[i]);
+            if (entrada != null && entrada.getKey().equals(paraules[i])) {
+                paraules[i] = entrada.getKey(); // Compartim la mateixa instància de text
+                entrada.getValue().afegir(posicio);
+            } else {
+                Posicions documents = new Posicions();
+                documents.afegir(posicio);
+                termes.put(paraules[i], documents);
+            }
+        }
+
+        if (posicio == paraulesPerPosicio.size()) {
+            paraulesPerPosicio.add(paraules);
+        } else {
+            paraulesPerPosicio.set(posicio, paraules);
+        }
+        posicioPerId.put(llibre.getId(), posicio);
+        versio++;
+    }
+
+    private void treure(Llibre llibre) {
+        Integer posicio = posicioPerId.remove(llibre.getId());
+        if (posicio == null) {
+            return;
+        }
+        for (String paraula : paraulesPerPosicio.get(posicio)) {
+            Posicions documents = termes.get(paraula);
+            if (documents != null && documents.treure(posicio)) {
+                termes.remove(paraula);
+            }
+        }
+        paraulesPerPosicio.set(posicio, null);
+        posicionsLliures.push(posicio);
+        versio++;
+    }
+
+    // Paraules diferents del títol, autor, ISBN (també sense guions) i gènere
+    private static String[] paraulesDe(Llibre llibre) {
+        Set<String> paraules = new LinkedHashSet<>();
+        afegirParaules(paraules, llibre.getTitle());
+        afegirParaules(paraules, llibre.getAuthorName());
+        afegirParaules(paraules, llibre.getGenreName());
+        if (llibre.getIsbn() != null) {
+            afegirParaules(paraules, llibre.getIsbn());
+            String nomesXifres = SEPARADORS.matcher(normalitzar(llibre.getIsbn())).replaceAll("");
+            if (!nomesXifres.isEmpty()) {
+                paraules.add(nomesXifres);
+            }
+        }
+        return paraules.toArray(new String[0]);
+    }
+
+    private static void afegirParaules(Set<String> paraules, String text) {
+        if (text != null) {
+            paraules.addAll(Arrays.asList(paraules(text)));
+        }
+    }
+
+    /**
+     * Normalitza un text per comparar-lo: sense accents, en minúscules i sense el punt volat
+     * de la ela geminada ("Col·lecció" -> "colleccio").
+     */
+    static String normalitzar(String text) {
+        String descompost = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(descompost).replaceAll("")
+                .replace("·", "")
+                .replace("‧", "")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] paraules(String text) {
+        String normalitzat = normalitzar(text).trim();
+        if (normalitzat.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(SEPARADORS.split(normalitzat)).filter(p -> !p.isEmpty()).toArray(String[]::new);
+    }
+
+    //=====================================================
+    //                       CERCA
+    //=====================================================
+    /**
+     * Crea el filtre per a una consulta. Cada paraula de la consulta ha de ser el prefix
+     * d'alguna paraula del llibre. El filtre es recalcula sol si l'índex canvia.
+     *
+     * @param consulta Text escrit per l'usuari.
+     * @return El predicat per a la {@code FilteredList}, o null si la consulta és buida (mostrar-ho tot).
+     */
+    public Predicate<Llibre> filtre(String consulta) {
+        String[] consultaNormalitzada = consulta != null ? paraules(consulta) : new String[0];
+        if (consultaNormalitzada.length == 0) {
+            return null;
+        }
+        return new Predicate<>() {
+            private int versioCalculada = -1;
+            private BitSet resultat;
+
+            @Override
+            public boolean test(Llibre llibre) {
+                if (versioCalculada != versio) {
+                    resultat = cercar(consultaNormalitzada);
+                    versioCalculada = versio;
+                }
+                Integer posicio = posicioPerId.get(llibre.getId());
+                return posicio != null && resultat.get(posicio);
+            }
+        };
+    }
+
+    /**
+     * Retorna les posicions internes dels llibres que coincideixen amb tots els termes:
+     * per a cada terme s'uneixen les llistes de totes les paraules que comencen així,
+     * i després s'intersequen els conjunts dels diferents termes.
+     */
+    private BitSet cercar(String[] consulta) {
+        BitSet resultat = null;
+        for (String terme : consulta) {
+            BitSet documents = documentsAmbPrefix(terme);
+            if (resultat == null) {
+                resultat = documents;
+            } else {
+                resultat.and(documents);
+            }
+            if (resultat.isEmpty()) {
+                break;
+            }
+        }
+        return resultat;
+    }
+
+    private BitSet documentsAmbPrefix(String prefix) {
+        BitSet documents = new BitSet(paraulesPerPosicio.size());
+        for (Posicions posicions : termes.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            posicions.marcar(documents);
+        }
+        return documents;
+    }
+
+    /**
+     * Llista de posicions internes d'una paraula. La majoria de paraules (ISBN, cognoms...) només
+     * surten en un o pocs llibres, i una llista d'enters ocupa molt menys que un conjunt de bits.
+     */
+    private static final class Posicions {
+        private int[] valors = new int[2];
+        private int mida;
+
+        void afegir(int posicio) {
+            if (mida == valors.length) {
+                valors = Arrays.copyOf(valors, mida * 2);
+            }
+            valors[mida++] = posicio;
+        }
+
+        /** @return true si la llista s'ha quedat buida. */
+        boolean treure(int posicio) {
+            for (int i = 0; i < mida; i++) {
+                if (valors[i] == posicio) {
+                    valors[i] = valors[--mida];
+                    break;
+                }
+            }
+            return mida == 0;
+        }
+
+        void marcar(BitSet documents) {
+            for (int i = 0; i < mida; i++) {
+                documents.set(valors[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.codexteam.codexlib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Còpia local i versionada del catàleg de llibres, desada en un format binari compacte.
+ * Permet mostrar el catàleg en obrir el panell sense esperar el servidor, i guarda els
+ * validadors HTTP (ETag i Last-Modified) per revalidar-lo amb una petició condicional.
+ *
+ * <p>Els autors i els gèneres s'escriuen un sol cop en unes taules al principi del fitxer,
+ * i cada llibre només hi guarda l'índex.</p>
+ */
+public class InstantaniaCataleg {
+
+    private static final String NOM_FITXER = "cataleg.bin";
+
+    /** Identificador del format ("CXLB"). */
+    private static final int MAGIC = 0x43584C42;
+
+    /** Versió del format; si canvia, les instantànies antigues s'ignoren. */
+    private static final int VERSIO = 1;
+
+    // Un sol desament alhora per a totes les instàncies
+    private static final Object ESCRIPTURA = new Object();
+
+    private final List<Llibre> llibres;
+    private final String etag;
+    private final String lastModified;
+    private final String marcaSincronitzacio;
+
+    /**
+     * @param llibres      Catàleg complet.
+     * @param etag         Valor de la capçalera ETag de la resposta, o null.
+     * @param lastModified Valor de la capçalera Last-Modified de la resposta, o null.
+     */
+    public InstantaniaCataleg(List<Llibre> llibres, String etag, String lastModified) {
+        this.llibres = llibres;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.marcaSincronitzacio = SincronitzacioCataleg.marcaMaxima(null, llibres);
+    }
+
+    public List<Llibre> getLlibres() { return llibres; }
+
+    public String getEtag() { return etag; }
+
+    public String getLastModified() { return lastModified; }
+
+    /** El {@code updated_at} més recent del catàleg, punt de partida de la sincronització incremental. */
+    public String getMarcaSincronitzacio() { return marcaSincronitzacio; }
+
+    //=====================================================
+    //                  LECTURA DEL DISC
+    //=====================================================
+    /**
+     * Llegeix la instantània desada al disc.
+     *
+     * @return La instantània, o null si no n'hi ha cap o és d'una versió incompatible.
+     */
+    public static InstantaniaCataleg carregar() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(DadesLocals.fitxer(NOM_FITXER)))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSIO) {
+                return null;
+            }
+            String etag = llegirText(in);
+            String lastModified = llegirText(in);
+
+            Autor[] autors = new Autor[in.readInt()];
+            for (int i = 0; i < autors.length; i++) {
+                Autor autor = new Autor();
+                autor.setId(in.readInt());
+                autor.setName(llegirText(in));
+                autor.setBirth_date(llegirText(in));
+                autor.setNationality(llegirText(in));
+                autor.setCreated_at(llegirText(in));
+                autor.setUpdated_at(llegirText(in));
+                autors[i] = RegistreEntitats.autor(autor);
+            }
+
+            Genere[] generes = new Genere[in.readInt()];
+            for (int i = 0; i < generes.length; i++) {
+                Genere genere = new Genere();
+                genere.setId(in.readInt());
+                genere.setName(llegirText(in));
+                genere.setDescription(llegirText(in));
+                genere.setCreated_at(llegirText(in));
+                genere.setUpdated_at(llegirText(in));
+                generes[i] = RegistreEntitats.genere(genere);
+            }
+
+            int total = in.readInt();
+            List<Llibre> llibres = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                Llibre llibre = new Llibre();
+                llibre.setId(in.readInt());
+                llibre.setTitle(llegirText(in));
+                int autor = in.readInt();
+                llibre.setAuthor(autor >= 0 ? autors[autor] : null);
+                llibre.setIsbn(llegirText(in));
+                llibre.setPublished_date(llegirText(in));
+                int genere = in.readInt();
+                llibre.setGenre(genere >= 0 ? generes[genere] : null);
+                llibre.setAvailable(in.readBoolean());
+                llibre.setCreated_at(llegirText(in));
+                llibre.setUpdated_at(llegirText(in));
+                llibres.add(RegistreEntitats.llibre(llibre));
+            }
+            return new InstantaniaCataleg(llibres, etag, lastModified);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // Una instantània malmesa no ha d'impedir carregar el catàleg del servidor
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    //=====================================================
+    //                  ESCRIPTURA AL DISC
+    //=====================================================
+    /**
+     * Desa la instantània al disc. S'escriu primer a un fitxer temporal i després se substitueix
+     * l'anterior, perquè una interrupció no deixi mai un fitxer a mitges. Les escriptures es fan d'una en
+     * una (la sincronització i la càrrega per pàgines poden desar alhora, i comparteixen el temporal).
+     *
+     * @throws IOException Si no es pot escriure el fitxer.
+     */
+    public void desar() throws IOException {
+        synchronized (ESCRIPTURA) {
+            escriure();
+        }
+    }
+
+    private void escriure() throws IOException {
+        Path desti = DadesLocals.fitxer(NOM_FITXER);
+        Path temporal = desti.resolveSibling(NOM_FITXER + ".tmp");
+
+        // Taules d'autors i gèneres sense repetits, indexades per id
+        Map<Integer, Integer> indexAutors = new HashMap<>();
+        List<Autor> autors = new ArrayList<>();
+        Map<Integer, Integer> indexGeneres = new HashMap<>();
+        List<Genere> generes = new ArrayList<>();
+        for (Llibre llibre : llibres) {
+            Autor autor = llibre.getAuthor();
+            if (autor != null && indexAutors.putIfAbsent(autor.getId(), autors.size()) == null) {
+                autors.add(autor);
+            }
+            Genere genere = llibre.getGenre();
+            if (genere != null && indexGeneres.putIfAbsent(genere.getId(), generes.size()) == null) {
+                generes.add(genere);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temporal))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSIO);
+            escriureText(out, etag);
+            escriureText(out, lastModified);
+
+            out.writeInt(autors.size());
+            for (Autor autor : autors) {
+                out.writeInt(autor.getId());
+                escriureText(out, autor.getName());
+                escriureText(out, autor.getBirth_date());
+                escriureText(out, autor.getNationality());
+                escriureText(out, autor.getCreated_at());
+                escriureText(out, autor.getUpdated_at());
+            }
+
+            out.writeInt(generes.size());
+            for (Genere genere : generes) {
+                out.writeInt(genere.getId());
+                escriureText(out, genere.getName());
+                escriureText(out, genere.getDescription());
+                escriureText(out, genere.getCreated_at());
+                escriureText(out, genere.getUpdated_at());
+            }
+
+            out.writeInt(llibres.size());
+            for (Llibre llibre : llibres) {
+                out.writeInt(llibre.getId());
+                escriureText(out, llibre.getTitle());
+                out.writeInt(llibre.getAuthor() != null ? indexAutors.get(llibre.getAuthor().getId()) : -1);
+                escriureText(out, llibre.getIsbn());
+                escriureText(out, llibre.getPublished_date());
+                out.writeInt(llibre.getGenre() != null ? indexGeneres.get(llibre.getGenre().getId()) : -1);
+                out.writeBoolean(llibre.isAvailable());
+                escriureText(out, llibre.getCreated_at());
+                escriureText(out, llibre.getUpdated_at());
+            }
+        }
+        Files.move(temporal, desti, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Els textos es desen com a longitud + bytes UTF-8; -1 indica null
+    private static void escriureText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String llegirText(DataInputStream in) throws IOException {
+        int longitud = in.readInt();
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -6,16 +6,12 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.stage.Stage;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.time.Duration;
 
 /**
  * Controlador encarregat de cercar informació d'un llibre a partir del seu ISBN mitjançant l'API de Open Library.
@@ -29,61 +25,51 @@ public class IsbnController {
     @FXML
     private Button cercarISBNButton;
 
+    @FXML
+    private ProgressIndicator indicadorCerca;
+
+    /** Temps màxim d'una cerca (inclou la lectura de la memòria cau del disc). */
+    private static final Duration TEMPS_CERCA = Duration.ofSeconds(15);
+
+    /** Cerques en curs, que es cancel·len si se'n fa una altra o es tanca la finestra. */
+    private final GestorTasques tasques = new GestorTasques();
+
     @FXML
     private void initialize() {
         cercarISBNButton.setOnAction(event -> cercarPerIsbn());
+
+        cercarISBNButton.disableProperty().bind(tasques.ocupatProperty());
+        indicadorCerca.visibleProperty().bind(tasques.ocupatProperty());
+        tasques.vincularFinestra(campISBN);
     }
 
     /**
      * Realitza la consulta a Open Library amb l'ISBN introduït i, si troba un resultat,
-     * obre una nova finestra amb els detalls del llibre.
+     * obre una nova finestra amb els detalls del llibre. La consulta es fa en segon pla
+     * i els resultats es guarden a la memòria cau de {@link ServeiIsbn}.
      */
     @FXML
     private void cercarPerIsbn() {
-        String isbn = campISBN.getText().trim();
+        String isbn = ServeiIsbn.normalitzar(campISBN.getText().trim());
         if (isbn.isEmpty()) {
             mostrarAlerta("Error", "Si us plau, introdueix un ISBN.");
             return;
         }
 
-        // Open Library
-        String url = "https://openlibrary.org/api/books?bibkeys=ISBN:" + isbn + "&format=json&jscmd=data";
-
-        // Google Books (no retorna gaires dades)
-        // String url = "https://www.googleapis.com/books/v1/volumes?q=isbn:" + isbn;
-
-        try {
-            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setRequestMethod("GET");
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-            reader.close();
-
-            JSONObject jsonResponse = new JSONObject(response.toString());
-
-            if (!jsonResponse.has("ISBN:" + isbn)) {
-                mostrarAlerta("Error", "No sha trobat cap llibre amb l'ISBN " + isbn);
-                return;
-            }
-
-            JSONObject bookInfo = jsonResponse.getJSONObject("ISBN:" + isbn);
-
-            String titol = bookInfo.optString("title", "Títol desconegut");
-            String autor = bookInfo.has("authors") ? bookInfo.getJSONArray("authors").getJSONObject(0).getString("name") : "Autor desconegut";
-            String publicacio = bookInfo.optString("publish_date", "Data no disponible");
-            String portada = bookInfo.has("cover") ? bookInfo.getJSONObject("cover").optString("medium", "Sense portada") : "Sense portada";
-
-            obrirFinestraDetalls(titol, autor, publicacio, isbn, portada);
-
-        } catch (Exception e) {
-            mostrarAlerta("Error", "No s'ha pogut connectar amb Open Library.");
-            e.printStackTrace();
-        }
+        tasques.cancelarTot();
+        tasques.executarAsync(() -> ServeiIsbn.cercar(isbn), TEMPS_CERCA,
+                fitxa -> {
+                    if (fitxa.isEmpty()) {
+                        mostrarAlerta("Error", "No sha trobat cap llibre amb l'ISBN " + isbn);
+                    } else {
+                        FitxaIsbn llibre = fitxa.get();
+                        obrirFinestraDetalls(llibre.getTitol(), llibre.getAutor(), llibre.getPublicacio(), isbn, llibre.getPortada());
+                    }
+                },
+                error -> {
+                    mostrarAlerta("Error", "No s'ha pogut connectar amb Open Library.");
+                    error.printStackTrace();
+                });
     }
 
     /**
@@ -107,7 +93,7 @@ public class IsbnController {
             stage.setTitle("Detalls del Llibre");
             stage.setScene(new Scene(root));
             // Icona de la finestra
-            stage.getIcons().add(new Image(getClass().getResourceAsStream("/com/codexteam/codexlib/images/details.png")));
+            stage.getIcons().add(CacheVistes.icona("/com/codexteam/codexlib/images/details.png"));
             stage.show();
 
         } catch (IOException e) {
@@ -130,6 +116,27 @@ public class IsbnController {
         alert.showAndWait();
     }
 
+    /**
+     * Obre la finestra d'importació massiva, per consultar molts ISBN alhora des d'un fitxer o un escàner.
+     */
+    @FXML
+    private void obrirImportacioMassiva() {
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/codexteam/codexlib/fxml/importacioIsbnView.fxml"));
+            Parent root = loader.load();
+
+            Stage stage = new Stage();
+            stage.setTitle("Importació massiva d'ISBN");
+            stage.setScene(new Scene(root));
+            stage.getIcons().add(CacheVistes.icona("/com/codexteam/codexlib/images/isbn.png"));
+            stage.show();
+
+        } catch (IOException e) {
+            mostrarAlerta("Error", "No s'ha pogut obrir la finestra d'importació massiva.");
+            e.printStackTrace();
+        }
+    }
+
     public void entradaLlibreManual(){
 
     }
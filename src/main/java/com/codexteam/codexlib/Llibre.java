@@ -1,5 +1,7 @@
 package com.codexteam.codexlib;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Representa un llibre dins del sistema. Conté informació bàsica com títol, autor, ISBN, gènere,
  * data de publicació, disponibilitat i dades de creació/modificació.
@@ -42,11 +44,32 @@ public class Llibre {
     public String getUpdated_at() { return updated_at; }
     public void setUpdated_at(String updated_at) { this.updated_at = updated_at; }
 
-    // Métodos para mostrar en la tabla
+    /**
+     * Còpia per editar: les files de la taula no es modifiquen mai, se substitueixen per un objecte nou.
+     * L'autor i el gènere es comparteixen (vegeu {@link RegistreEntitats}).
+     */
+    public Llibre copia() {
+        // Amb els getters, perquè les files compactes no fan servir els camps
+        Llibre copia = new Llibre();
+        copia.id = getId();
+        copia.title = getTitle();
+        copia.author = getAuthor();
+        copia.isbn = getIsbn();
+        copia.published_date = getPublished_date();
+        copia.genre = getGenre();
+        copia.available = isAvailable();
+        copia.created_at = getCreated_at();
+        copia.updated_at = getUpdated_at();
+        return copia;
+    }
+
+    // Métodos para mostrar en la tabla (no s'envien al servidor)
+    @JsonIgnore
     public String getAuthorName() {
         return author != null ? author.getName() : "Desconegut";
     }
 
+    @JsonIgnore
     public String getGenreName() {
         return genre != null ? genre.getName() : "Sense gènere";
     }
@@ -0,0 +1,205 @@
+package com.codexteam.codexlib;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Llista observable de llibres guardada en un {@link CatalegCompacte}.
+ * Es pot fer servir en lloc d'una {@code ObservableList<Llibre>} normal (activant-la amb
+ * -Dcodexlib.cataleg.compacte=true): la taula, el filtre i l'índex de cerca hi funcionen igual.
+ *
+ * <p>{@link #get(int)} retorna vistes que llegeixen del catàleg compacte. Els llibres que es treuen
+ * de la llista (els que reben els observadors a {@code getRemoved()}) són còpies independents,
+ * perquè la seva casella es pot reutilitzar de seguida. Per la mateixa raó, {@link #toArray()} retorna
+ * còpies, que es poden passar a altres fils (per exemple, per desar la instantània del catàleg).</p>
+ */
+public class LlistaLlibresCompacta extends ModifiableObservableListBase<Llibre> {
+
+    /** Indica si l'aplicació ha de fer servir el catàleg compacte. */
+    public static final boolean ACTIVADA = Boolean.getBoolean("codexlib.cataleg.compacte");
+
+    private final CatalegCompacte cataleg = new CatalegCompacte();
+
+    /** Casella del catàleg de cada posició de la llista. */
+    private int[] ordre = new int[16];
+    private int mida;
+
+    @Override
+    public Llibre get(int index) {
+        comprovarIndex(index);
+        return cataleg.vista(ordre[index]);
+    }
+
+    @Override
+    public int size() {
+        return mida;
+    }
+
+    /**
+     * @return Catàleg compacte on es guarden els llibres, per fer-hi recorreguts per columnes.
+     */
+    public CatalegCompacte getCataleg() {
+        return cataleg;
+    }
+
+    /**
+     * @return Casella del catàleg del llibre de la posició indicada.
+     */
+    public int casella(int index) {
+        comprovarIndex(index);
+        return ordre[index];
+    }
+
+    @Override
+    protected void doAdd(int index, Llibre element) {
+        if (index < 0 || index > mida) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int casella = cataleg.afegir(element);
+        if (mida == ordre.length) {
+            ordre = Arrays.copyOf(ordre, mida + (mida >> 1) + 1);
+        }
+        System.arraycopy(ordre, index, ordre, index + 1, mida - index);
+        ordre[index] = casella;
+        mida++;
+    }
+
+    @Override
+    protected Llibre doSet(int index, Llibre element) {
+        comprovarIndex(index);
+        int anterior = ordre[index];
+        Llibre copia = cataleg.copia(anterior);
+        ordre[index] = cataleg.afegir(element);
+        cataleg.alliberar(anterior);
+        return copia;
+    }
+
+    @Override
+    protected Llibre doRemove(int index) {
+        comprovarIndex(index);
+        int casella = ordre[index];
+        Llibre copia = cataleg.copia(casella);
+        cataleg.alliberar(casella);
+        System.arraycopy(ordre, index + 1, ordre, index, mida - index - 1);
+        mida--;
+        return copia;
+    }
+
+    /**
+     * Substitueix el contingut de la llista. Si els elements nous són vistes d'aquesta mateixa llista
+     * (per exemple, la llista reordenada), només es canvia l'ordre de les caselles, sense tornar a
+     * guardar cap dada; si a més hi són tots, el canvi es notifica com a permutació.
+     */
+    @Override
+    public boolean setAll(Collection<? extends Llibre> col) {
+        int[] nouOrdre = casellesSiSonVistes(col);
+        if (nouOrdre == null) {
+            // Si n'hi ha alguna vista, se'n fa una còpia abans de buidar la llista i alliberar-ne les caselles
+            List<Llibre> copies = new ArrayList<>(col.size());
+            for (Llibre llibre : col) {
+                int casella = cataleg.casellaDe(llibre);
+                copies.add(casella >= 0 ? cataleg.copia(casella) : llibre);
+            }
+            return super.setAll(copies);
+        }
+
+        if (nouOrdre.length == mida) {
+            // Mateixos llibres en un altre ordre: es notifica com a permutació
+            int maxima = 0;
+            for (int casella : nouOrdre) {
+                maxima = Math.max(maxima, casella);
+            }
+            int[] posicioNova = new int[maxima + 1];
+            for (int i = 0; i < mida; i++) {
+                posicioNova[nouOrdre[i]] = i;
+            }
+            int[] permutacio = new int[mida];
+            for (int i = 0; i < mida; i++) {
+                permutacio[i] = posicioNova[ordre[i]];
+            }
+            ordre = nouOrdre.length > 0 ? nouOrdre : new int[16];
+            modCount++;
+            beginChange();
+            nextPermutation(0, mida, permutacio);
+            endChange();
+            return true;
+        }
+
+        List<Llibre> trets = new ArrayList<>(mida);
+        for (int i = 0; i < mida; i++) {
+            trets.add(cataleg.copia(ordre[i]));
+        }
+        BitSet conservades = new BitSet();
+        for (int casella : nouOrdre) {
+            conservades.set(casella);
+        }
+        int[] anterior = Arrays.copyOf(ordre, mida);
+        ordre = nouOrdre.length > 0 ? nouOrdre : new int[16];
+        mida = nouOrdre.length;
+        for (int casella : anterior) {
+            if (!conservades.get(casella)) {
+                cataleg.alliberar(casella);
+            }
+        }
+
+        modCount++;
+        beginChange();
+        nextReplace(0, mida, trets);
+        endChange();
+        return true;
+    }
+
+    // Caselles dels elements si tots són vistes diferents d'aquesta llista; si no, null
+    private int[] casellesSiSonVistes(Collection<? extends Llibre> col) {
+        int[] caselles = new int[col.size()];
+        BitSet vistes = new BitSet();
+        BitSet actuals = new BitSet();
+        for (int i = 0; i < mida; i++) {
+            actuals.set(ordre[i]);
+        }
+        int i = 0;
+        for (Llibre llibre : col) {
+            int casella = cataleg.casellaDe(llibre);
+            if (casella < 0 || !actuals.get(casella) || vistes.get(casella)) {
+                return null;
+            }
+            vistes.set(casella);
+            caselles[i++] = casella;
+        }
+        return caselles;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] copies = new Object[mida];
+        for (int i = 0; i < mida; i++) {
+            copies[i] = cataleg.copia(ordre[i]);
+        }
+        return copies;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        T[] resultat = a.length >= mida ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), mida);
+        for (int i = 0; i < mida; i++) {
+            resultat[i] = (T) cataleg.copia(ordre[i]);
+        }
+        if (resultat.length > mida) {
+            resultat[mida] = null;
+        }
+        return resultat;
+    }
+
+    private void comprovarIndex(int index) {
+        if (index < 0 || index >= mida) {
+            throw new IndexOutOfBoundsException(index);
+        }
+    }
+}
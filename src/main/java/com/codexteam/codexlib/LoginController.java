@@ -7,13 +7,14 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.scene.Parent;
 import java.io.IOException;
+import java.time.Duration;
 
 /**
  * Controlador de la pantalla de login.
@@ -28,6 +29,12 @@ public class LoginController {
     @FXML private TextField campNomUsuari;
     @FXML private PasswordField campContrasenya;
     @FXML private Button loginButton;
+    @FXML private ProgressIndicator indicadorLogin;
+
+    /** Temps màxim d'espera de la resposta del login. */
+    private static final Duration TEMPS_LOGIN = Duration.ofSeconds(20);
+
+    private final GestorTasques tasques = new GestorTasques();
 
     /**
      * Inicialitza el controlador. Desactiva el focus inicial en els camps i
@@ -40,6 +47,14 @@ public class LoginController {
 
         // Obrir finestra de registre
         nouCompteButton.setOnAction(event -> crearNouCompte());
+
+        // Mentre s'espera el servidor, no es pot tornar a enviar ni canviar les dades
+        loginButton.disableProperty().bind(tasques.ocupatProperty());
+        nouCompteButton.disableProperty().bind(tasques.ocupatProperty());
+        campNomUsuari.disableProperty().bind(tasques.ocupatProperty());
+        campContrasenya.disableProperty().bind(tasques.ocupatProperty());
+        indicadorLogin.visibleProperty().bind(tasques.ocupatProperty());
+        tasques.vincularFinestra(paneLogin);
     }
 
     /**
@@ -57,21 +72,29 @@ public class LoginController {
         // 3. Desar el codi en memòria per a futures sol·licituds.
         // 4. Incloure el codi a totes les peticions futures al servidor.
 
-        if (ConnexioServidor.login(username, password)) {
-
-            if (ConnexioServidor.getTipusUsuari() == 1) {
-                // Obrir el panell d'administració
-                obrirNovaFinestra("/com/codexteam/codexlib/fxml/adminView.fxml", "CodexLibris - Administració");
-            } else {
-                // Obrir el panell d'usuari no administrador
-                obrirNovaFinestra("/com/codexteam/codexlib/fxml/userView.fxml", "CodexLibris");
-            }
+        // La petició es fa en segon pla perquè la finestra no es bloquegi si el servidor triga
+        tasques.executar(() -> ConnexioServidor.login(username, password), TEMPS_LOGIN,
+                correcte -> {
+                    if (correcte) {
+                        obrirPanellUsuari();
+                    } else {
+                        mostrarAlerta("Error", "Usuari o contrasenya incorrectes");
+                    }
+                },
+                error -> mostrarAlerta("Error", "El servidor no respon. Torna-ho a provar d'aquí a una estona."));
+    }
 
-            // Tancar la finestra del login si s'ha iniciat sessió correctament
-            tancarFinestraActual();
+    private void obrirPanellUsuari() {
+        if (ConnexioServidor.getTipusUsuari() == 1) {
+            // Obrir el panell d'administració
+            obrirNovaFinestra("/com/codexteam/codexlib/fxml/adminView.fxml", "CodexLibris - Administració");
         } else {
-            mostrarAlerta("Error", "Usuari o contrasenya incorrectes");
+            // Obrir el panell d'usuari no administrador
+            obrirNovaFinestra("/com/codexteam/codexlib/fxml/userView.fxml", "CodexLibris");
         }
+
+        // Tancar la finestra del login si s'ha iniciat sessió correctament
+        tancarFinestraActual();
     }
 
     /**
@@ -82,14 +105,16 @@ public class LoginController {
      */
     private void obrirNovaFinestra(String fxmlPath, String title) {
         try {
+            long inici = System.nanoTime();
             FXMLLoader loader = new FXMLLoader(getClass().getResource(fxmlPath));
             Parent root = loader.load();
 
             Stage stage = new Stage();
             stage.setTitle(title);
             stage.setScene(new Scene(root, 1200, 825));
+            ArrencadaRapida.mesurarPanell(stage.getScene(), inici);
             // Icona de la finestra
-            stage.getIcons().add(new Image(getClass().getResourceAsStream("/com/codexteam/codexlib/images/book_w.png")));
+            stage.getIcons().add(CacheVistes.icona("/com/codexteam/codexlib/images/book_w.png"));
             stage.show();
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,389 @@
+package com.codexteam.codexlib;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.util.Duration;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Ordenació de la taula de llibres per diverses columnes, amb l'ordre alfabètic català.
+ *
+ * <p>Comparar amb un {@link Collator} a cada comparació és car, així que per a cada llibre es
+ * calcula una sola vegada la {@link CollationKey} del títol (i una per autor i per gènere, que són
+ * compartits) i es guarda fins que el llibre canvia. Quan canvia l'ordre de la taula, la llista
+ * s'ordena sencera en un fil de fons sobre aquestes claus, i el resultat s'aplica amb un sol {@code setAll}.</p>
+ *
+ * <p>Substitueix la política d'ordenació de la taula: la taula ha de mostrar la llista (o un filtre
+ * d'aquesta) directament, sense {@code SortedList}. Si la llista canvia mentre hi ha un ordre actiu
+ * (una edició, un canvi en viu, pàgines noves...), al cap d'un moment només es recol·loquen les files
+ * afegides o substituïdes, amb una cerca binària entre les altres, que ja són en ordre. Si n'han
+ * canviat moltes, es torna a ordenar tot.</p>
+ */
+public class OrdenacioLlibres {
+
+    /** Criteris d'ordenació disponibles per a les columnes. */
+    public enum Criteri { TITOL, AUTOR, GENERE, PUBLICACIO, DISPONIBILITAT, ISBN }
+
+    /** Espera després d'un canvi de la llista abans de tornar-la a ordenar. */
+    private static final Duration ESPERA_REORDENACIO = Duration.millis(400);
+
+    // Un sol fil: les ordenacions es fan d'una en una i la darrera és la que compta
+    private static final ExecutorService EXECUTOR = ClientApi.crearExecutor(1, "codexlib-ordenacio-");
+
+    private static final Locale CATALA = Locale.forLanguageTag("ca-ES");
+
+    private final ObservableList<Llibre> llibres;
+
+    /** Claus calculades per id de llibre. */
+    private final Map<Integer, Claus> claus = new ConcurrentHashMap<>();
+    // Els autors i gèneres són instàncies compartides (RegistreEntitats): una clau per instància
+    private final Map<Autor, CollationKey> clausAutors = new ConcurrentHashMap<>();
+    private final Map<Genere, CollationKey> clausGeneres = new ConcurrentHashMap<>();
+
+    /** Files canviades a partir de les quals surt més a compte ordenar-ho tot (mínim). */
+    private static final int MAX_RECOLLOCACIONS = 256;
+
+    private final PauseTransition reordenacio = new PauseTransition(ESPERA_REORDENACIO);
+    // Ids de les files afegides o substituïdes des de l'última ordenació
+    private final Set<Integer> canviats = new HashSet<>();
+    private Collator collatorFx;
+    private boolean ordenacioEnCurs;
+    private TableView<Llibre> taula;
+    private Map<TableColumn<Llibre, ?>, Criteri> criteris;
+    private int versioLlista;
+    private int generacio;
+    private boolean aplicant;
+
+    /**
+     * Claus d'ordenació d'un llibre. {@code font} és la fila de la qual s'han calculat, per saber si
+     * encara són vàlides (un llibre modificat arriba com a objecte nou).
+     */
+    private record Claus(Llibre font, CollationKey titol, CollationKey autor, CollationKey genere,
+                         long publicacio, boolean disponible, String isbn) {
+    }
+
+    /**
+     * @param llibres Llista de llibres que es mostra a la taula.
+     */
+    public OrdenacioLlibres(ObservableList<Llibre> llibres) {
+        this.llibres = llibres;
+        reordenacio.setOnFinished(event -> recollocar());
+        llibres.addListener((ListChangeListener<Llibre>) canvi -> {
+            versioLlista++;
+            if (aplicant) {
+                return;
+            }
+            boolean afegits = false;
+            while (canvi.next()) {
+                if (canvi.wasPermutated()) {
+                    continue;
+                }
+                if (canvi.getFrom() == 0 && canvi.getTo() == llibres.size() && canvi.getRemovedSize() > 0) {
+                    // Catàleg buidat o substituït sencer: les claus guardades ja no serveixen
+                    buidarClaus();
+                }
+                // Les claus dels llibres trets o substituïts ja no serveixen
+                canvi.getRemoved().forEach(llibre -> claus.remove(llibre.getId()));
+                for (Llibre llibre : canvi.getAddedSubList()) {
+                    canviats.add(llibre.getId());
+                    afegits = true;
+                }
+            }
+            // Treure files no desordena les altres
+            if (afegits && taula != null && !taula.getSortOrder().isEmpty()) {
+                reordenacio.playFromStart();
+            }
+        });
+    }
+
+    /**
+     * Fa que la taula s'ordeni amb aquesta classe en lloc de la política per defecte.
+     *
+     * @param taula    Taula de llibres.
+     * @param criteris Criteri de cada columna ordenable.
+     */
+    public void vincular(TableView<Llibre> taula, Map<TableColumn<Llibre, ?>, Criteri> criteris) {
+        this.taula = taula;
+        this.criteris = criteris;
+        taula.getColumns().forEach(columna -> columna.setSortable(criteris.containsKey(columna)));
+        taula.setSortPolicy(t -> {
+            ordenar();
+            return true;
+        });
+    }
+
+    /**
+     * Ordena la llista segons l'ordre actual de la taula. S'ha de cridar des del fil de JavaFX.
+     */
+    public void ordenar() {
+        reordenacio.stop();
+        canviats.clear();
+        if (taula == null || taula.getSortOrder().isEmpty()) {
+            return;
+        }
+        Comparator<Claus> comparador = comparador(taula.getSortOrder());
+        if (comparador == null) {
+            return;
+        }
+
+        // Instantània de la llista al fil de JavaFX. Si la llista és compacta, les files són vistes que no
+        // es poden llegir des d'un altre fil: per a les que no tenen claus se'n fa una còpia.
+        int versio = versioLlista;
+        int generacioOrdenacio = ++generacio;
+        int mida = llibres.size();
+        Llibre[] files = new Llibre[mida];
+        Llibre[] dades = new Llibre[mida];
+        Claus[] calculades = new Claus[mida];
+        CatalegCompacte cataleg = llibres instanceof LlistaLlibresCompacta compacta ? compacta.getCataleg() : null;
+        for (int i = 0; i < mida; i++) {
+            Llibre fila = llibres.get(i);
+            files[i] = fila;
+            Claus existents = claus.get(fila.getId());
+            if (existents != null && existents.font().equals(fila)) {
+                calculades[i] = existents;
+            } else {
+                int casella = cataleg != null ? cataleg.casellaDe(fila) : -1;
+                dades[i] = casella >= 0 ? cataleg.copia(casella) : fila;
+            }
+        }
+
+        ordenacioEnCurs = true;
+        CompletableFuture.supplyAsync(() -> ordenarEnSegonPla(files, dades, calculades, comparador), EXECUTOR)
+                .thenAccept(ordenats -> Platform.runLater(() -> {
+                    if (generacioOrdenacio != generacio) {
+                        return; // S'ha demanat una altra ordenació mentrestant
+                    }
+                    ordenacioEnCurs = false;
+                    if (versio != versioLlista) {
+                        ordenar(); // La llista ha canviat; es torna a ordenar amb les claus ja calculades
+                        return;
+                    }
+                    aplicar(ordenats);
+                }))
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    Platform.runLater(() -> {
+                        if (generacioOrdenacio == generacio) {
+                            ordenacioEnCurs = false;
+                        }
+                    });
+                    return null;
+                });
+    }
+
+    /**
+     * Torna a posar a lloc les files afegides o substituïdes des de l'última ordenació. La resta de la
+     * llista ja és en ordre, així que cada fila es col·loca amb una cerca binària, i a la llista només es
+     * mouen aquestes files. S'ha de cridar des del fil de JavaFX.
+     */
+    private void recollocar() {
+        if (canviats.isEmpty() || ordenacioEnCurs) {
+            return; // L'ordenació en curs ja tornarà a ordenar amb els canvis
+        }
+        Comparator<Claus> comparador = taula != null && !taula.getSortOrder().isEmpty()
+                ? comparador(taula.getSortOrder()) : null;
+        if (comparador == null) {
+            canviats.clear();
+            return;
+        }
+        int mida = llibres.size();
+        if (canviats.size() > Math.max(MAX_RECOLLOCACIONS, mida / 16)) {
+            ordenar();
+            return;
+        }
+
+        // La llista sense les files canviades és en ordre; s'hi insereixen una a una
+        List<Llibre> resta = new ArrayList<>(mida);
+        List<Llibre> moguts = new ArrayList<>();
+        List<Integer> posicionsAnteriors = new ArrayList<>();
+        for (int i = 0; i < mida; i++) {
+            Llibre fila = llibres.get(i);
+            if (canviats.contains(fila.getId())) {
+                moguts.add(fila);
+                posicionsAnteriors.add(i);
+            } else {
+                resta.add(fila);
+            }
+        }
+        canviats.clear();
+        for (Llibre fila : moguts) {
+            Claus clau = clausFx(fila);
+            int baix = 0;
+            int alt = resta.size();
+            while (baix < alt) {
+                int mig = (baix + alt) >>> 1;
+                if (comparador.compare(clausFx(resta.get(mig)), clau) <= 0) {
+                    baix = mig + 1;
+                } else {
+                    alt = mig;
+                }
+            }
+            resta.add(baix, fila);
+        }
+
+        Llibre seleccionat = taula.getSelectionModel().getSelectedItem();
+        aplicant = true;
+        try {
+            if (llibres instanceof LlistaLlibresCompacta) {
+                // Les files són vistes: treure-les alliberaria les caselles. Amb les mateixes vistes en un
+                // altre ordre, setAll només en canvia l'ordre (permutació)
+                llibres.setAll(resta);
+            } else {
+                for (int i = posicionsAnteriors.size() - 1; i >= 0; i--) {
+                    llibres.remove((int) posicionsAnteriors.get(i));
+                }
+                Map<Llibre, Boolean> mogutsPerIdentitat = new IdentityHashMap<>();
+                moguts.forEach(fila -> mogutsPerIdentitat.put(fila, Boolean.TRUE));
+                for (int i = 0; i < resta.size(); i++) {
+                    if (mogutsPerIdentitat.containsKey(resta.get(i))) {
+                        llibres.add(i, resta.get(i));
+                    }
+                }
+            }
+        } finally {
+            aplicant = false;
+        }
+        if (seleccionat != null) {
+            taula.getSelectionModel().select(seleccionat);
+        }
+    }
+
+    // Claus d'una fila calculades al fil de JavaFX (les vistes compactes només es poden llegir des d'aquí)
+    private Claus clausFx(Llibre fila) {
+        Claus existents = claus.get(fila.getId());
+        if (existents != null && existents.font().equals(fila)) {
+            return existents;
+        }
+        if (collatorFx == null) {
+            collatorFx = collator();
+        }
+        Claus calculades = calcular(fila, fila, collatorFx);
+        claus.put(fila.getId(), calculades);
+        return calculades;
+    }
+
+    private void buidarClaus() {
+        claus.clear();
+        clausAutors.clear();
+        clausGeneres.clear();
+    }
+
+    private List<Llibre> ordenarEnSegonPla(Llibre[] files, Llibre[] dades, Claus[] calculades, Comparator<Claus> comparador) {
+        Collator collator = collator();
+        for (int i = 0; i < files.length; i++) {
+            if (calculades[i] == null) {
+                calculades[i] = calcular(files[i], dades[i], collator);
+                claus.put(dades[i].getId(), calculades[i]);
+            }
+        }
+        Integer[] ordre = new Integer[files.length];
+        for (int i = 0; i < ordre.length; i++) {
+            ordre[i] = i;
+        }
+        Arrays.sort(ordre, (a, b) -> comparador.compare(calculades[a], calculades[b]));
+        List<Llibre> ordenats = new ArrayList<>(files.length);
+        for (int posicio : ordre) {
+            ordenats.add(files[posicio]);
+        }
+        return ordenats;
+    }
+
+    // Aplica el nou ordre mantenint la selecció de la taula
+    private void aplicar(List<Llibre> ordenats) {
+        Llibre seleccionat = taula.getSelectionModel().getSelectedItem();
+        aplicant = true;
+        try {
+            llibres.setAll(ordenats);
+        } finally {
+            aplicant = false;
+        }
+        if (seleccionat != null) {
+            taula.getSelectionModel().select(seleccionat);
+        }
+    }
+
+    //=====================================================
+    //                 CLAUS I COMPARADORS
+    //=====================================================
+    private Claus calcular(Llibre fila, Llibre dades, Collator collator) {
+        Autor autor = dades.getAuthor();
+        Genere genere = dades.getGenre();
+        CollationKey clauAutor = autor != null
+                ? clausAutors.computeIfAbsent(autor, a -> collator.getCollationKey(dades.getAuthorName()))
+                : collator.getCollationKey(dades.getAuthorName());
+        CollationKey clauGenere = genere != null
+                ? clausGeneres.computeIfAbsent(genere, g -> collator.getCollationKey(dades.getGenreName()))
+                : collator.getCollationKey(dades.getGenreName());
+        return new Claus(fila,
+                collator.getCollationKey(dades.getTitle() != null ? dades.getTitle() : ""),
+                clauAutor, clauGenere,
+                diaPublicacio(dades.getPublished_date()),
+                dades.isAvailable(),
+                dades.getIsbn() != null ? dades.getIsbn() : "");
+    }
+
+    // Dia de publicació per ordenar: la data ISO, o l'any si només hi ha l'any; si no, al final
+    private static long diaPublicacio(String data) {
+        if (data == null || data.length() < 4) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            if (data.length() >= 10) {
+                return LocalDate.parse(data.substring(0, 10)).toEpochDay();
+            }
+            return LocalDate.of(Integer.parseInt(data.substring(0, 4)), 1, 1).toEpochDay();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private Comparator<Claus> comparador(List<TableColumn<Llibre, ?>> ordre) {
+        Comparator<Claus> resultat = null;
+        for (TableColumn<Llibre, ?> columna : ordre) {
+            Criteri criteri = criteris.get(columna);
+            if (criteri == null) {
+                continue;
+            }
+            Comparator<Claus> comparador = switch (criteri) {
+                case TITOL -> Comparator.comparing(Claus::titol);
+                case AUTOR -> Comparator.comparing(Claus::autor);
+                case GENERE -> Comparator.comparing(Claus::genere);
+                case PUBLICACIO -> Comparator.comparingLong(Claus::publicacio);
+                case DISPONIBILITAT -> Comparator.comparing(Claus::disponible);
+                case ISBN -> Comparator.comparing(Claus::isbn);
+            };
+            if (columna.getSortType() == TableColumn.SortType.DESCENDING) {
+                comparador = comparador.reversed();
+            }
+            resultat = resultat == null ? comparador : resultat.thenComparing(comparador);
+        }
+        return resultat;
+    }
+
+    // Sense distingir majúscules, però sí accents: "Àlber" i "alber" van junts, "cámara" després de "camara"
+    private static Collator collator() {
+        Collator collator = Collator.getInstance(CATALA);
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+}
@@ -0,0 +1,205 @@
+package com.codexteam.codexlib;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.collections.ObservableList;
+
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Manté a la llista de la taula d'usuaris només una finestra de pàgines, demanades amb cursors
+ * ({@code GET /users?limit=...&q=...&after=...} o {@code &before=...}).
+ *
+ * <p>Quan la taula s'acosta a una vora es demana la pàgina del costat, i si la llista passa de
+ * {@link #MAX_PAGINES} pàgines es treu la de l'altra punta. Així la memòria no depèn del nombre de comptes
+ * ni de quant s'hagi desplaçat l'administrador: com a molt hi ha {@code MAX_PAGINES * MIDA_PAGINA} files.</p>
+ *
+ * <p>Una cerca nova cancel·la la petició en curs, i les respostes d'una cerca anterior que arribin tard es
+ * descarten. S'ha de fer servir des del fil que es passa al constructor (el de JavaFX).</p>
+ */
+public class PaginadorUsuaris {
+
+    /** Usuaris per pàgina (es pot canviar amb -Dcodexlib.usuaris.pagina). */
+    public static final int MIDA_PAGINA = Integer.getInteger("codexlib.usuaris.pagina", 100);
+
+    /** Pàgines que es mantenen a la llista (es pot canviar amb -Dcodexlib.usuaris.pagines). */
+    public static final int MAX_PAGINES = Math.max(2, Integer.getInteger("codexlib.usuaris.pagines", 5));
+
+    /**
+     * Pàgina de la llista.
+     *
+     * @param mida     Nombre de files.
+     * @param anterior Cursor per demanar la pàgina d'abans, o null si és la primera.
+     * @param seguent  Cursor per demanar la pàgina de després, o null si és l'última.
+     */
+    private record Pagina(int mida, String anterior, String seguent) {
+    }
+
+    private enum Lloc { NOVA, DAVANT, DARRERE }
+
+    private final ObservableList<Usuari> files;
+    private final Executor fil;
+    private final Deque<Pagina> pagines = new ArrayDeque<>();
+    private final ReadOnlyBooleanWrapper carregant = new ReadOnlyBooleanWrapper();
+    private String cerca = "";
+    private int generacio;
+    private CompletableFuture<?> enCurs;
+
+    /**
+     * @param files Llista que mostra la taula.
+     * @param fil   Fil on s'apliquen les respostes (per exemple {@code Platform::runLater}).
+     */
+    public PaginadorUsuaris(ObservableList<Usuari> files, Executor fil) {
+        this.files = files;
+        this.fil = fil;
+    }
+
+    /** @return Cert mentre s'espera una pàgina. */
+    public ReadOnlyBooleanProperty carregantProperty() {
+        return carregant.getReadOnlyProperty();
+    }
+
+    /**
+     * Comença una cerca nova (o la llista completa, si el text és buit) i en demana la primera pàgina.
+     * La petició anterior, si n'hi ha, es cancel·la.
+     *
+     * @param text Text que ha escrit l'administrador.
+     * @return Futur que s'acaba quan la pàgina és a la llista. Es cancel·la si una altra cerca el substitueix.
+     */
+    public CompletableFuture<Integer> cercar(String text) {
+        cancelar();
+        cerca = text == null ? "" : text.trim();
+        return demanar(Lloc.NOVA, null);
+    }
+
+    /**
+     * Demana la pàgina que va després de l'última de la llista.
+     *
+     * @return Futur amb el desplaçament dels índexs de les files que ja hi eren (negatiu si se n'han tret del
+     *         principi), o null si no n'hi ha més o ja s'està carregant una pàgina.
+     */
+    public CompletableFuture<Integer> carregarSeguent() {
+        if (enCurs != null || pagines.isEmpty() || pagines.peekLast().seguent() == null) {
+            return null;
+        }
+        return demanar(Lloc.DARRERE, "&after=" + codificar(pagines.peekLast().seguent()));
+    }
+
+    /**
+     * Demana la pàgina que va abans de la primera de la llista.
+     *
+     * @return Futur amb el desplaçament dels índexs de les files que ja hi eren (les noves s'afegeixen al
+     *         principi), o null si no n'hi ha més o ja s'està carregant una pàgina.
+     */
+    public CompletableFuture<Integer> carregarAnterior() {
+        if (enCurs != null || pagines.isEmpty() || pagines.peekFirst().anterior() == null) {
+            return null;
+        }
+        return demanar(Lloc.DAVANT, "&before=" + codificar(pagines.peekFirst().anterior()));
+    }
+
+    /**
+     * Cancel·la la petició en curs i buida la llista (en tancar la sessió).
+     */
+    public void aturar() {
+        cancelar();
+        pagines.clear();
+        files.clear();
+    }
+
+    //=====================================================
+    //                    PETICIONS
+    //=====================================================
+    private CompletableFuture<Integer> demanar(Lloc lloc, String cursor) {
+        int generacioPeticio = generacio;
+        String ruta = "/users?limit=" + MIDA_PAGINA
+                + (cerca.isEmpty() ? "" : "&q=" + codificar(cerca))
+                + (cursor != null ? cursor : "");
+        CompletableFuture<HttpResponse<CodecJson.PaginaUsuaris>> peticio = ClientApi.enviar(ClientApi.peticio(ruta).GET(),
+                CodecJson.cos(CodecJson.LECTOR_PAGINA_USUARIS, "usuaris"));
+        enCurs = peticio;
+        carregant.set(true);
+
+        CompletableFuture<Integer> aplicada = new CompletableFuture<>();
+        peticio.whenCompleteAsync((response, error) -> {
+            if (generacioPeticio != generacio) {
+                aplicada.cancel(false); // Resposta d'una cerca que ja no es mostra
+                return;
+            }
+            enCurs = null;
+            carregant.set(false);
+            if (error != null) {
+                aplicada.completeExceptionally(error);
+            } else if (response.statusCode() != 200 || response.body() == null) {
+                aplicada.completeExceptionally(new IllegalStateException("Resposta inesperada del servidor: " + response.statusCode()));
+            } else {
+                aplicada.complete(aplicar(lloc, response.body()));
+            }
+        }, fil);
+        return aplicada;
+    }
+
+    private void cancelar() {
+        generacio++;
+        if (enCurs != null) {
+            enCurs.cancel(true);
+            enCurs = null;
+        }
+        carregant.set(false);
+    }
+
+    // Afegeix la pàgina a la llista i treu la de l'altra punta si en sobren
+    private int aplicar(Lloc lloc, CodecJson.PaginaUsuaris pagina) {
+        List<Usuari> usuaris = pagina.data() != null ? pagina.data() : List.of();
+        Pagina nova = new Pagina(usuaris.size(), pagina.prev_cursor(), pagina.next_cursor());
+        switch (lloc) {
+            case NOVA -> {
+                pagines.clear();
+                pagines.add(nova);
+                files.setAll(usuaris);
+                return 0;
+            }
+            case DARRERE -> {
+                if (usuaris.isEmpty()) {
+                    Pagina ultima = pagines.removeLast();
+                    pagines.addLast(new Pagina(ultima.mida(), ultima.anterior(), null));
+                    return 0;
+                }
+                pagines.addLast(nova);
+                files.addAll(usuaris);
+                if (pagines.size() > MAX_PAGINES) {
+                    int treure = pagines.removeFirst().mida();
+                    files.remove(0, treure);
+                    return -treure;
+                }
+                return 0;
+            }
+            case DAVANT -> {
+                if (usuaris.isEmpty()) {
+                    Pagina primera = pagines.removeFirst();
+                    pagines.addFirst(new Pagina(primera.mida(), null, primera.seguent()));
+                    return 0;
+                }
+                pagines.addFirst(nova);
+                files.addAll(0, usuaris);
+                if (pagines.size() > MAX_PAGINES) {
+                    int treure = pagines.removeLast().mida();
+                    files.remove(files.size() - treure, files.size());
+                }
+                return usuaris.size();
+            }
+        }
+        return 0;
+    }
+
+    private static String codificar(String valor) {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+    }
+}
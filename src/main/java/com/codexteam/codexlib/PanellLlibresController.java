@@ -0,0 +1,342 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.layout.GridPane;
+import javafx.util.StringConverter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Controlador del panell de llibres del panell d'administració.
+ * El panell es carrega la primera vegada que es mostra (o quan el punter passa pel botó de Llibres),
+ * i és llavors quan es comença a carregar el catàleg.
+ * També mostra l'estat de les escriptures pendents ({@link CuaEscriptures}) i n'avisa dels conflictes.
+ * Les edicions i els esborrats de diversos llibres alhora es veuen de seguida a la taula i s'envien
+ * en un sol lot ({@link ConjuntCanvis}).
+ */
+public class PanellLlibresController {
+
+    //=====================================================
+    //            ELEMENTS DE LA INTERFÍCIE
+    //=====================================================
+
+    // COLUMNES DE LA TAULA DE LLIBRES
+    @FXML private TableView<Llibre> taulaLlibres;
+    @FXML private TableColumn<Llibre, String> colTitol;
+    @FXML private TableColumn<Llibre, String> colAutor;
+    @FXML private TableColumn<Llibre, String> colGenere;
+    @FXML private TableColumn<Llibre, String> colPublicacio;
+    @FXML private TableColumn<Llibre, String> colIsbn;
+    @FXML private TableColumn<Llibre, String> colDisponibilitat;
+    @FXML private ProgressIndicator indicadorCarrega;
+    @FXML private TextField campCercaLlibres;
+    @FXML private Label etiquetaEscriptures;
+
+    // BOTONS
+    @FXML private Button inserirNouLlibreButton; // Cercar llibre per ISBN
+    @FXML private Button editarLlibreButton;
+    @FXML private Button eliminarLlibreButton;
+
+    // DADES DEL CATÀLEG
+    // Amb -Dcodexlib.cataleg.compacte=true els llibres es guarden per columnes (per a catàlegs molt grans)
+    private final ObservableList<Llibre> llibres = LlistaLlibresCompacta.ACTIVADA
+            ? new LlistaLlibresCompacta() : FXCollections.observableArrayList();
+    private final CarregadorLlibres carregadorLlibres = new CarregadorLlibres(llibres);
+    // L'índex s'ha de crear abans del filtre perquè s'actualitzi primer
+    private final IndexCercaLlibres indexCerca = new IndexCercaLlibres(llibres);
+    private final FilteredList<Llibre> llibresFiltrats = new FilteredList<>(llibres);
+    private final OrdenacioLlibres ordenacioLlibres = new OrdenacioLlibres(llibres);
+    // Préstecs, devolucions i altes que envia el servidor, aplicats a la taula sense recarregar-la
+    // En recuperar la connexió també s'envien les escriptures pendents
+    private final SubscripcioCanvis subscripcioCanvis = new SubscripcioCanvis(llibres,
+            carregadorLlibres::aplicarCanvisEnViu, () -> {
+                carregadorLlibres.sincronitzar();
+                CuaEscriptures.reprendre();
+            });
+
+    // ESCRIPTURES PENDENTS
+    private final Consumer<CuaEscriptures.Resultat> oientEscriptures = resultat -> Platform.runLater(() -> rebreResultat(resultat));
+    private final Runnable oientEstatEscriptures = () -> Platform.runLater(this::mostrarEstatEscriptures);
+    private final List<CuaEscriptures.Resultat> descartats = new ArrayList<>();
+
+    // EDICIONS DES DE LA TAULA
+    private static final String NO_CANVIAR = "(no canviar)";
+    private final ConjuntCanvis conjuntCanvis = new ConjuntCanvis(llibres, carregadorLlibres::recordarVersioServidor);
+
+    //=====================================================
+    //             INICIALITZAR ELS COMPONENTS
+    //=====================================================
+    /**
+     * Configura la taula i comença a carregar el catàleg.
+     */
+    @FXML
+    public void initialize() {
+
+        // Mostrar finestra per a cercar llibre per ISBN
+        inserirNouLlibreButton.setOnAction(event -> {
+            try {
+                CacheVistes.mostrarFinestra("/com/codexteam/codexlib/fxml/isbnView.fxml", "Cercar llibre per ISBN",
+                        "/com/codexteam/codexlib/images/isbn.png");
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        // CARREGAR LLISTAT DE LLIBRES
+        colTitol.setCellValueFactory(new PropertyValueFactory<>("title"));
+        colAutor.setCellValueFactory(new PropertyValueFactory<>("authorName"));
+        colGenere.setCellValueFactory(new PropertyValueFactory<>("genreName"));
+        colPublicacio.setCellValueFactory(new PropertyValueFactory<>("published_date"));
+        colIsbn.setCellValueFactory(new PropertyValueFactory<>("isbn"));
+        colDisponibilitat.setCellValueFactory(cellData -> {
+            boolean disponible = cellData.getValue().isAvailable();
+            return new SimpleStringProperty(disponible ? "Sí" : "No");
+        });
+        taulaLlibres.setItems(llibresFiltrats);
+
+        // Editar i esborrar els llibres seleccionats (se'n poden seleccionar molts)
+        taulaLlibres.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        editarLlibreButton.disableProperty().bind(Bindings.isEmpty(taulaLlibres.getSelectionModel().getSelectedItems()));
+        eliminarLlibreButton.disableProperty().bind(Bindings.isEmpty(taulaLlibres.getSelectionModel().getSelectedItems()));
+        editarLlibreButton.setOnAction(event -> editarSeleccionats());
+        eliminarLlibreButton.setOnAction(event -> esborrarSeleccionats());
+
+        // Ordenació en segon pla amb l'ordre alfabètic català (la taula no fa servir SortedList)
+        ordenacioLlibres.vincular(taulaLlibres, Map.of(
+                colTitol, OrdenacioLlibres.Criteri.TITOL,
+                colAutor, OrdenacioLlibres.Criteri.AUTOR,
+                colGenere, OrdenacioLlibres.Criteri.GENERE,
+                colPublicacio, OrdenacioLlibres.Criteri.PUBLICACIO,
+                colIsbn, OrdenacioLlibres.Criteri.ISBN,
+                colDisponibilitat, OrdenacioLlibres.Criteri.DISPONIBILITAT));
+
+        // Filtrar la taula a mesura que s'escriu al cercador
+        campCercaLlibres.textProperty().addListener((obs, anterior, text) ->
+                llibresFiltrats.setPredicate(indexCerca.filtre(text)));
+
+        // Indicador visible mentre arriben pàgines i càrrega de més llibres en desplaçar la taula
+        indicadorCarrega.visibleProperty().bind(carregadorLlibres.carregantProperty());
+        carregadorLlibres.vincularDesplacament(taulaLlibres);
+
+        carregarLlibres();
+        carregadorLlibres.iniciarSincronitzacioPeriodica();
+        subscripcioCanvis.iniciar();
+
+        CuaEscriptures.escoltar(oientEscriptures);
+        CuaEscriptures.escoltarEstat(oientEstatEscriptures);
+        mostrarEstatEscriptures();
+    }
+
+    //=====================================================
+    //            OBTENIR LLISTAT DE LLIBRES
+    //=====================================================
+    /**
+     * Mostra el llistat de llibres a la taula: primer la còpia local del catàleg, si n'hi ha,
+     * que es revalida amb el servidor en segon pla; si no, el demana al servidor per pàgines.
+     */
+    private void carregarLlibres() {
+        carregadorLlibres.iniciar();
+    }
+
+    /**
+     * Atura els refrescos del catàleg i la subscripció als canvis (en tancar la sessió).
+     */
+    public void aturar() {
+        carregadorLlibres.aturar();
+        subscripcioCanvis.aturar();
+        CuaEscriptures.deixarDEscoltar(oientEscriptures);
+        CuaEscriptures.deixarDEscoltarEstat(oientEstatEscriptures);
+    }
+
+    //=====================================================
+    //               EDITAR I ESBORRAR LLIBRES
+    //=====================================================
+    /**
+     * Demana els canvis per als llibres seleccionats i els aplica tots junts.
+     */
+    private void editarSeleccionats() {
+        List<Llibre> seleccionats = new ArrayList<>(taulaLlibres.getSelectionModel().getSelectedItems());
+        if (seleccionats.isEmpty()) {
+            return;
+        }
+        demanarEdicio(seleccionats).ifPresent(editats -> {
+            conjuntCanvis.editar(editats);
+            enviarCanvis();
+        });
+    }
+
+    /**
+     * Esborra els llibres seleccionats, després de confirmar-ho.
+     */
+    private void esborrarSeleccionats() {
+        List<Llibre> seleccionats = new ArrayList<>(taulaLlibres.getSelectionModel().getSelectedItems());
+        if (seleccionats.isEmpty()) {
+            return;
+        }
+        Alert confirmacio = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmacio.setTitle("Eliminar llibres");
+        confirmacio.setHeaderText(seleccionats.size() == 1
+                ? "Segur que vols eliminar «" + seleccionats.get(0).getTitle() + "»?"
+                : "Segur que vols eliminar " + seleccionats.size() + " llibres?");
+        if (confirmacio.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return;
+        }
+        conjuntCanvis.esborrar(seleccionats);
+        enviarCanvis();
+    }
+
+    private void enviarCanvis() {
+        conjuntCanvis.enviar().exceptionally(e -> {
+            if (e.getCause() instanceof IOException || e.getCause() instanceof IllegalStateException) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText(null);
+                    alert.setContentText("No s'han pogut desar els canvis; s'han desfet.");
+                    alert.show();
+                });
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Diàleg d'edició. Amb un sol llibre es poden canviar tots els camps; amb diversos, només el gènere
+     * i la disponibilitat (per exemple, per canviar de prestatge o retirar-ne molts alhora).
+     *
+     * @return Còpies editades dels llibres que han canviat, o buit si s'ha cancel·lat.
+     */
+    private Optional<List<Llibre>> demanarEdicio(List<Llibre> seleccionats) {
+        boolean un = seleccionats.size() == 1;
+        Llibre primer = seleccionats.get(0);
+
+        TextField titol = new TextField(primer.getTitle());
+        TextField isbn = new TextField(primer.getIsbn());
+        TextField publicacio = new TextField(primer.getPublished_date());
+        ComboBox<Genere> genere = new ComboBox<>(FXCollections.observableArrayList(RegistreEntitats.generes()));
+        genere.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(Genere valor) {
+                return valor != null ? valor.getName() : NO_CANVIAR;
+            }
+
+            @Override
+            public Genere fromString(String text) {
+                return null;
+            }
+        });
+        ChoiceBox<String> disponibilitat = new ChoiceBox<>(FXCollections.observableArrayList(NO_CANVIAR, "Sí", "No"));
+        if (un) {
+            genere.setValue(primer.getGenre());
+            disponibilitat.setValue(primer.isAvailable() ? "Sí" : "No");
+        } else {
+            genere.setPromptText(NO_CANVIAR);
+            disponibilitat.setValue(NO_CANVIAR);
+        }
+
+        GridPane graella = new GridPane();
+        graella.setHgap(10);
+        graella.setVgap(8);
+        int fila = 0;
+        if (un) {
+            graella.addRow(fila++, new Label("Títol"), titol);
+            graella.addRow(fila++, new Label("ISBN"), isbn);
+            graella.addRow(fila++, new Label("Publicació"), publicacio);
+        }
+        graella.addRow(fila++, new Label("Gènere"), genere);
+        graella.addRow(fila, new Label("Disponible"), disponibilitat);
+
+        Dialog<ButtonType> dialeg = new Dialog<>();
+        dialeg.setTitle(un ? "Editar llibre" : "Editar " + seleccionats.size() + " llibres");
+        dialeg.setHeaderText(un ? primer.getTitle() : "Els canvis s'aplicaran a tots els llibres seleccionats.");
+        dialeg.getDialogPane().setContent(graella);
+        dialeg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        if (dialeg.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return Optional.empty();
+        }
+
+        List<Llibre> editats = new ArrayList<>();
+        for (Llibre llibre : seleccionats) {
+            Llibre copia = llibre.copia();
+            if (un) {
+                copia.setTitle(titol.getText().trim());
+                copia.setIsbn(isbn.getText().trim());
+                copia.setPublished_date(publicacio.getText().trim());
+            }
+            if (genere.getValue() != null) {
+                copia.setGenre(genere.getValue());
+            }
+            if (!NO_CANVIAR.equals(disponibilitat.getValue())) {
+                copia.setAvailable("Sí".equals(disponibilitat.getValue()));
+            }
+            if (!Objects.equals(copia.getTitle(), llibre.getTitle()) || !Objects.equals(copia.getIsbn(), llibre.getIsbn())
+                    || !Objects.equals(copia.getPublished_date(), llibre.getPublished_date())
+                    || copia.getGenre() != llibre.getGenre() || copia.isAvailable() != llibre.isAvailable()) {
+                editats.add(copia);
+            }
+        }
+        return Optional.of(editats);
+    }
+
+    //=====================================================
+    //               ESCRIPTURES PENDENTS
+    //=====================================================
+    /**
+     * Mostra a la taula la versió del llibre que ha retornat el servidor (la desada o, si hi ha hagut
+     * un conflicte, la vigent). Els conflictes i els rebutjos s'avisen tots junts.
+     */
+    private void rebreResultat(CuaEscriptures.Resultat resultat) {
+        Llibre llibre = resultat.llibre();
+        Integer esborrat = resultat.estat() == CuaEscriptures.Estat.CONFIRMADA
+                && resultat.operacio().method().equals("DELETE") ? resultat.idLlibre() : null;
+        if (llibre != null) {
+            carregadorLlibres.aplicarResultatPropi(new SincronitzacioCataleg.Canvis(List.of(llibre), List.of()));
+        } else if (esborrat != null) {
+            carregadorLlibres.aplicarResultatPropi(new SincronitzacioCataleg.Canvis(List.of(), List.of(esborrat)));
+        }
+        if (resultat.estat() != CuaEscriptures.Estat.CONFIRMADA) {
+            if (descartats.isEmpty()) {
+                Platform.runLater(this::avisarDescartats);
+            }
+            descartats.add(resultat);
+        }
+    }
+
+    private void avisarDescartats() {
+        StringBuilder missatge = new StringBuilder();
+        for (CuaEscriptures.Resultat resultat : descartats) {
+            Llibre llibre = resultat.llibre();
+            String element = llibre != null ? llibre.getTitle() : resultat.operacio().path();
+            missatge.append(resultat.estat() == CuaEscriptures.Estat.CONFLICTE
+                    ? "Algú altre l'havia modificat: " : "El servidor no l'ha acceptat: ").append(element).append('\n');
+        }
+        descartats.clear();
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Canvis no desats");
+        alert.setHeaderText("Alguns canvis no s'han pogut desar.");
+        alert.setContentText(missatge.toString());
+        alert.show();
+    }
+
+    private void mostrarEstatEscriptures() {
+        int pendents = CuaEscriptures.pendents();
+        boolean senseConnexio = CuaEscriptures.senseConnexio();
+        etiquetaEscriptures.setVisible(pendents > 0 || senseConnexio);
+        String canvis = pendents == 1 ? "1 canvi pendent" : pendents + " canvis pendents";
+        etiquetaEscriptures.setText(senseConnexio ? "Sense connexió (" + canvis + ")" : canvis + " d'enviar");
+    }
+}
@@ -0,0 +1,201 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Controlador del panell de reserves del panell d'administració.
+ * Mostra les reserves d'un dia, una setmana o un mes, amb el nombre de reserves de cada dia al costat.
+ * Les dades es demanen per finestres ({@link CarregadorReserves}); dels mesos només es demana el resum,
+ * i fent doble clic sobre un dia del resum se'n veuen les reserves.
+ */
+public class PanellReservesController {
+
+    //=====================================================
+    //            ELEMENTS DE LA INTERFÍCIE
+    //=====================================================
+    @FXML private ToggleButton botoDia;
+    @FXML private ToggleButton botoSetmana;
+    @FXML private ToggleButton botoMes;
+    @FXML private Label etiquetaFinestra;
+    @FXML private Label etiquetaResum;
+    @FXML private ProgressIndicator indicadorCarrega;
+
+    // TAULA DE RESERVES
+    @FXML private TableView<Reserva> taulaReserves;
+    @FXML private TableColumn<Reserva, String> colData;
+    @FXML private TableColumn<Reserva, String> colLlibre;
+    @FXML private TableColumn<Reserva, String> colUsuari;
+    @FXML private TableColumn<Reserva, String> colEstat;
+
+    // RESUM PER DIA
+    @FXML private TableView<CodecJson.ResumDiaReserves> taulaResum;
+    @FXML private TableColumn<CodecJson.ResumDiaReserves, String> colDia;
+    @FXML private TableColumn<CodecJson.ResumDiaReserves, String> colTotalDia;
+
+    private static final Locale CATALA = Locale.forLanguageTag("ca");
+    private static final DateTimeFormatter FORMAT_DIA = DateTimeFormatter.ofPattern("EEE d MMM yyyy", CATALA);
+    private static final DateTimeFormatter FORMAT_MES = DateTimeFormatter.ofPattern("LLLL yyyy", CATALA);
+    private static final DateTimeFormatter FORMAT_DIA_RESUM = DateTimeFormatter.ofPattern("EEE d MMM", CATALA);
+
+    private final CarregadorReserves carregador = new CarregadorReserves();
+    private final ToggleGroup escales = new ToggleGroup();
+    private CarregadorReserves.Finestra finestra = CarregadorReserves.Finestra.de(CarregadorReserves.Escala.SETMANA, LocalDate.now());
+    private int generacio;
+
+    // Una reserva confirmada canvia les finestres del seu dia
+    private final Consumer<CuaEscriptures.Resultat> oientEscriptures = resultat -> {
+        if (resultat.operacio().path().startsWith("/reservations") && resultat.operacio().body() != null) {
+            try {
+                LocalDate dia = LocalDate.parse(resultat.operacio().body().path("date").asText());
+                carregador.invalidar(dia);
+                Platform.runLater(() -> {
+                    if (finestra.conte(dia)) {
+                        mostrar(finestra);
+                    }
+                });
+            } catch (DateTimeParseException ignored) {
+                // Sense dia no se sap quina finestra ha canviat
+            }
+        }
+    };
+
+    //=====================================================
+    //             INICIALITZAR ELS COMPONENTS
+    //=====================================================
+    /**
+     * Configura les taules i mostra la setmana actual.
+     */
+    @FXML
+    public void initialize() {
+        colData.setCellValueFactory(new PropertyValueFactory<>("date"));
+        colLlibre.setCellValueFactory(new PropertyValueFactory<>("book_title"));
+        colUsuari.setCellValueFactory(new PropertyValueFactory<>("username"));
+        colEstat.setCellValueFactory(new PropertyValueFactory<>("status"));
+        taulaReserves.setPlaceholder(new Label("No hi ha reserves en aquestes dates."));
+
+        colDia.setCellValueFactory(cella -> new SimpleStringProperty(
+                LocalDate.parse(cella.getValue().date()).format(FORMAT_DIA_RESUM)));
+        colTotalDia.setCellValueFactory(cella -> new SimpleStringProperty(String.valueOf(cella.getValue().count())));
+
+        // Doble clic sobre un dia del resum: veure'n les reserves
+        taulaResum.setRowFactory(taula -> {
+            TableRow<CodecJson.ResumDiaReserves> fila = new TableRow<>();
+            fila.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && !fila.isEmpty()) {
+                    // Primer la finestra: així, quan es tria el botó, l'escala ja és la del dia i no es demana res més
+                    mostrar(CarregadorReserves.Finestra.de(CarregadorReserves.Escala.DIA, LocalDate.parse(fila.getItem().date())));
+                    botoDia.setSelected(true);
+                }
+            });
+            return fila;
+        });
+
+        Map<ToggleButton, CarregadorReserves.Escala> botons = Map.of(botoDia, CarregadorReserves.Escala.DIA,
+                botoSetmana, CarregadorReserves.Escala.SETMANA, botoMes, CarregadorReserves.Escala.MES);
+        botons.keySet().forEach(boto -> boto.setToggleGroup(escales));
+        botoSetmana.setSelected(true);
+        escales.selectedToggleProperty().addListener((obs, anterior, seleccionat) -> {
+            if (seleccionat == null) {
+                anterior.setSelected(true); // Sempre n'hi ha d'haver una de triada
+            } else if (botons.get(seleccionat) != finestra.escala()) {
+                mostrar(CarregadorReserves.Finestra.de(botons.get(seleccionat), finestra.inici()));
+            }
+        });
+
+        CuaEscriptures.escoltar(oientEscriptures);
+        mostrar(finestra);
+    }
+
+    //=====================================================
+    //                   NAVEGACIÓ
+    //=====================================================
+    @FXML
+    private void anterior() {
+        mostrar(finestra.anterior());
+    }
+
+    @FXML
+    private void seguent() {
+        mostrar(finestra.seguent());
+    }
+
+    @FXML
+    private void avui() {
+        mostrar(CarregadorReserves.Finestra.de(finestra.escala(), LocalDate.now()));
+    }
+
+    /**
+     * Mostra una finestra. Si ja es té, apareix de seguida; si no, quan arriba. Després es demanen
+     * l'anterior i la següent en segon pla.
+     */
+    private void mostrar(CarregadorReserves.Finestra nova) {
+        finestra = nova;
+        int generacioPeticio = ++generacio;
+        etiquetaFinestra.setText(titol(nova));
+        taulaReserves.setDisable(!nova.ambReserves());
+        taulaReserves.setPlaceholder(new Label(nova.ambReserves()
+                ? "No hi ha reserves en aquestes dates." : "Fes doble clic sobre un dia per veure'n les reserves."));
+
+        CarregadorReserves.Contingut guardat = carregador.obtenir(nova).getNow(null);
+        if (guardat != null) {
+            omplir(guardat);
+            carregador.precarregar(nova);
+            return;
+        }
+        indicadorCarrega.setVisible(true);
+        carregador.obtenir(nova).whenComplete((contingut, error) -> Platform.runLater(() -> {
+            if (generacioPeticio != generacio) {
+                return; // Ja se'n mostra una altra
+            }
+            indicadorCarrega.setVisible(false);
+            if (error != null) {
+                error.printStackTrace();
+                taulaReserves.getItems().clear();
+                taulaResum.getItems().clear();
+                etiquetaResum.setText("No s'han pogut carregar les reserves.");
+                return;
+            }
+            omplir(contingut);
+            carregador.precarregar(nova);
+        }));
+    }
+
+    private void omplir(CarregadorReserves.Contingut contingut) {
+        taulaReserves.getItems().setAll(contingut.reserves());
+        taulaResum.getItems().setAll(contingut.resum());
+        int total = contingut.total();
+        etiquetaResum.setText(total == 1 ? "1 reserva" : total + " reserves");
+    }
+
+    private static String titol(CarregadorReserves.Finestra finestra) {
+        return switch (finestra.escala()) {
+            case DIA -> finestra.inici().format(FORMAT_DIA);
+            case SETMANA -> finestra.inici().format(FORMAT_DIA_RESUM) + " – " + finestra.fi().minusDays(1).format(FORMAT_DIA);
+            case MES -> finestra.inici().format(FORMAT_MES);
+        };
+    }
+
+    /**
+     * Deixa de rebre els resultats de les reserves (en tancar la sessió).
+     */
+    public void aturar() {
+        CuaEscriptures.deixarDEscoltar(oientEscriptures);
+    }
+}
@@ -0,0 +1,161 @@
+package com.codexteam.codexlib;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.util.Duration;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Controlador del panell d'usuaris del panell d'administració.
+ *
+ * <p>Hi pot haver centenars de milers de comptes, així que no es carreguen mai tots: la taula només té les
+ * pàgines del voltant del que es veu ({@link PaginadorUsuaris}), i en desplaçar-se es demanen les del costat
+ * i es descarten les que queden lluny. La cerca es fa al servidor, quan s'ha deixat d'escriure una estona.
+ * L'ordre és el del servidor (per nom d'usuari), perquè és el que fan servir els cursors.</p>
+ */
+public class PanellUsuarisController {
+
+    //=====================================================
+    //            ELEMENTS DE LA INTERFÍCIE
+    //=====================================================
+    @FXML private TextField campCercaUsuaris;
+    @FXML private ProgressIndicator indicadorCarrega;
+    @FXML private Label etiquetaUsuaris;
+
+    // TAULA D'USUARIS
+    @FXML private TableView<Usuari> taulaUsuaris;
+    @FXML private TableColumn<Usuari, String> colNomUsuari;
+    @FXML private TableColumn<Usuari, String> colNom;
+    @FXML private TableColumn<Usuari, String> colCorreu;
+    @FXML private TableColumn<Usuari, String> colRol;
+    @FXML private TableColumn<Usuari, String> colAlta;
+
+    /** Espera des de l'última tecla fins a enviar la cerca. */
+    private static final Duration ESPERA_CERCA = Duration.millis(300);
+
+    /** Files de marge: quan en queden menys per arribar a una vora, es demana la pàgina del costat. */
+    private static final int MARGE = Math.max(1, PaginadorUsuaris.MIDA_PAGINA / 4);
+
+    private final ObservableList<Usuari> usuaris = FXCollections.observableArrayList();
+    private final PaginadorUsuaris paginador = new PaginadorUsuaris(usuaris, Platform::runLater);
+    private final PauseTransition cerca = new PauseTransition(ESPERA_CERCA);
+    private VirtualFlow<?> flux;
+    private int primeraVisible;
+
+    //=====================================================
+    //             INICIALITZAR ELS COMPONENTS
+    //=====================================================
+    /**
+     * Configura la taula i la cerca i demana la primera pàgina d'usuaris.
+     */
+    @FXML
+    public void initialize() {
+        colNomUsuari.setCellValueFactory(new PropertyValueFactory<>("username"));
+        colNom.setCellValueFactory(new PropertyValueFactory<>("nomComplet"));
+        colCorreu.setCellValueFactory(new PropertyValueFactory<>("email"));
+        colRol.setCellValueFactory(new PropertyValueFactory<>("rol"));
+        colAlta.setCellValueFactory(cella -> {
+            String alta = cella.getValue().getCreated_at();
+            return new SimpleStringProperty(alta != null && alta.length() >= 10 ? alta.substring(0, 10) : alta);
+        });
+        taulaUsuaris.setItems(usuaris);
+        taulaUsuaris.setPlaceholder(new Label("No s'ha trobat cap usuari."));
+        indicadorCarrega.visibleProperty().bind(paginador.carregantProperty());
+
+        // La cerca surt quan fa una estona que no s'escriu
+        cerca.setOnFinished(event -> cercar());
+        campCercaUsuaris.textProperty().addListener((obs, anterior, text) -> cerca.playFromStart());
+        campCercaUsuaris.setOnAction(event -> {
+            cerca.stop();
+            cercar();
+        });
+
+        // El flux de files existeix quan la taula té l'aparença creada
+        taulaUsuaris.skinProperty().addListener((obs, anterior, aparenca) -> {
+            flux = (VirtualFlow<?>) taulaUsuaris.lookup(".virtual-flow");
+            if (flux != null) {
+                flux.positionProperty().addListener((o, a, posicio) -> comprovarVores());
+            }
+        });
+
+        cercar();
+    }
+
+    //=====================================================
+    //               CERCA I DESPLAÇAMENT
+    //=====================================================
+    private void cercar() {
+        etiquetaUsuaris.setText("");
+        paginador.cercar(campCercaUsuaris.getText()).whenComplete((desplacament, error) -> {
+            if (error == null) {
+                taulaUsuaris.scrollTo(0);
+                primeraVisible = 0;
+                // Si la primera pàgina no omple la taula, no hi haurà desplaçament que demani la següent
+                Platform.runLater(this::comprovarVores);
+            } else if (!cancellada(error)) {
+                error.printStackTrace();
+                etiquetaUsuaris.setText("No s'han pogut carregar els usuaris.");
+            }
+        });
+    }
+
+    // Demana la pàgina del costat si la part visible és a prop d'una vora de la llista
+    private void comprovarVores() {
+        IndexedCell<?> primera = flux != null ? flux.getFirstVisibleCell() : null;
+        IndexedCell<?> ultima = flux != null ? flux.getLastVisibleCell() : null;
+        if (primera == null || ultima == null) {
+            return;
+        }
+        primeraVisible = primera.getIndex();
+        if (ultima.getIndex() >= usuaris.size() - MARGE) {
+            mantenirPosicio(paginador.carregarSeguent());
+        } else if (primeraVisible <= MARGE) {
+            mantenirPosicio(paginador.carregarAnterior());
+        }
+    }
+
+    // Quan s'afegeixen o es treuen files per sobre, la taula ha de continuar mostrant les mateixes
+    private void mantenirPosicio(CompletableFuture<Integer> pagina) {
+        if (pagina == null) {
+            return;
+        }
+        pagina.whenComplete((desplacament, error) -> {
+            if (error == null) {
+                if (desplacament != 0) {
+                    taulaUsuaris.scrollTo(Math.max(0, primeraVisible + desplacament));
+                }
+            } else if (!cancellada(error)) {
+                error.printStackTrace();
+                etiquetaUsuaris.setText("No s'han pogut carregar més usuaris.");
+            }
+        });
+    }
+
+    private static boolean cancellada(Throwable error) {
+        return error instanceof CancellationException
+                || error instanceof CompletionException && error.getCause() instanceof CancellationException;
+    }
+
+    /**
+     * Cancel·la les peticions en curs i buida la taula (en tancar la sessió).
+     */
+    public void aturar() {
+        cerca.stop();
+        paginador.aturar();
+    }
+}
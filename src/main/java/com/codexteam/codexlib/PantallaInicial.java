@@ -49,7 +49,12 @@ public class PantallaInicial extends Application {
 
         // Icona de la finestra
         stage.getIcons().add(new Image(getClass().getResourceAsStream("/com/codexteam/codexlib/images/enter.png")));
+        ArrencadaRapida.mesurarPrimeraPantalla(scene);
         stage.show();
+        Telemetria.iniciar();
+
+        // Mentre l'usuari escriu les credencials, es prepara el panell que s'obrirà després
+        ArrencadaRapida.acabarEntrenament(ArrencadaRapida.precarregar());
     }
 
     /**
@@ -0,0 +1,246 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.std.DelegatingDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mapa d'identitat dels autors i gèneres del catàleg.
+ *
+ * <p>Cada llibre de la resposta de /books porta l'autor i el gènere sencers, i el descodificador
+ * en crearia una còpia per llibre. Aquí es guarda una sola instància per {@code id}, que comparteixen
+ * tots els llibres. Si arriba una versió amb un {@code updated_at} diferent, passa a ser la
+ * instància compartida (les que ja tenien els llibres no es modifiquen mai).</p>
+ *
+ * <p>Les cadenes que es repeteixen molt (dates, nacionalitats, descripcions) es canonicalitzen amb una
+ * taula de mida fixa: si una cadena igual ja hi és, es fa servir aquella. La taula no creix mai,
+ * de manera que les cadenes úniques no hi ocupen més que una casella.</p>
+ *
+ * <p>El registre s'aplica durant la descodificació amb el mòdul de Jackson de {@link #modul()}.</p>
+ */
+public class RegistreEntitats {
+
+    /** Caselles de la taula de cadenes (potència de 2). */
+    private static final int MIDA_TAULA_CADENES = 1 << 14;
+
+    // Estimació de la mida d'un objecte buit (capçalera i camps) per a l'informe de memòria
+    private static final int BYTES_AUTOR = 40;
+    private static final int BYTES_GENERE = 32;
+    private static final int BYTES_CADENA = 24 + 16;
+
+    private static final Map<Integer, Autor> AUTORS = new ConcurrentHashMap<>();
+    private static final Map<Integer, Genere> GENERES = new ConcurrentHashMap<>();
+
+    // Curses benignes: les cadenes són immutables i, com a molt, es perd una reutilització
+    private static final String[] CADENES = new String[MIDA_TAULA_CADENES];
+
+    private static final AtomicLong entitatsReutilitzades = new AtomicLong();
+    private static final AtomicLong cadenesReutilitzades = new AtomicLong();
+    private static final AtomicLong bytesEstalviats = new AtomicLong();
+
+    /**
+     * Retorna la instància compartida de l'autor amb el mateix id.
+     *
+     * @param llegit Autor acabat de llegir.
+     * @return La instància compartida (pot ser {@code llegit} mateix si és el primer o és més nou).
+     */
+    public static Autor autor(Autor llegit) {
+        if (llegit == null) {
+            return null;
+        }
+        Autor existent = AUTORS.get(llegit.getId());
+        if (existent != null && Objects.equals(existent.getUpdated_at(), llegit.getUpdated_at())) {
+            entitatsReutilitzades.incrementAndGet();
+            bytesEstalviats.addAndGet(BYTES_AUTOR + bytes(llegit.getName()) + bytes(llegit.getBirth_date())
+                    + bytes(llegit.getNationality()) + bytes(llegit.getCreated_at()) + bytes(llegit.getUpdated_at()));
+            return existent;
+        }
+        llegit.setBirth_date(canonica(llegit.getBirth_date()));
+        llegit.setNationality(canonica(llegit.getNationality()));
+        llegit.setCreated_at(canonica(llegit.getCreated_at()));
+        llegit.setUpdated_at(canonica(llegit.getUpdated_at()));
+        AUTORS.put(llegit.getId(), llegit);
+        return llegit;
+    }
+
+    /**
+     * Retorna la instància compartida del gènere amb el mateix id.
+     *
+     * @param llegit Gènere acabat de llegir.
+     * @return La instància compartida.
+     */
+    public static Genere genere(Genere llegit) {
+        if (llegit == null) {
+            return null;
+        }
+        Genere existent = GENERES.get(llegit.getId());
+        if (existent != null && Objects.equals(existent.getUpdated_at(), llegit.getUpdated_at())) {
+            entitatsReutilitzades.incrementAndGet();
+            bytesEstalviats.addAndGet(BYTES_GENERE + bytes(llegit.getName()) + bytes(llegit.getDescription())
+                    + bytes(llegit.getCreated_at()) + bytes(llegit.getUpdated_at()));
+            return existent;
+        }
+        llegit.setDescription(canonica(llegit.getDescription()));
+        llegit.setCreated_at(canonica(llegit.getCreated_at()));
+        llegit.setUpdated_at(canonica(llegit.getUpdated_at()));
+        GENERES.put(llegit.getId(), llegit);
+        return llegit;
+    }
+
+    /**
+     * Retorna els gèneres coneguts (els dels llibres descodificats), per triar-ne un en editar.
+     *
+     * @return Els gèneres, ordenats per nom.
+     */
+    public static List<Genere> generes() {
+        List<Genere> generes = new ArrayList<>(GENERES.values());
+        generes.sort(Comparator.comparing(Genere::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)));
+        return generes;
+    }
+
+    /**
+     * Canonicalitza les dates d'un llibre acabat de llegir. L'autor i el gènere ja arriben
+     * compartits del descodificador.
+     *
+     * @param llibre Llibre que encara no és a cap llista.
+     * @return El mateix llibre.
+     */
+    public static Llibre llibre(Llibre llibre) {
+        llibre.setPublished_date(canonica(llibre.getPublished_date()));
+        llibre.setCreated_at(canonica(llibre.getCreated_at()));
+        llibre.setUpdated_at(canonica(llibre.getUpdated_at()));
+        return llibre;
+    }
+
+    /**
+     * Retorna una cadena igual ja vista, si n'hi ha, o guarda aquesta per a la propera vegada.
+     *
+     * @param cadena Cadena a canonicalitzar (pot ser null).
+     * @return Una cadena igual a {@code cadena}.
+     */
+    public static String canonica(String cadena) {
+        if (cadena == null) {
+            return null;
+        }
+        int casella = (cadena.hashCode() * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(MIDA_TAULA_CADENES));
+        String existent = CADENES[casella];
+        if (cadena.equals(existent)) {
+            if (existent != cadena) {
+                cadenesReutilitzades.incrementAndGet();
+                bytesEstalviats.addAndGet(bytes(cadena));
+            }
+            return existent;
+        }
+        CADENES[casella] = cadena;
+        return cadena;
+    }
+
+    // Mida aproximada d'una cadena Latin-1 (capçalera, camps i array de bytes)
+    private static long bytes(String cadena) {
+        return cadena == null ? 0 : BYTES_CADENA + cadena.length();
+    }
+
+    /**
+     * Resumeix l'ocupació dels autors i gèneres d'una llista de llibres.
+     *
+     * @param llibres Llibres del catàleg.
+     * @return Text amb les instàncies diferents, les reutilitzades i els bytes estalviats (aproximats).
+     */
+    public static String informeMemoria(Collection<Llibre> llibres) {
+        Map<Object, Boolean> instancies = new IdentityHashMap<>();
+        for (Llibre llibre : llibres) {
+            if (llibre.getAuthor() != null) {
+                instancies.put(llibre.getAuthor(), Boolean.TRUE);
+            }
+            if (llibre.getGenre() != null) {
+                instancies.put(llibre.getGenre(), Boolean.TRUE);
+            }
+        }
+        return String.format("%d llibres, %d instàncies d'autor i gènere (registre: %d autors, %d gèneres); "
+                        + "%d entitats i %d cadenes reutilitzades, ~%d KB estalviats",
+                llibres.size(), instancies.size(), AUTORS.size(), GENERES.size(),
+                entitatsReutilitzades.get(), cadenesReutilitzades.get(), bytesEstalviats.get() / 1024);
+    }
+
+    /**
+     * Posa a zero els comptadors de l'informe de memòria. Es crida en començar a carregar el catàleg,
+     * perquè l'informe parli només del catàleg carregat (les instàncies compartides es conserven).
+     */
+    public static void reiniciarComptadors() {
+        entitatsReutilitzades.set(0);
+        cadenesReutilitzades.set(0);
+        bytesEstalviats.set(0);
+    }
+
+    //=====================================================
+    //              INTEGRACIÓ AMB JACKSON
+    //=====================================================
+    /**
+     * Mòdul de Jackson que passa pel registre cada autor, gènere i llibre que es descodifica.
+     *
+     * @return Mòdul per registrar a l'{@code ObjectMapper}.
+     */
+    public static Module modul() {
+        SimpleModule modul = new SimpleModule("codexlib-registre-entitats");
+        modul.setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription descripcio,
+                                                          JsonDeserializer<?> deserialitzador) {
+                Class<?> classe = descripcio.getBeanClass();
+                if (classe == Autor.class) {
+                    return new DeserialitzadorCompartit(deserialitzador, valor -> autor((Autor) valor));
+                }
+                if (classe == Genere.class) {
+                    return new DeserialitzadorCompartit(deserialitzador, valor -> genere((Genere) valor));
+                }
+                if (classe == Llibre.class) {
+                    return new DeserialitzadorCompartit(deserialitzador, valor -> llibre((Llibre) valor));
+                }
+                return deserialitzador;
+            }
+        });
+        return modul;
+    }
+
+    // Descodifica amb el deserialitzador original de Jackson i passa el resultat pel registre
+    private static class DeserialitzadorCompartit extends DelegatingDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final UnaryOperator<Object> compartir;
+
+        DeserialitzadorCompartit(JsonDeserializer<?> original, UnaryOperator<Object> compartir) {
+            super(original);
+            this.compartir = compartir;
+        }
+
+        @Override
+        protected JsonDeserializer<?> newDelegatingInstance(JsonDeserializer<?> original) {
+            return new DeserialitzadorCompartit(original, compartir);
+        }
+
+        @Override
+        public Object deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            Object valor = super.deserialize(parser, context);
+            return valor != null ? compartir.apply(valor) : null;
+        }
+    }
+}
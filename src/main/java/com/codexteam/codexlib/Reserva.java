@@ -0,0 +1,40 @@
+package com.codexteam.codexlib;
+
+/**
+ * Representa la reserva d'un llibre per part d'un usuari per a un dia concret.
+ */
+public class Reserva {
+    private int id;
+    private int book_id;
+    private String book_title;
+    private String username;
+    private String date;
+    private String status;
+    private String created_at;
+    private String updated_at;
+
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public int getBook_id() { return book_id; }
+    public void setBook_id(int book_id) { this.book_id = book_id; }
+
+    public String getBook_title() { return book_title; }
+    public void setBook_title(String book_title) { this.book_title = book_title; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    /** Dia de la reserva, en format ISO-8601 (per exemple "2024-05-02"). */
+    public String getDate() { return date; }
+    public void setDate(String date) { this.date = date; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getCreated_at() { return created_at; }
+    public void setCreated_at(String created_at) { this.created_at = created_at; }
+
+    public String getUpdated_at() { return updated_at; }
+    public void setUpdated_at(String updated_at) { this.updated_at = updated_at; }
+}
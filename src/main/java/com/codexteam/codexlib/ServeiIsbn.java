@@ -0,0 +1,300 @@
+package com.codexteam.codexlib;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cerca de llibres per ISBN a Open Library, asíncrona i amb memòria cau.
+ * Els resultats (també els ISBN no trobats) es guarden en una memòria cau LRU en memòria
+ * i en una carpeta del disc, de manera que repetir una cerca no torna a sortir a la xarxa.
+ *
+ * <p>L'adreça del servei es pot canviar amb -Dcodexlib.openlibrary per fer servir un servidor local de proves.</p>
+ */
+public class ServeiIsbn {
+
+    /** Adreça base del servei (per defecte, Open Library). */
+    public static final String URL_OPEN_LIBRARY = System.getProperty("codexlib.openlibrary", "https://openlibrary.org");
+
+    /** Temps màxim d'espera de la resposta d'Open Library. */
+    private static final Duration TEMPS_CERCA = Duration.ofSeconds(10);
+
+    /** Nombre màxim d'ISBN a la memòria cau en memòria. */
+    private static final int MAX_ENTRADES = 500;
+
+    /** Els ISBN no trobats es tornen a consultar passat aquest temps, per si Open Library els ha afegit. */
+    private static final Duration VIGENCIA_NO_TROBATS = Duration.ofDays(7);
+
+    private static final String CARPETA_CACHE = "isbn";
+
+    /** Contingut que es desa al disc per a un ISBN no trobat. */
+    private static final byte[] NO_TROBAT = "{}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Resultat guardat en memòria.
+     *
+     * @param fitxa  Fitxa del llibre, o buida si no s'ha trobat.
+     * @param caduca Moment a partir del qual un "no trobat" es torna a consultar (null si s'ha trobat).
+     */
+    private record Entrada(Optional<FitxaIsbn> fitxa, Instant caduca) {
+    }
+
+    // Memòria cau LRU: l'ordre d'accés fa que la primera entrada sigui la menys usada
+    private static final Map<String, Entrada> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+            return size() > MAX_ENTRADES;
+        }
+    };
+
+    /**
+     * Cerca un llibre per ISBN sense bloquejar el fil que la crida.
+     * Cancel·lar el futur retornat també cancel·la la petició HTTP en curs.
+     *
+     * @param isbn ISBN introduït per l'usuari (s'hi ignoren guions i espais).
+     * @return Futur amb la fitxa del llibre, o buit si no s'ha trobat.
+     */
+    public static CompletableFuture<Optional<FitxaIsbn>> cercar(String isbn) {
+        String clau = normalitzar(isbn);
+        Optional<FitxaIsbn> enMemoria = llegirDeMemoria(clau);
+        if (enMemoria != null) {
+            Telemetria.cache("isbn", true);
+            return CompletableFuture.completedFuture(enMemoria);
+        }
+
+        CompletableFuture<Optional<FitxaIsbn>> resultat = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> llegirDelDisc(clau), ClientApi.EXECUTOR_LECTURA)
+                .thenAccept(delDisc -> {
+                    // Encert si és a memòria o al disc; errada només si s'ha de sortir a la xarxa
+                    Telemetria.cache("isbn", delDisc != null);
+                    if (delDisc != null) {
+                        guardarDelDisc(clau, delDisc);
+                        resultat.complete(delDisc);
+                    } else if (!resultat.isCancelled()) {
+                        demanar(clau, resultat);
+                    }
+                });
+        return resultat;
+    }
+
+    private static void demanar(String isbn, CompletableFuture<Optional<FitxaIsbn>> resultat) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(URL_OPEN_LIBRARY
+                        + "/api/books?bibkeys=ISBN:" + isbn + "&format=json&jscmd=data"))
+                .timeout(TEMPS_CERCA)
+                .GET()
+                .build();
+
+        CompletableFuture<HttpResponse<Map<String, CodecJson.LlibreOpenLibrary>>> peticio =
+                ClientApi.enviarMesurant(request, CodecJson.cos(CodecJson.LECTOR_OPEN_LIBRARY, "openlibrary"));
+        resultat.whenComplete((r, e) -> {
+            if (resultat.isCancelled()) {
+                peticio.cancel(true);
+            }
+        });
+
+        peticio.thenAccept(response -> {
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Open Library ha respost " + response.statusCode());
+            }
+            resultat.complete(desar(isbn, llibreDe(response.body(), isbn)));
+        }).exceptionally(e -> {
+            resultat.completeExceptionally(e);
+            return null;
+        });
+    }
+
+    /**
+     * Consulta diversos ISBN amb una sola petició (Open Library accepta diverses {@code bibkeys}
+     * separades per comes). Bloqueja el fil que la crida; està pensada per a la importació massiva.
+     * Els resultats es guarden a la memòria cau com els de {@link #cercar(String)}.
+     *
+     * @param isbns ISBN ja normalitzats.
+     * @return Resultat de cada ISBN (buit si no s'ha trobat).
+     * @throws IOException          Si la petició falla o el servidor no respon 200.
+     * @throws InterruptedException Si s'interromp el fil mentre s'espera la resposta.
+     */
+    public static Map<String, Optional<FitxaIsbn>> consultarLot(List<String> isbns) throws IOException, InterruptedException {
+        StringBuilder bibkeys = new StringBuilder();
+        for (String isbn : isbns) {
+            if (bibkeys.length() > 0) {
+                bibkeys.append(',');
+            }
+            bibkeys.append("ISBN:").append(isbn);
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(URL_OPEN_LIBRARY
+                        + "/api/books?bibkeys=" + bibkeys + "&format=json&jscmd=data"))
+                .timeout(TEMPS_CERCA)
+                .GET()
+                .build();
+
+        long enviament = System.nanoTime();
+        HttpResponse<Map<String, CodecJson.LlibreOpenLibrary>> response;
+        try {
+            response = ClientApi.getClient().send(request, CodecJson.cos(CodecJson.LECTOR_OPEN_LIBRARY, "openlibrary"));
+        } catch (IOException | InterruptedException e) {
+            Telemetria.peticio(request, null, e, enviament);
+            throw e;
+        }
+        Telemetria.peticio(request, response, null, enviament);
+        if (response.statusCode() != 200) {
+            throw new IOException("Open Library ha respost " + response.statusCode());
+        }
+
+        Map<String, Optional<FitxaIsbn>> resultats = new HashMap<>();
+        for (String isbn : isbns) {
+            resultats.put(isbn, desar(isbn, llibreDe(response.body(), isbn)));
+        }
+        return resultats;
+    }
+
+    // El llibre de la resposta per a un ISBN (Open Library no inclou els que no troba)
+    private static CodecJson.LlibreOpenLibrary llibreDe(Map<String, CodecJson.LlibreOpenLibrary> resposta, String isbn) {
+        return resposta != null ? resposta.get("ISBN:" + isbn) : null;
+    }
+
+    // Guarda el resultat a la memòria cau i al disc, també si no s'ha trobat
+    private static Optional<FitxaIsbn> desar(String isbn, CodecJson.LlibreOpenLibrary llibre) {
+        Optional<FitxaIsbn> fitxa = Optional.ofNullable(llibre).map(l -> interpretar(isbn, l));
+        guardarEnMemoria(isbn, fitxa);
+        desarAlDisc(isbn, llibre != null ? CodecJson.bytes(llibre) : NO_TROBAT);
+        return fitxa;
+    }
+
+    /**
+     * Busca un ISBN només a la memòria cau (en memòria i al disc), sense sortir a la xarxa.
+     *
+     * @param isbn ISBN normalitzat.
+     * @return El resultat desat, o null si no n'hi ha cap.
+     */
+    public static Optional<FitxaIsbn> consultarCache(String isbn) {
+        Optional<FitxaIsbn> fitxa = llegirDeMemoria(isbn);
+        if (fitxa == null) {
+            fitxa = llegirDelDisc(isbn);
+            if (fitxa != null) {
+                guardarDelDisc(isbn, fitxa);
+            }
+        }
+        return fitxa;
+    }
+
+    /**
+     * Extreu les dades d'un llibre de l'objecte que retorna Open Library per a un ISBN.
+     *
+     * @param isbn   ISBN consultat.
+     * @param llibre Llibre descodificat de la resposta.
+     * @return La fitxa amb valors per defecte als camps que falten.
+     */
+    static FitxaIsbn interpretar(String isbn, CodecJson.LlibreOpenLibrary llibre) {
+        String titol = llibre.title() != null ? llibre.title() : "Títol desconegut";
+        String autor = llibre.authors() != null && !llibre.authors().isEmpty() && llibre.authors().get(0).name() != null
+                ? llibre.authors().get(0).name() : "Autor desconegut";
+        String publicacio = llibre.publish_date() != null ? llibre.publish_date() : "Data no disponible";
+        String portada = llibre.cover() != null && llibre.cover().medium() != null ? llibre.cover().medium() : "Sense portada";
+        return new FitxaIsbn(isbn, titol, autor, publicacio, portada);
+    }
+
+    /**
+     * Deixa només les xifres i la X final d'un ISBN.
+     *
+     * @param isbn ISBN tal com l'ha escrit l'usuari.
+     * @return ISBN normalitzat.
+     */
+    public static String normalitzar(String isbn) {
+        return isbn.replaceAll("[^0-9Xx]", "").toUpperCase();
+    }
+
+    //=====================================================
+    //                  MEMÒRIA CAU
+    //=====================================================
+    static void guardarEnMemoria(String isbn, Optional<FitxaIsbn> fitxa) {
+        guardarEnMemoria(isbn, fitxa, fitxa.isEmpty() ? Instant.now().plus(VIGENCIA_NO_TROBATS) : null);
+    }
+
+    private static void guardarEnMemoria(String isbn, Optional<FitxaIsbn> fitxa, Instant caduca) {
+        synchronized (CACHE) {
+            CACHE.put(isbn, new Entrada(fitxa, caduca));
+        }
+    }
+
+    // Un "no trobat" llegit del disc caduca quan caducaria el fitxer, no a partir d'ara
+    private static void guardarDelDisc(String isbn, Optional<FitxaIsbn> fitxa) {
+        if (fitxa.isPresent()) {
+            guardarEnMemoria(isbn, fitxa, null);
+            return;
+        }
+        Instant caduca;
+        try {
+            caduca = Files.getLastModifiedTime(DadesLocals.fitxer(CARPETA_CACHE + "/" + isbn + ".json")).toInstant()
+                    .plus(VIGENCIA_NO_TROBATS);
+        } catch (IOException e) {
+            caduca = Instant.now().plus(VIGENCIA_NO_TROBATS);
+        }
+        guardarEnMemoria(isbn, fitxa, caduca);
+    }
+
+    /**
+     * @return La fitxa guardada en memòria, un Optional buit si l'ISBN consta com a no trobat,
+     * o null si no hi és (o el "no trobat" ha caducat, com al disc).
+     */
+    private static Optional<FitxaIsbn> llegirDeMemoria(String isbn) {
+        synchronized (CACHE) {
+            Entrada entrada = CACHE.get(isbn);
+            if (entrada == null) {
+                return null;
+            }
+            if (entrada.caduca() != null && !entrada.caduca().isAfter(Instant.now())) {
+                CACHE.remove(isbn);
+                return null;
+            }
+            return entrada.fitxa();
+        }
+    }
+
+    /**
+     * @return La fitxa desada al disc, un Optional buit si l'ISBN consta com a no trobat,
+     * o null si no hi ha res (o el "no trobat" ha caducat).
+     */
+    static Optional<FitxaIsbn> llegirDelDisc(String isbn) {
+        try {
+            Path fitxer = DadesLocals.fitxer(CARPETA_CACHE + "/" + isbn + ".json");
+            byte[] contingut = Files.readAllBytes(fitxer);
+            if (Arrays.equals(NO_TROBAT, contingut)) {
+                Instant modificat = Files.getLastModifiedTime(fitxer).toInstant();
+                return modificat.plus(VIGENCIA_NO_TROBATS).isAfter(Instant.now()) ? Optional.empty() : null;
+            }
+            // També llegeix els fitxers antics, que tenien l'objecte sencer d'Open Library
+            return Optional.of(interpretar(isbn, CodecJson.llegir(CodecJson.LECTOR_LLIBRE_OPEN_LIBRARY, contingut, "isbn-disc")));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static void desarAlDisc(String isbn, byte[] json) {
+        try {
+            Path fitxer = DadesLocals.fitxer(CARPETA_CACHE + "/" + isbn + ".json");
+            Path temporal = fitxer.resolveSibling(isbn + ".json.tmp");
+            Files.write(temporal, json);
+            Files.move(temporal, fitxer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.codexteam.codexlib;
+
+import javafx.scene.image.Image;
+import javafx.stage.Screen;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Càrrega de portades de llibres en segon pla, amb memòria cau en memòria i al disc.
+ *
+ * <p>Les imatges es descodifiquen directament a la mida en què es mostraran, no a la mida original,
+ * i es guarden en una memòria cau LRU limitada pels bytes de píxels que ocupen
+ * (es pot canviar amb -Dcodexlib.portades.memoria, en MB). Els fitxers descarregats es desen al disc
+ * per ISBN tal com arriben (la imatge ja ve comprimida en el seu format), de manera que obrir una portada
+ * per segon cop no surt a la xarxa.</p>
+ */
+public class ServeiPortades {
+
+    /** Bytes de píxels que pot ocupar la memòria cau en memòria. */
+    private static final long MAX_BYTES_MEMORIA = Long.getLong("codexlib.portades.memoria", 24) * 1024 * 1024;
+
+    /** Temps màxim d'espera de la descàrrega d'una portada. */
+    private static final Duration TEMPS_DESCARREGA = Duration.ofSeconds(15);
+
+    private static final String CARPETA_CACHE = "portades";
+
+    /** Imatge que es mostra mentre es carrega la portada o si no n'hi ha. */
+    private static final String RUTA_MARCADOR = "/com/codexteam/codexlib/images/book_icon.png";
+
+    // La descodificació ocupa la CPU; es fa fora dels fils del client HTTP i dels de lectura
+    private static final ExecutorService EXECUTOR_DESCODIFICACIO = ClientApi.crearExecutor(2, "codexlib-portades-");
+
+    // Memòria cau LRU per ordre d'accés; es buida per l'entrada menys usada fins a tornar dins del límit
+    private static final LinkedHashMap<String, Image> CACHE = new LinkedHashMap<>(64, 0.75f, true);
+    private static long bytesMemoria;
+
+    /** Càrregues en curs, perquè dues finestres que demanen la mateixa portada no la baixin dos cops. */
+    private static final Map<String, CompletableFuture<Image>> EN_CURS = new ConcurrentHashMap<>();
+
+    private static Image marcador;
+
+    /**
+     * Carrega la portada d'un llibre a la mida indicada, sense bloquejar el fil que la crida.
+     * La mida es multiplica per l'escala de la pantalla perquè es vegi nítida en pantalles d'alta densitat.
+     *
+     * @param isbn    ISBN del llibre (clau de la memòria cau).
+     * @param url     URL de la portada.
+     * @param amplada Amplada en què es mostrarà.
+     * @param alcada  Alçada en què es mostrarà.
+     * @return Futur amb la imatge, o amb una excepció si no s'ha pogut carregar.
+     */
+    public static CompletableFuture<Image> carregar(String isbn, String url, double amplada, double alcada) {
+        double escala = Screen.getPrimary().getOutputScaleX();
+        int ampladaPx = (int) Math.ceil(amplada * escala);
+        int alcadaPx = (int) Math.ceil(alcada * escala);
+        String clau = isbn + "@" + ampladaPx + "x" + alcadaPx;
+
+        Image enMemoria;
+        synchronized (CACHE) {
+            enMemoria = CACHE.get(clau);
+        }
+        if (enMemoria != null) {
+            Telemetria.cache("portades", true);
+            return CompletableFuture.completedFuture(enMemoria);
+        }
+
+        CompletableFuture<Image> carrega = new CompletableFuture<>();
+        CompletableFuture<Image> existent = EN_CURS.putIfAbsent(clau, carrega);
+        if (existent != null) {
+            return existent;
+        }
+        CompletableFuture
+                .supplyAsync(() -> llegirDelDisc(isbn), EXECUTOR_DESCODIFICACIO)
+                .thenCompose(bytes -> {
+                    // Encert si és a memòria o al disc; errada només si s'ha de descarregar
+                    Telemetria.cache("portades", bytes != null);
+                    return bytes != null ? CompletableFuture.completedFuture(bytes) : descarregar(isbn, url);
+                })
+                .thenApplyAsync(bytes -> descodificar(bytes, ampladaPx, alcadaPx), EXECUTOR_DESCODIFICACIO)
+                .whenComplete((imatge, error) -> {
+                    EN_CURS.remove(clau, carrega);
+                    if (error != null) {
+                        carrega.completeExceptionally(error);
+                    } else {
+                        guardarEnMemoria(clau, imatge);
+                        carrega.complete(imatge);
+                    }
+                });
+        return carrega;
+    }
+
+    /**
+     * @return Imatge per mostrar mentre es carrega una portada.
+     */
+    public static synchronized Image marcador() {
+        if (marcador == null) {
+            marcador = new Image(ServeiPortades.class.getResourceAsStream(RUTA_MARCADOR));
+        }
+        return marcador;
+    }
+
+    private static CompletableFuture<byte[]> descarregar(String isbn, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(TEMPS_DESCARREGA)
+                .GET()
+                .build();
+        return ClientApi.enviarMesurant(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("No s'ha pogut descarregar la portada: " + response.statusCode());
+                    }
+                    desarAlDisc(isbn, response.body());
+                    return response.body();
+                });
+    }
+
+    // Descodifica directament a la mida de destí: no es reté mai la imatge a mida completa
+    private static Image descodificar(byte[] bytes, int amplada, int alcada) {
+        Image imatge = new Image(new ByteArrayInputStream(bytes), amplada, alcada, true, true);
+        if (imatge.isError()) {
+            throw new IllegalStateException("No s'ha pogut descodificar la portada", imatge.getException());
+        }
+        return imatge;
+    }
+
+    //=====================================================
+    //                  MEMÒRIA CAU
+    //=====================================================
+    private static void guardarEnMemoria(String clau, Image imatge) {
+        long bytes = bytesPixels(imatge);
+        if (bytes > MAX_BYTES_MEMORIA) {
+            return;
+        }
+        synchronized (CACHE) {
+            Image anterior = CACHE.put(clau, imatge);
+            if (anterior != null) {
+                bytesMemoria -= bytesPixels(anterior);
+            }
+            bytesMemoria += bytes;
+            Iterator<Image> menysUsades = CACHE.values().iterator();
+            while (bytesMemoria > MAX_BYTES_MEMORIA && menysUsades.hasNext()) {
+                bytesMemoria -= bytesPixels(menysUsades.next());
+                menysUsades.remove();
+            }
+        }
+    }
+
+    // Les imatges descodificades ocupen 4 bytes per píxel (BGRA)
+    private static long bytesPixels(Image imatge) {
+        return (long) imatge.getWidth() * (long) imatge.getHeight() * 4;
+    }
+
+    private static byte[] llegirDelDisc(String isbn) {
+        try {
+            return Files.readAllBytes(DadesLocals.fitxer(CARPETA_CACHE + "/" + isbn));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static void desarAlDisc(String isbn, byte[] bytes) {
+        try {
+            Path fitxer = DadesLocals.fitxer(CARPETA_CACHE + "/" + isbn);
+            Path temporal = fitxer.resolveSibling(isbn + ".tmp");
+            Files.write(temporal, bytes);
+            Files.move(temporal, fitxer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.codexteam.codexlib;
+
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Dades de la sessió iniciada: el token JWT, l'usuari i quan caduca el token.
+ * És immutable; quan es refresca el token es crea una sessió nova.
+ *
+ * @param token      Token JWT que s'envia al servidor.
+ * @param nomUsuari  Nom de l'usuari.
+ * @param tipus      Tipus d'usuari (1 = administrador).
+ * @param caducitat  Moment en què caduca el token, o null si el token no ho indica.
+ */
+public record SessioUsuari(String token, String nomUsuari, int tipus, Instant caducitat) {
+
+    /**
+     * Crea la sessió llegint la caducitat del mateix token.
+     */
+    public static SessioUsuari crear(String token, String nomUsuari, int tipus) {
+        return new SessioUsuari(token, nomUsuari, tipus, caducitatDe(token));
+    }
+
+    /**
+     * Retorna la mateixa sessió amb un token nou.
+     */
+    public SessioUsuari ambToken(String nouToken) {
+        return new SessioUsuari(nouToken, nomUsuari, tipus, caducitatDe(nouToken));
+    }
+
+    /**
+     * Indica si el token caduca abans del moment indicat.
+     */
+    public boolean caducaAbans(Instant moment) {
+        return caducitat != null && caducitat.isBefore(moment);
+    }
+
+    /**
+     * Llegeix el camp {@code exp} (segons des de 1970) de la part central del JWT. No se'n comprova
+     * la signatura: només serveix per saber quan cal refrescar-lo.
+     *
+     * @param token Token JWT.
+     * @return La caducitat, o null si el token no té el format esperat o no porta {@code exp}.
+     */
+    public static Instant caducitatDe(String token) {
+        if (token == null) {
+            return null;
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            CodecJson.ContingutJwt contingut = CodecJson.llegir(CodecJson.LECTOR_CONTINGUT_JWT,
+                    Base64.getUrlDecoder().decode(parts[1]), "jwt");
+            return contingut.exp() != null ? Instant.ofEpochSecond(contingut.exp()) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
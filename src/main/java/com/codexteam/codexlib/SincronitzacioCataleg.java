@@ -0,0 +1,183 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sincronització incremental del catàleg a partir del camp {@code updated_at}.
+ * En lloc de tornar a baixar tots els llibres, es demanen només els que han canviat o
+ * s'han esborrat des de la darrera sincronització i es fusionen a la llista per {@code id}.
+ *
+ * <p>El servidor pot respondre amb una llista de llibres modificats o amb un objecte
+ * {@code {"updated": [...], "deleted": [ids]}}.</p>
+ */
+public class SincronitzacioCataleg {
+
+    /**
+     * Canvis rebuts del servidor.
+     *
+     * @param actualitzats Llibres nous o modificats.
+     * @param esborrats    Identificadors dels llibres esborrats.
+     */
+    public record Canvis(List<Llibre> actualitzats, List<Integer> esborrats) {
+
+        public boolean esBuit() {
+            return actualitzats.isEmpty() && esborrats.isEmpty();
+        }
+    }
+
+    /**
+     * Demana al servidor els canvis posteriors a la marca indicada.
+     *
+     * @param marca Valor de {@code updated_at} més recent de la darrera sincronització.
+     * @return Els canvis, o null si el servidor no admet la sincronització incremental.
+     */
+    public static CompletableFuture<Canvis> demanarCanvis(String marca) {
+        return CachePeticions.obtenir("/books/changes?since=" + URLEncoder.encode(marca, StandardCharsets.UTF_8))
+                .thenApplyAsync(resposta -> {
+                    int codi = resposta.codi();
+                    if (codi == 404 || codi == 400 || codi == 501) {
+                        return null;
+                    }
+                    if (codi != 200) {
+                        throw new IllegalStateException("Resposta inesperada del servidor: " + codi);
+                    }
+                    return llegirCanvis(resposta.cosEnFlux());
+                }, ClientApi.EXECUTOR_LECTURA);
+    }
+
+    private static Canvis llegirCanvis(InputStream cos) {
+        long inici = System.nanoTime();
+        try (cos) {
+            JsonNode arrel = CodecJson.LECTOR_LLIBRE.readTree(cos);
+            JsonNode actualitzats = arrel.isArray() ? arrel : arrel.path("updated");
+            List<Llibre> llibres = new ArrayList<>(actualitzats.size());
+            for (JsonNode node : actualitzats) {
+                llibres.add(CodecJson.LECTOR_LLIBRE.treeToValue(node, Llibre.class));
+            }
+            List<Integer> esborrats = new ArrayList<>();
+            for (JsonNode id : arrel.path("deleted")) {
+                esborrats.add(id.asInt());
+            }
+            Telemetria.descodificacio("canvis", inici, llibres.size() + esborrats.size());
+            return new Canvis(llibres, esborrats);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No s'han pogut llegir els canvis del catàleg.", e);
+        }
+    }
+
+    /**
+     * Fusiona els canvis a la llista sense reconstruir-la: els llibres existents se substitueixen
+     * a la mateixa posició, els nous s'afegeixen al final i els esborrats es treuen.
+     * S'ha de cridar des del fil de JavaFX.
+     *
+     * @param llibres Llista de llibres que mostra la taula.
+     * @param canvis  Canvis a aplicar.
+     */
+    public static void aplicar(ObservableList<Llibre> llibres, Canvis canvis) {
+        aplicar(llibres, canvis, true);
+    }
+
+    /**
+     * Fusiona els canvis a la llista, com {@link #aplicar(ObservableList, Canvis)}.
+     *
+     * @param llibres   Llista de llibres que mostra la taula.
+     * @param canvis    Canvis a aplicar.
+     * @param afegirNous Si és fals, els llibres que no són a la llista s'ignoren (per exemple, mentre encara
+     *                   arriben pàgines, que ja els portaran).
+     */
+    public static void aplicar(ObservableList<Llibre> llibres, Canvis canvis, boolean afegirNous) {
+        Map<Integer, Integer> posicions = new HashMap<>(llibres.size() * 2);
+        for (int i = 0; i < llibres.size(); i++) {
+            posicions.put(llibres.get(i).getId(), i);
+        }
+
+        List<Llibre> nous = new ArrayList<>();
+        for (Llibre llibre : canvis.actualitzats()) {
+            Integer posicio = posicions.get(llibre.getId());
+            if (posicio != null) {
+                llibres.set(posicio, llibre);
+            } else if (afegirNous) {
+                nous.add(llibre);
+            }
+        }
+
+        if (!canvis.esborrats().isEmpty()) {
+            Set<Integer> esborrats = new HashSet<>(canvis.esborrats());
+            llibres.removeIf(llibre -> esborrats.contains(llibre.getId()));
+        }
+        llibres.addAll(nous);
+    }
+
+    /**
+     * Calcula la marca de sincronització: el {@code updated_at} més recent entre la marca actual i els llibres donats.
+     * Les dates es comparen com a instants, no com a text: el servidor no sempre envia les fraccions de segon
+     * ({@code 10:00:00} i {@code 10:00:00.5}) ni la zona de la mateixa manera. La marca es retorna tal com ha
+     * arribat, perquè és el que s'envia a {@code since}.
+     *
+     * @param marca   Marca actual (pot ser null).
+     * @param llibres Llibres a tenir en compte.
+     * @return La marca més recent, o null si no n'hi ha cap.
+     */
+    public static String marcaMaxima(String marca, Collection<Llibre> llibres) {
+        String maxima = marca;
+        Instant instantMaxim = instant(marca);
+        for (Llibre llibre : llibres) {
+            String actualitzat = llibre.getUpdated_at();
+            if (actualitzat == null) {
+                continue;
+            }
+            Instant instantActualitzat = instant(actualitzat);
+            boolean posterior;
+            if (maxima == null) {
+                posterior = true;
+            } else if (instantActualitzat != null && instantMaxim != null) {
+                posterior = instantActualitzat.isAfter(instantMaxim);
+            } else if (instantActualitzat != null || instantMaxim != null) {
+                posterior = instantActualitzat != null; // Una data llegible passa davant d'una que no ho és
+            } else {
+                posterior = actualitzat.compareTo(maxima) > 0; // Format desconegut: com a text
+            }
+            if (posterior) {
+                maxima = actualitzat;
+                instantMaxim = instantActualitzat;
+            }
+        }
+        return maxima;
+    }
+
+    // Data ISO-8601 amb zona o sense (llavors s'entén en UTC), o null si no se sap llegir
+    private static Instant instant(String data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(data).toInstant();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(data).toInstant(ZoneOffset.UTC);
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+}
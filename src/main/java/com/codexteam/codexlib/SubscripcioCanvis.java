@@ -0,0 +1,348 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Subscripció als canvis del catàleg que envia el servidor (Server-Sent Events), per veure els
+ * préstecs i devolucions sense haver de tornar a demanar la llista de llibres.
+ *
+ * <p>La ruta és {@code /books/events} (es pot canviar amb -Dcodexlib.canvis.ruta) i s'entenen aquests
+ * esdeveniments, amb l'{@code id} que el servidor vulgui:</p>
+ * <pre>
+ * event: availability   data: {"id": 12, "available": false}
+ * event: inserted       data: {llibre sencer}
+ * event: updated        data: {llibre sencer}
+ * event: deleted        data: {"id": 12}
+ * </pre>
+ *
+ * <p>Els esdeveniments es van acumulant per {@code id} (de cada llibre només compta l'estat final) i
+ * s'apliquen com a molt una vegada per fotograma. Si la connexió es talla, es torna a obrir amb una espera
+ * creixent i la capçalera {@code Last-Event-ID}, perquè el servidor reenviï el que s'ha perdut.
+ * Si el servidor no té la ruta, la subscripció s'atura i el catàleg es continua refrescant periòdicament.</p>
+ */
+public class SubscripcioCanvis {
+
+    /** Ruta dels esdeveniments al servidor (es pot canviar amb -Dcodexlib.canvis.ruta). */
+    private static final String RUTA = System.getProperty("codexlib.canvis.ruta", "/books/events");
+
+    /** Espera inicial i màxima abans de tornar a connectar. */
+    private static final long ESPERA_INICIAL_MS = 1000;
+    private static final long ESPERA_MAXIMA_MS = 30_000;
+
+    private static final System.Logger REGISTRE = System.getLogger(SubscripcioCanvis.class.getName());
+
+    // Un fil per subscripció: la lectura del flux bloqueja mentre la connexió està oberta
+    private static final ExecutorService EXECUTOR = ClientApi.crearExecutor(1, "codexlib-canvis-");
+
+    private final ObservableList<Llibre> llibres;
+    private final Consumer<SincronitzacioCataleg.Canvis> receptor;
+    private final Runnable enReconnexio;
+
+    // Canvis pendents d'aplicar, per id i en ordre d'arribada
+    private final Map<Integer, Pendent> pendents = new LinkedHashMap<>();
+    private final AtomicBoolean programat = new AtomicBoolean(false);
+    private AnimationTimer fotograma;
+
+    private volatile String darrerId;
+    private volatile boolean activa;
+    private Future<?> connexio;
+
+    /**
+     * Estat final d'un llibre segons els esdeveniments rebuts des del darrer fotograma.
+     *
+     * @param llibre     Llibre sencer, si n'ha arribat un.
+     * @param disponible Disponibilitat, si ha arribat un canvi de disponibilitat.
+     * @param esborrat   Cert si el darrer esdeveniment ha estat l'esborrat.
+     */
+    private record Pendent(Llibre llibre, Boolean disponible, boolean esborrat) {
+    }
+
+    /**
+     * @param llibres      Llista de llibres que mostra la taula.
+     * @param receptor     Rep els canvis acumulats, al fil de JavaFX.
+     * @param enReconnexio Es crida al fil de JavaFX cada cop que es recupera la connexió, per si el servidor
+     *                     no ha pogut reenviar tots els esdeveniments perduts.
+     */
+    public SubscripcioCanvis(ObservableList<Llibre> llibres, Consumer<SincronitzacioCataleg.Canvis> receptor,
+                             Runnable enReconnexio) {
+        this.llibres = llibres;
+        this.receptor = receptor;
+        this.enReconnexio = enReconnexio;
+    }
+
+    /**
+     * Obre la subscripció. No fa res si ja està oberta.
+     */
+    public synchronized void iniciar() {
+        if (activa) {
+            return;
+        }
+        activa = true;
+        connexio = EXECUTOR.submit(this::escoltar);
+    }
+
+    /**
+     * Tanca la connexió i deixa de rebre canvis.
+     */
+    public synchronized void aturar() {
+        activa = false;
+        if (connexio != null) {
+            connexio.cancel(true);
+            connexio = null;
+        }
+    }
+
+    //=====================================================
+    //                 CONNEXIÓ I LECTURA
+    //=====================================================
+    private void escoltar() {
+        long espera = ESPERA_INICIAL_MS;
+        boolean primera = true;
+        while (activa && !Thread.currentThread().isInterrupted()) {
+            try {
+                HttpRequest.Builder builder = ClientApi.peticio(RUTA)
+                        .header("Accept", "text/event-stream")
+                        .header("Cache-Control", "no-cache")
+                        .GET();
+                if (darrerId != null) {
+                    builder.header("Last-Event-ID", darrerId);
+                }
+                HttpResponse<InputStream> response = esperar(ClientApi.enviar(builder, HttpResponse.BodyHandlers.ofInputStream()));
+                int codi = response.statusCode();
+                if (codi == 404 || codi == 501 || codi == 401 || codi == 403) {
+                    response.body().close();
+                    REGISTRE.log(System.Logger.Level.INFO, "El servidor no ofereix canvis en viu (" + codi + "); es fa servir la sincronització periòdica.");
+                    activa = false;
+                    return;
+                }
+                if (codi != 200) {
+                    response.body().close();
+                    throw new IOException("Resposta inesperada del servidor: " + codi);
+                }
+                if (!primera) {
+                    Platform.runLater(enReconnexio);
+                }
+                primera = false;
+                espera = ESPERA_INICIAL_MS;
+                Long reintent = llegir(response.body());
+                if (reintent != null) {
+                    espera = reintent;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!activa || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                REGISTRE.log(System.Logger.Level.DEBUG, "Connexió de canvis interrompuda: " + e.getMessage());
+            }
+
+            // Espera creixent amb una mica d'atzar, perquè no es reconnectin tots els clients alhora
+            try {
+                Thread.sleep(espera + ThreadLocalRandom.current().nextLong(espera / 4 + 1));
+            } catch (InterruptedException e) {
+                return;
+            }
+            espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+        }
+    }
+
+    // Espera la resposta; si s'interromp el fil (aturar), es cancel·la la petició
+    private static HttpResponse<InputStream> esperar(CompletableFuture<HttpResponse<InputStream>> resposta)
+            throws IOException, InterruptedException {
+        try {
+            return resposta.get();
+        } catch (InterruptedException e) {
+            resposta.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Llegeix el flux d'esdeveniments fins que es tanca.
+     *
+     * @return Espera de reconnexió demanada pel servidor (camp {@code retry}), o null.
+     */
+    private Long llegir(InputStream cos) throws IOException {
+        Long reintent = null;
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(cos, StandardCharsets.UTF_8))) {
+            String tipus = null;
+            String id = null;
+            StringBuilder dades = new StringBuilder();
+            String linia;
+            while ((linia = lector.readLine()) != null) {
+                if (linia.isEmpty()) {
+                    // Línia buida: final de l'esdeveniment
+                    if (dades.length() > 0) {
+                        rebre(tipus, dades.toString());
+                    }
+                    if (id != null) {
+                        darrerId = id;
+                    }
+                    tipus = null;
+                    id = null;
+                    dades.setLength(0);
+                    continue;
+                }
+                if (linia.startsWith(":")) {
+                    continue; // Comentari (el servidor els envia per mantenir la connexió)
+                }
+                int dosPunts = linia.indexOf(':');
+                String camp = dosPunts < 0 ? linia : linia.substring(0, dosPunts);
+                String valor = dosPunts < 0 ? "" : linia.substring(dosPunts + 1);
+                if (valor.startsWith(" ")) {
+                    valor = valor.substring(1);
+                }
+                switch (camp) {
+                    case "event" -> tipus = valor;
+                    case "data" -> {
+                        if (dades.length() > 0) {
+                            dades.append('\n');
+                        }
+                        dades.append(valor);
+                    }
+                    case "id" -> id = valor;
+                    case "retry" -> {
+                        try {
+                            reintent = Math.min(Long.parseLong(valor), ESPERA_MAXIMA_MS);
+                        } catch (NumberFormatException ignored) {
+                            // Valor no vàlid: es manté l'espera per defecte
+                        }
+                    }
+                    default -> {
+                        // Camp desconegut: s'ignora, com diu l'especificació
+                    }
+                }
+            }
+        }
+        return reintent;
+    }
+
+    // Converteix un esdeveniment en un canvi pendent; els esdeveniments mal formats s'ignoren
+    private void rebre(String tipus, String dades) {
+        long inici = System.nanoTime();
+        try {
+            JsonNode node = CodecJson.LECTOR_LLIBRE.readTree(dades);
+            Telemetria.descodificacio("esdeveniments", inici, 1);
+            switch (tipus != null ? tipus : "") {
+                case "availability" -> acumular(node.path("id").asInt(), null, node.path("available").asBoolean(), false);
+                case "inserted", "updated" -> acumular(node.path("id").asInt(),
+                        CodecJson.LECTOR_LLIBRE.treeToValue(node, Llibre.class), null, false);
+                case "deleted" -> acumular(node.path("id").asInt(), null, null, true);
+                default -> {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            REGISTRE.log(System.Logger.Level.WARNING, "Esdeveniment de canvis no vàlid: " + dades);
+            return;
+        }
+        // Un sol fotograma per a tots els esdeveniments que arribin fins llavors
+        if (programat.compareAndSet(false, true)) {
+            Platform.runLater(this::programarFotograma);
+        }
+    }
+
+    // Aplica els canvis al proper fotograma (al fil de JavaFX)
+    private void programarFotograma() {
+        if (fotograma == null) {
+            fotograma = new AnimationTimer() {
+                @Override
+                public void handle(long ara) {
+                    stop();
+                    aplicarPendents();
+                }
+            };
+        }
+        fotograma.start();
+    }
+
+    private void acumular(int id, Llibre llibre, Boolean disponible, boolean esborrat) {
+        synchronized (pendents) {
+            Pendent anterior = pendents.remove(id);
+            if (!esborrat && llibre == null && anterior != null && anterior.llibre() != null) {
+                llibre = anterior.llibre(); // Canvi de disponibilitat d'un llibre que encara no s'ha aplicat
+            }
+            pendents.put(id, new Pendent(llibre, disponible, esborrat));
+        }
+    }
+
+    //=====================================================
+    //                APLICAR ELS CANVIS
+    //=====================================================
+    // Es crida una vegada per fotograma, al fil de JavaFX
+    private void aplicarPendents() {
+        programat.set(false);
+        List<Map.Entry<Integer, Pendent>> canvis;
+        synchronized (pendents) {
+            canvis = new ArrayList<>(pendents.entrySet());
+            pendents.clear();
+        }
+        if (canvis.isEmpty() || !activa) {
+            return;
+        }
+
+        Map<Integer, Llibre> actuals = null;
+        List<Llibre> actualitzats = new ArrayList<>();
+        List<Integer> esborrats = new ArrayList<>();
+        for (Map.Entry<Integer, Pendent> entrada : canvis) {
+            Pendent pendent = entrada.getValue();
+            if (pendent.esborrat()) {
+                esborrats.add(entrada.getKey());
+                continue;
+            }
+            Llibre llibre = pendent.llibre();
+            if (llibre == null) {
+                // Només ha canviat la disponibilitat: es parteix del llibre que ja és a la llista
+                if (actuals == null) {
+                    actuals = new HashMap<>(llibres.size() * 2);
+                    for (Llibre actual : llibres) {
+                        actuals.put(actual.getId(), actual);
+                    }
+                }
+                llibre = actuals.get(entrada.getKey());
+                if (llibre == null || llibre.isAvailable() == pendent.disponible()) {
+                    continue;
+                }
+            } else if (pendent.disponible() == null || llibre.isAvailable() == pendent.disponible()) {
+                actualitzats.add(llibre);
+                continue;
+            }
+            // Els llibres de la llista no es modifiquen mai: se'n posa una còpia
+            Llibre copia = llibre.copia();
+            copia.setAvailable(pendent.disponible());
+            actualitzats.add(copia);
+        }
+
+        SincronitzacioCataleg.Canvis resultat = new SincronitzacioCataleg.Canvis(actualitzats, esborrats);
+        if (!resultat.esBuit()) {
+            CachePeticions.invalidar("/books"); // Les respostes guardades ja no són al dia
+            receptor.accept(resultat);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package com.codexteam.codexlib;
+
+import javafx.application.Platform;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures del client per saber on es perd el temps quan el panell va lent: el servidor o la xarxa
+ * (latència i mida de cada endpoint), la descodificació del JSON, el fil de JavaFX o les memòries cau.
+ *
+ * <p>Les mesures es guarden en histogrames de cubetes fixes, sense bloquejos, i es poden consultar:</p>
+ * <ul>
+ *   <li>per JMX ({@link TelemetriaMXBean}, amb JConsole o VisualVM);</li>
+ *   <li>al fitxer {@code telemetria.log} del directori de dades, on s'afegeix un resum cada minut
+ *       (-Dcodexlib.telemetria.interval, en segons; 0 per no escriure'l). Quan passa d'1 MB es
+ *       reanomena a {@code telemetria.1.log} i se'n guarden tres;</li>
+ *   <li>a la finestra de diagnòstic de la configuració ({@link DiagnosticController}).</li>
+ * </ul>
+ *
+ * <p>El retard del fil de JavaFX es mesura enviant-hi una tasca buida cada 250 ms amb
+ * {@code Platform.runLater}: el temps que triga a executar-se és el que hauria esperat qualsevol
+ * actualització de la interfície.</p>
+ */
+public class Telemetria {
+
+    private static final System.Logger REGISTRE = System.getLogger(Telemetria.class.getName());
+
+    /** Segons entre resums al fitxer de registre. */
+    private static final long INTERVAL_REGISTRE = Long.getLong("codexlib.telemetria.interval", 60);
+
+    /** Mil·lisegons entre mostres del fil de JavaFX. */
+    private static final long INTERVAL_MOSTREIG = 250;
+
+    private static final String FITXER_REGISTRE = "telemetria.log";
+    private static final long MIDA_MAXIMA_REGISTRE = 1024 * 1024;
+    private static final int FITXERS_ANTICS = 3;
+
+    /** Nombre màxim d'endpoints diferents; la resta es compten junts. */
+    private static final int MAX_ENDPOINTS = 100;
+
+    private static final Map<String, Mesura> PETICIONS = new ConcurrentHashMap<>();
+    private static final Map<String, Mesura> DESCODIFICACIONS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder[]> CACHES = new ConcurrentHashMap<>();
+    private static volatile Mesura filInterficie = new Mesura();
+
+    private static final AtomicBoolean iniciada = new AtomicBoolean();
+    private static final AtomicBoolean mostraPendent = new AtomicBoolean();
+    private static long activitatRegistrada;
+
+    private static final ScheduledExecutorService PROGRAMADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread fil = new Thread(r, "codexlib-telemetria");
+        fil.setDaemon(true);
+        return fil;
+    });
+
+    /**
+     * Resum d'una mesura. Els temps són en mil·lisegons.
+     *
+     * @param nom      Endpoint ("GET /books") o tipus de descodificació ("llibres").
+     * @param total    Nombre de mostres.
+     * @param errors   Peticions fallides (0 a les descodificacions).
+     * @param mitjana  Temps mitjà.
+     * @param p50      Mediana (límit superior de la cubeta).
+     * @param p95      Percentil 95 (límit superior de la cubeta).
+     * @param maxim    Temps més gran.
+     * @param quantitat Bytes rebuts (peticions) o elements llegits (descodificacions).
+     */
+    public record Fila(String nom, long total, long errors, double mitjana, double p50, double p95,
+                       double maxim, long quantitat) {
+    }
+
+    //=====================================================
+    //                      INICI
+    //=====================================================
+    /**
+     * Publica les mètriques per JMX i comença el mostreig del fil de JavaFX i el registre periòdic.
+     * S'ha de cridar un cop el toolkit de JavaFX és en marxa; les crides següents no fan res.
+     */
+    public static void iniciar() {
+        if (!iniciada.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+                    new ObjectName("com.codexteam.codexlib:type=Telemetria"));
+        } catch (JMException e) {
+            REGISTRE.log(System.Logger.Level.WARNING, "No s'ha pogut publicar la telemetria per JMX", e);
+        }
+        PROGRAMADOR.scheduleWithFixedDelay(Telemetria::mostrejarFilInterficie,
+                INTERVAL_MOSTREIG, INTERVAL_MOSTREIG, TimeUnit.MILLISECONDS);
+        if (INTERVAL_REGISTRE > 0) {
+            PROGRAMADOR.scheduleWithFixedDelay(Telemetria::escriureRegistre,
+                    INTERVAL_REGISTRE, INTERVAL_REGISTRE, TimeUnit.SECONDS);
+        }
+    }
+
+    // Només una mostra pendent alhora: si el fil està bloquejat, la mostra mesura tot el bloqueig
+    private static void mostrejarFilInterficie() {
+        if (!mostraPendent.compareAndSet(false, true)) {
+            return;
+        }
+        long enviada = System.nanoTime();
+        Platform.runLater(() -> {
+            filInterficie.afegir(System.nanoTime() - enviada, 0);
+            mostraPendent.set(false);
+        });
+    }
+
+    //=====================================================
+    //                 REGISTRE DE MESURES
+    //=====================================================
+    /**
+     * Registra una petició HTTP acabada. La latència va de l'enviament fins que el cos és a memòria
+     * (o fins a les capçaleres, si el cos es llegeix en flux).
+     *
+     * @param request  Petició enviada.
+     * @param response Resposta, o null si ha fallat.
+     * @param error    Error de la petició, o null.
+     * @param inici    {@link System#nanoTime()} en enviar-la.
+     */
+    public static void peticio(HttpRequest request, HttpResponse<?> response, Throwable error, long inici) {
+        long durada = System.nanoTime() - inici;
+        String nom = endpoint(request);
+        Mesura mesura = PETICIONS.get(nom);
+        if (mesura == null) {
+            mesura = PETICIONS.size() < MAX_ENDPOINTS
+                    ? PETICIONS.computeIfAbsent(nom, n -> new Mesura())
+                    : PETICIONS.computeIfAbsent("altres", n -> new Mesura());
+        }
+        mesura.afegir(durada, response != null ? midaCos(response) : 0);
+        if (error != null || response == null || response.statusCode() >= 400) {
+            mesura.errors.increment();
+        }
+    }
+
+    /**
+     * Registra el temps d'una descodificació de JSON.
+     *
+     * @param nom       Què s'ha descodificat ("llibres", "canvis", "openlibrary"...).
+     * @param inici     {@link System#nanoTime()} en començar.
+     * @param elements  Elements llegits.
+     */
+    public static void descodificacio(String nom, long inici, int elements) {
+        descodificacioDurada(nom, System.nanoTime() - inici, elements);
+    }
+
+    /**
+     * Registra una descodificació de JSON de la qual ja se sap la durada (per exemple, la d'un flux
+     * llegit de la xarxa, sense el temps esperant els bytes).
+     *
+     * @param nom      Què s'ha descodificat.
+     * @param nanos    Durada en nanosegons.
+     * @param elements Elements llegits.
+     */
+    public static void descodificacioDurada(String nom, long nanos, int elements) {
+        DESCODIFICACIONS.computeIfAbsent(nom, n -> new Mesura()).afegir(Math.max(0, nanos), elements);
+    }
+
+    /**
+     * Registra una consulta a una memòria cau.
+     *
+     * @param nom    Nom de la memòria cau ("isbn", "portades"...).
+     * @param encert true si el valor ja hi era.
+     */
+    public static void cache(String nom, boolean encert) {
+        CACHES.computeIfAbsent(nom, n -> new LongAdder[]{new LongAdder(), new LongAdder()})[encert ? 0 : 1].increment();
+    }
+
+    // Mètode i ruta, amb els números (id, ISBN...) substituïts perquè les rutes iguals es comptin juntes.
+    // Les peticions que no van al servidor de CodexLibris porten el nom del servidor davant.
+    static String endpoint(HttpRequest request) {
+        URI uri = request.uri();
+        URI servidor = URI.create(ClientApi.URL_SERVIDOR);
+        StringBuilder nom = new StringBuilder(request.method()).append(' ');
+        if (!Objects.equals(uri.getHost(), servidor.getHost()) || uri.getPort() != servidor.getPort()) {
+            nom.append(uri.getHost());
+        }
+        String cami = uri.getPath() != null ? uri.getPath() : "";
+        for (String segment : cami.split("/")) {
+            if (!segment.isEmpty()) {
+                nom.append('/').append(segment.chars().anyMatch(Character::isDigit) ? "{id}" : segment);
+            }
+        }
+        return nom.toString();
+    }
+
+    private static long midaCos(HttpResponse<?> response) {
+        Object cos = response.body();
+        if (cos instanceof byte[] bytes) {
+            return bytes.length;
+        }
+        if (cos instanceof String text) {
+            return text.length(); // Aproximada: caràcters, no bytes
+        }
+        return response.headers().firstValueAsLong("Content-Length").orElse(0);
+    }
+
+    //=====================================================
+    //                     CONSULTA
+    //=====================================================
+    /** @return Resum de cada endpoint, per ordre alfabètic. */
+    public static List<Fila> endpoints() {
+        return files(PETICIONS);
+    }
+
+    /** @return Resum de cada tipus de descodificació. */
+    public static List<Fila> descodificacions() {
+        return files(DESCODIFICACIONS);
+    }
+
+    /** @return Resum del retard del fil de JavaFX. */
+    public static Fila retardFilInterficie() {
+        return filInterficie.fila("fil JavaFX");
+    }
+
+    /** @return Proporció d'encerts de cada memòria cau, entre 0 i 1 (les GET al servidor, incloses). */
+    public static Map<String, Double> encertsCache() {
+        Map<String, Double> encerts = new TreeMap<>();
+        long estalviades = CachePeticions.getEncerts() + CachePeticions.getFusionades();
+        long total = estalviades + CachePeticions.getErrades();
+        if (total > 0) {
+            encerts.put("peticions GET", (double) estalviades / total);
+        }
+        CACHES.forEach((nom, comptadors) -> {
+            long sumaEncerts = comptadors[0].sum();
+            long consultes = sumaEncerts + comptadors[1].sum();
+            if (consultes > 0) {
+                encerts.put(nom, (double) sumaEncerts / consultes);
+            }
+        });
+        return encerts;
+    }
+
+    /**
+     * @return Resum en una línia de totes les mesures.
+     */
+    public static String resum() {
+        StringBuilder resum = new StringBuilder();
+        for (Fila fila : endpoints()) {
+            resum.append(String.format(Locale.ROOT, "%s n=%d err=%d p50=%.0fms p95=%.0fms max=%.0fms %dKB; ",
+                    fila.nom(), fila.total(), fila.errors(), fila.p50(), fila.p95(), fila.maxim(), fila.quantitat() / 1024));
+        }
+        for (Fila fila : descodificacions()) {
+            resum.append(String.format(Locale.ROOT, "descodificació %s n=%d mitjana=%.1fms max=%.0fms %d elements; ",
+                    fila.nom(), fila.total(), fila.mitjana(), fila.maxim(), fila.quantitat()));
+        }
+        Fila fil = retardFilInterficie();
+        resum.append(String.format(Locale.ROOT, "fil JavaFX p95=%.0fms max=%.0fms; ", fil.p95(), fil.maxim()));
+        encertsCache().forEach((nom, proporcio) ->
+                resum.append(String.format(Locale.ROOT, "cache %s %.0f%%; ", nom, 100 * proporcio)));
+        return resum.toString().trim();
+    }
+
+    /**
+     * Posa tots els comptadors a zero (per exemple, abans de reproduir un problema).
+     */
+    public static void restablir() {
+        PETICIONS.clear();
+        DESCODIFICACIONS.clear();
+        CACHES.clear();
+        filInterficie = new Mesura();
+        CachePeticions.restablirComptadors();
+    }
+
+    private static List<Fila> files(Map<String, Mesura> mesures) {
+        List<Fila> files = new ArrayList<>();
+        mesures.forEach((nom, mesura) -> files.add(mesura.fila(nom)));
+        files.sort(Comparator.comparing(Fila::nom));
+        return files;
+    }
+
+    //=====================================================
+    //                 FITXER DE REGISTRE
+    //=====================================================
+    // Afegeix el resum al fitxer si hi ha hagut activitat des de l'últim
+    private static void escriureRegistre() {
+        long activitat = PETICIONS.values().stream().mapToLong(Mesura::total).sum()
+                + DESCODIFICACIONS.values().stream().mapToLong(Mesura::total).sum();
+        if (activitat == activitatRegistrada) {
+            return;
+        }
+        activitatRegistrada = activitat;
+        try {
+            Path fitxer = DadesLocals.fitxer(FITXER_REGISTRE);
+            if (Files.exists(fitxer) && Files.size(fitxer) > MIDA_MAXIMA_REGISTRE) {
+                rotar();
+            }
+            Files.writeString(fitxer, LocalDateTime.now() + "\t" + resum() + System.lineSeparator(),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // telemetria.log -> telemetria.1.log -> telemetria.2.log ... (el més antic s'esborra)
+    private static void rotar() throws IOException {
+        Files.deleteIfExists(DadesLocals.fitxer(nomAntic(FITXERS_ANTICS)));
+        for (int i = FITXERS_ANTICS - 1; i >= 1; i--) {
+            Path antic = DadesLocals.fitxer(nomAntic(i));
+            if (Files.exists(antic)) {
+                Files.move(antic, DadesLocals.fitxer(nomAntic(i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(DadesLocals.fitxer(FITXER_REGISTRE), DadesLocals.fitxer(nomAntic(1)), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String nomAntic(int numero) {
+        return FITXER_REGISTRE.replace(".log", "." + numero + ".log");
+    }
+
+    //=====================================================
+    //                    HISTOGRAMA
+    //=====================================================
+    /**
+     * Histograma de temps amb cubetes fixes (de 0,25 ms a 30 s) i comptadors sense bloqueig.
+     * Els percentils són el límit superior de la cubeta on cauen.
+     */
+    private static final class Mesura {
+
+        private static final long[] LIMITS_MICROS = {
+                250, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000,
+                500_000, 1_000_000, 2_000_000, 5_000_000, 10_000_000, 30_000_000};
+
+        private final AtomicLongArray cubetes = new AtomicLongArray(LIMITS_MICROS.length + 1);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder sumaNanos = new LongAdder();
+        private final AtomicLong maximNanos = new AtomicLong();
+        private final LongAdder quantitat = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        void afegir(long nanos, long unitats) {
+            long micros = nanos / 1_000;
+            int cubeta = 0;
+            while (cubeta < LIMITS_MICROS.length && micros > LIMITS_MICROS[cubeta]) {
+                cubeta++;
+            }
+            cubetes.incrementAndGet(cubeta);
+            total.increment();
+            sumaNanos.add(nanos);
+            maximNanos.accumulateAndGet(nanos, Math::max);
+            quantitat.add(unitats);
+        }
+
+        long total() {
+            return total.sum();
+        }
+
+        double percentil(double proporcio) {
+            long comptats = 0;
+            long llindar = (long) Math.ceil(proporcio * total.sum());
+            for (int i = 0; i < cubetes.length(); i++) {
+                comptats += cubetes.get(i);
+                if (comptats >= llindar && comptats > 0) {
+                    return i < LIMITS_MICROS.length
+                            ? Math.min(LIMITS_MICROS[i] / 1_000.0, maximNanos.get() / 1_000_000.0)
+                            : maximNanos.get() / 1_000_000.0;
+                }
+            }
+            return 0;
+        }
+
+        Fila fila(String nom) {
+            long mostres = total.sum();
+            return new Fila(nom, mostres, errors.sum(),
+                    mostres == 0 ? 0 : sumaNanos.sum() / 1_000_000.0 / mostres,
+                    percentil(0.50), percentil(0.95), maximNanos.get() / 1_000_000.0, quantitat.sum());
+        }
+    }
+
+    //=====================================================
+    //                        JMX
+    //=====================================================
+    private static final class Bean implements TelemetriaMXBean {
+
+        @Override
+        public Map<String, Long> getPeticions() {
+            Map<String, Long> resultat = new TreeMap<>();
+            endpoints().forEach(fila -> resultat.put(fila.nom(), fila.total()));
+            return resultat;
+        }
+
+        @Override
+        public Map<String, Long> getErrors() {
+            Map<String, Long> resultat = new TreeMap<>();
+            endpoints().forEach(fila -> resultat.put(fila.nom(), fila.errors()));
+            return resultat;
+        }
+
+        @Override
+        public Map<String, Double> getLatenciaP95() {
+            Map<String, Double> resultat = new TreeMap<>();
+            endpoints().forEach(fila -> resultat.put(fila.nom(), fila.p95()));
+            return resultat;
+        }
+
+        @Override
+        public Map<String, Long> getBytesRebuts() {
+            Map<String, Long> resultat = new TreeMap<>();
+            endpoints().forEach(fila -> resultat.put(fila.nom(), fila.quantitat()));
+            return resultat;
+        }
+
+        @Override
+        public Map<String, Double> getDescodificacioMitjana() {
+            Map<String, Double> resultat = new TreeMap<>();
+            descodificacions().forEach(fila -> resultat.put(fila.nom(), fila.mitjana()));
+            return resultat;
+        }
+
+        @Override
+        public Map<String, Double> getEncertsCache() {
+            return encertsCache();
+        }
+
+        @Override
+        public double getRetardFilInterficieP99() {
+            return filInterficie.percentil(0.99);
+        }
+
+        @Override
+        public double getRetardFilInterficieMaxim() {
+            return retardFilInterficie().maxim();
+        }
+
+        @Override
+        public String getResum() {
+            return resum();
+        }
+
+        @Override
+        public void restablir() {
+            Telemetria.restablir();
+        }
+    }
+}
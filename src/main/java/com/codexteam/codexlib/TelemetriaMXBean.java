@@ -0,0 +1,40 @@
+package com.codexteam.codexlib;
+
+import java.util.Map;
+
+/**
+ * Mètriques del client publicades per JMX com a {@code com.codexteam.codexlib:type=Telemetria}
+ * (es poden veure amb JConsole o VisualVM). Els temps són en mil·lisegons.
+ */
+public interface TelemetriaMXBean {
+
+    /** @return Peticions fetes a cada endpoint (per exemple "GET /books"). */
+    Map<String, Long> getPeticions();
+
+    /** @return Peticions de cada endpoint que han fallat o han rebut un codi 4xx/5xx. */
+    Map<String, Long> getErrors();
+
+    /** @return Percentil 95 de la latència de cada endpoint. */
+    Map<String, Double> getLatenciaP95();
+
+    /** @return Bytes rebuts de cada endpoint. */
+    Map<String, Long> getBytesRebuts();
+
+    /** @return Temps mitjà de cada descodificació (llibres, canvis, Open Library...). */
+    Map<String, Double> getDescodificacioMitjana();
+
+    /** @return Proporció d'encerts de cada memòria cau, entre 0 i 1. */
+    Map<String, Double> getEncertsCache();
+
+    /** @return Percentil 99 del retard del fil de JavaFX. */
+    double getRetardFilInterficieP99();
+
+    /** @return Retard més gran del fil de JavaFX. */
+    double getRetardFilInterficieMaxim();
+
+    /** @return Resum en una línia, el mateix que s'escriu al fitxer de registre. */
+    String getResum();
+
+    /** Posa tots els comptadors a zero. */
+    void restablir();
+}
@@ -0,0 +1,52 @@
+package com.codexteam.codexlib;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Representa un compte d'usuari de la biblioteca, tal com el retorna {@code GET /users}.
+ */
+public class Usuari {
+    private int id;
+    private String username;
+    private String name;
+    private String last_name;
+    private String email;
+    private int role_id;
+    private String created_at;
+
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public String getLast_name() { return last_name; }
+    public void setLast_name(String last_name) { this.last_name = last_name; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public int getRole_id() { return role_id; }
+    public void setRole_id(int role_id) { this.role_id = role_id; }
+
+    public String getCreated_at() { return created_at; }
+    public void setCreated_at(String created_at) { this.created_at = created_at; }
+
+    // Mètodes auxiliars per mostrar a la taula
+
+    /** @return Nom i cognoms. */
+    @JsonIgnore
+    public String getNomComplet() {
+        String nom = name != null ? name : "";
+        return last_name != null && !last_name.isEmpty() ? (nom + " " + last_name).trim() : nom;
+    }
+
+    /** @return Nom del rol (1 és administrador, com a l'inici de sessió). */
+    @JsonIgnore
+    public String getRol() {
+        return role_id == 1 ? "Administrador" : "Usuari";
+    }
+}